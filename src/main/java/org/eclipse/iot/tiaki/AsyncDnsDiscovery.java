@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.iot.tiaki.domain.CertRecord;
+import org.eclipse.iot.tiaki.domain.CompoundLabel;
+import org.eclipse.iot.tiaki.domain.DnsCertPrefix;
+import org.eclipse.iot.tiaki.domain.Fqdn;
+import org.eclipse.iot.tiaki.domain.InstanceProjection;
+import org.eclipse.iot.tiaki.domain.ServiceInstance;
+import org.eclipse.iot.tiaki.domain.TextRecord;
+
+/**
+ * Asynchronous counterpart of {@link DnsDiscovery}: every lookup is carried out on a caller-supplied
+ * <code>Executor</code> and its outcome is delivered through a <code>CompletableFuture</code>.
+ *
+ * A returned future completes exceptionally with the <code>LookupException</code> or
+ * <code>ConfigurationException</code> the blocking call would have raised. Cancelling it interrupts
+ * the thread running the lookup; once the deadline (if any) expires, the future completes
+ * exceptionally with a <code>TimeoutException</code> and the lookup is cancelled as well.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc6763">DNS-SD</a>
+ */
+public interface AsyncDnsDiscovery
+{
+
+    /**
+     * List asynchronously the Service Types under the provided domain.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     * @param timeout        The deadline for this call, no deadline if not positive
+     * @param unit           The <code>TimeUnit</code> of <code>timeout</code>
+     *
+     * @return A future set of <code>String</code> referring the registered Service Types
+     */
+    CompletableFuture<Set<String>> listServiceTypesAsync ( Fqdn browsingDomain, boolean secValidation,
+                                                           Executor executor, long timeout, TimeUnit unit );
+
+    /**
+     * List asynchronously the Service Instances under the provided domain, of the defined <i>type</i>.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param type           A compound data structure identifying the Service Type
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     * @param timeout        The deadline for this call, no deadline if not positive
+     * @param unit           The <code>TimeUnit</code> of <code>timeout</code>
+     *
+     * @return A future set of <code>ServiceInstance</code> objects
+     */
+    default CompletableFuture<Set<ServiceInstance>> listServiceInstancesAsync ( Fqdn browsingDomain, CompoundLabel type,
+                                                                                boolean secValidation, Executor executor,
+                                                                                long timeout, TimeUnit unit )
+    {
+        return listServiceInstancesAsync(browsingDomain, type, InstanceProjection.SRV_TXT, secValidation, executor,
+                                         timeout, unit);
+    }
+
+    /**
+     * List asynchronously the Service Instances under the provided domain, of the defined <i>type</i>,
+     * resolving only the <i>projected</i> parts of them.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param type           A compound data structure identifying the Service Type
+     * @param projection     The parts of the Service Instances to be resolved
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     * @param timeout        The deadline for this call, no deadline if not positive
+     * @param unit           The <code>TimeUnit</code> of <code>timeout</code>
+     *
+     * @return A future set of <code>ServiceInstance</code> objects
+     */
+    CompletableFuture<Set<ServiceInstance>> listServiceInstancesAsync ( Fqdn browsingDomain, CompoundLabel type,
+                                                                        InstanceProjection projection,
+                                                                        boolean secValidation, Executor executor,
+                                                                        long timeout, TimeUnit unit );
+
+    /**
+     * List asynchronously the Text Resource Records under the provided domain for the specified
+     * <i>label</i>.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param label          A <code>String</code> identifying the label to be looked up
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     * @param timeout        The deadline for this call, no deadline if not positive
+     * @param unit           The <code>TimeUnit</code> of <code>timeout</code>
+     *
+     * @return A future set of <code>TextRecord</code> objects
+     */
+    CompletableFuture<Set<TextRecord>> listTextRecordsAsync ( Fqdn browsingDomain, String label, boolean secValidation,
+                                                              Executor executor, long timeout, TimeUnit unit );
+
+    /**
+     * List asynchronously the TLSA Resource Records under the provided domain for the specified
+     * <i>label</i>.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param tlsaPrefix     An object which provides the TLSA record prefix based on port and protocol
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     * @param timeout        The deadline for this call, no deadline if not positive
+     * @param unit           The <code>TimeUnit</code> of <code>timeout</code>
+     *
+     * @return A future set of <code>CertRecord</code> objects
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc6698">DNS-Based Authentication of Named Entities (DANE)</a>
+     */
+    CompletableFuture<Set<CertRecord>> listTLSARecordsAsync ( Fqdn browsingDomain, DnsCertPrefix tlsaPrefix,
+                                                              boolean secValidation, Executor executor,
+                                                              long timeout, TimeUnit unit );
+
+    /**
+     * Check asynchronously whether the addressed DNS is secured by DNSSEC.
+     *
+     * @param name     Fully Qualified Domain Name
+     * @param executor The <code>Executor</code> carrying out the lookup
+     * @param timeout  The deadline for this call, no deadline if not positive
+     * @param unit     The <code>TimeUnit</code> of <code>timeout</code>
+     *
+     * @return A future <code>true</code> iff the DNS is secured by DNSSEC
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc4035">DNSSEC</a>
+     */
+    CompletableFuture<Boolean> isDnsSecValidAsync ( Fqdn name, Executor executor, long timeout, TimeUnit unit );
+
+    /**
+     * List asynchronously the Service Types under the provided domain, with no deadline.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     *
+     * @return A future set of <code>String</code> referring the registered Service Types
+     */
+    default CompletableFuture<Set<String>> listServiceTypesAsync ( Fqdn browsingDomain, boolean secValidation,
+                                                                   Executor executor )
+    {
+        return listServiceTypesAsync(browsingDomain, secValidation, executor, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * List asynchronously the Service Instances under the provided domain, with no deadline.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param type           A compound data structure identifying the Service Type
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     *
+     * @return A future set of <code>ServiceInstance</code> objects
+     */
+    default CompletableFuture<Set<ServiceInstance>> listServiceInstancesAsync ( Fqdn browsingDomain, CompoundLabel type,
+                                                                                boolean secValidation, Executor executor )
+    {
+        return listServiceInstancesAsync(browsingDomain, type, secValidation, executor, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * List asynchronously the Service Instances under the provided domain, resolving only the
+     * <i>projected</i> parts of them, with no deadline.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param type           A compound data structure identifying the Service Type
+     * @param projection     The parts of the Service Instances to be resolved
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     *
+     * @return A future set of <code>ServiceInstance</code> objects
+     */
+    default CompletableFuture<Set<ServiceInstance>> listServiceInstancesAsync ( Fqdn browsingDomain, CompoundLabel type,
+                                                                                InstanceProjection projection,
+                                                                                boolean secValidation, Executor executor )
+    {
+        return listServiceInstancesAsync(browsingDomain, type, projection, secValidation, executor, 0L,
+                                         TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * List asynchronously the Text Resource Records for the specified <i>label</i>, with no deadline.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param label          A <code>String</code> identifying the label to be looked up
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     *
+     * @return A future set of <code>TextRecord</code> objects
+     */
+    default CompletableFuture<Set<TextRecord>> listTextRecordsAsync ( Fqdn browsingDomain, String label,
+                                                                      boolean secValidation, Executor executor )
+    {
+        return listTextRecordsAsync(browsingDomain, label, secValidation, executor, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * List asynchronously the TLSA Resource Records under the provided domain, with no deadline.
+     *
+     * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+     * @param tlsaPrefix     An object which provides the TLSA record prefix based on port and protocol
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+     * @param executor       The <code>Executor</code> carrying out the lookup
+     *
+     * @return A future set of <code>CertRecord</code> objects
+     */
+    default CompletableFuture<Set<CertRecord>> listTLSARecordsAsync ( Fqdn browsingDomain, DnsCertPrefix tlsaPrefix,
+                                                                      boolean secValidation, Executor executor )
+    {
+        return listTLSARecordsAsync(browsingDomain, tlsaPrefix, secValidation, executor, 0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Check asynchronously whether the addressed DNS is secured by DNSSEC, with no deadline.
+     *
+     * @param name     Fully Qualified Domain Name
+     * @param executor The <code>Executor</code> carrying out the lookup
+     *
+     * @return A future <code>true</code> iff the DNS is secured by DNSSEC
+     */
+    default CompletableFuture<Boolean> isDnsSecValidAsync ( Fqdn name, Executor executor )
+    {
+        return isDnsSecValidAsync(name, executor, 0L, TimeUnit.MILLISECONDS);
+    }
+
+}
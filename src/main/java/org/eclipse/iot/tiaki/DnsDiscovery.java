@@ -14,6 +14,7 @@ import org.eclipse.iot.tiaki.domain.CertRecord;
 import org.eclipse.iot.tiaki.domain.CompoundLabel;
 import org.eclipse.iot.tiaki.domain.DnsCertPrefix;
 import org.eclipse.iot.tiaki.domain.Fqdn;
+import org.eclipse.iot.tiaki.domain.InstanceProjection;
 import org.eclipse.iot.tiaki.domain.ServiceInstance;
 import org.eclipse.iot.tiaki.domain.TextRecord;
 import org.eclipse.iot.tiaki.exceptions.ConfigurationException;
@@ -57,6 +58,24 @@ public interface DnsDiscovery extends DnsSecChecker
 	Set<ServiceInstance> listServiceInstances ( Fqdn browsingDomain, CompoundLabel type, boolean secValidation )
                             throws LookupException, ConfigurationException;
 
+	/**
+	 * List the Service Instances under the provided domain, of the defined <i>type</i>, resolving only the
+	 * <i>projected</i> parts of them.
+	 *
+	 * @param browsingDomain A <code>Fqdn</code> referring the browsing domain
+	 * @param type           A compound data structure identifying the Service Type
+	 * @param projection     The parts of the Service Instances to be resolved
+     * @param secValidation  <code>true</code> iff DNSSEC trust chain has to be validated
+	 *
+     * @return A set of <code>ServiceInstance</code> objects
+     *
+	 * @throws LookupException        In case of any unrecoverable error during the lookup process.
+	 * @throws ConfigurationException In case of wrong/faulty static and/or runtime configuration.
+	 */
+	Set<ServiceInstance> listServiceInstances ( Fqdn browsingDomain, CompoundLabel type, InstanceProjection projection,
+                                                boolean secValidation )
+                            throws LookupException, ConfigurationException;
+
 	/**
 	 * List the Text Resource Records under the provided domain for the specified <i>label</i>.
 	 *
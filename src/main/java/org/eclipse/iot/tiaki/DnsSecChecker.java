@@ -12,6 +12,7 @@ package org.eclipse.iot.tiaki;
 import org.eclipse.iot.tiaki.domain.Fqdn;
 import org.eclipse.iot.tiaki.exceptions.ConfigurationException;
 import org.eclipse.iot.tiaki.exceptions.LookupException;
+import org.xbill.DNS.Record;
 
 /**
  * Abstraction of DNSSEC-related facilities to deal with cryptographic secure DNS providers.
@@ -35,4 +36,37 @@ public interface DnsSecChecker
 	 */
 	boolean isDnsSecValid ( Fqdn name ) throws LookupException, ConfigurationException;
 
+	/**
+	 * Export the given RRsets together with their whole DNSSEC chain, from the trust anchor down,
+	 * for them to be validated later on with no network I/O, e.g. by a constrained device.
+	 * 
+	 * @see <a href="https://tools.ietf.org/html/rfc9102">RFC 9102</a>
+	 * @param name  Fully Qualified Domain Name owning the RRsets
+	 * @param rrTypes  Resource Record types of the RRsets, at least one, e.g. SRV and TXT for a Service Instance
+	 * 
+	 * @return The wire form of the DNSSEC chain bundle
+	 * 
+	 * @throws LookupException
+	 *          In case no RRset type is given, an RRset cannot be resolved or DNSSEC is broken
+	 * @throws ConfigurationException
+	 *          Unproper setup for DNS Lookups
+	 */
+	byte[] exportDnsSecChain ( Fqdn name, int... rrTypes ) throws LookupException, ConfigurationException;
+
+	/**
+	 * Validate a DNSSEC chain bundle against the configured trust anchor, with no network I/O.
+	 * 
+	 * @param bundle  The wire form of a DNSSEC chain bundle
+	 * @param name  Fully Qualified Domain Name the RRsets are expected to be owned by
+	 * @param rrTypes  Resource Record types of the expected RRsets, at least one
+	 * 
+	 * @return The validated Resource Records the bundle answers with
+	 * 
+	 * @throws LookupException
+	 *          In case no RRset type is given, the bundle is malformed, answers other RRsets or does not validate
+	 * @throws ConfigurationException
+	 *          Unproper setup of the trust anchor
+	 */
+	Record[] verifyDnsSecChain ( byte[] bundle, Fqdn name, int... rrTypes ) throws LookupException, ConfigurationException;
+
 }
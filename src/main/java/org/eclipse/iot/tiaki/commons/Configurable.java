@@ -19,6 +19,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
 import org.xbill.DNS.ResolverConfig;
 
 /**
@@ -32,9 +34,17 @@ public abstract class Configurable
 {
 
     /**
-     * DNS Server to be addressed.
+     * DNS Server to be addressed, a <code>null</code> entry standing for the system's default ones.
      */
     protected List<InetAddress> dnsServers;
+    /**
+     * Ports of the DNS Servers, index by index, the standard port standing for the missing entries.
+     */
+    protected List<Integer> dnsPorts;
+    /**
+     * Resolved descriptors of the DNS Servers to be addressed, computed upon configuration check.
+     */
+    protected List<ResolverEndpoint> dnsEndpoints;
     /**
      * Secured DNS Domain to be used.
      */
@@ -55,6 +65,50 @@ public abstract class Configurable
      * To push client notifications upon internal events.
      */
     protected boolean introspected;
+    /**
+     * Maximum number of concurrent queries while resolving Service Instances.
+     */
+    protected int lookupConcurrency;
+    /**
+     * Maximum number of secure queries resolved and validated at once, none if 0.
+     */
+    protected int validationParallelism;
+    /**
+     * Percentile of the observed latencies after which a query is hedged, no hedging if 0.
+     */
+    protected double hedgingPercentile;
+    /**
+     * Maximum ratio of hedged queries over lookups.
+     */
+    protected double hedgingBudget;
+    /**
+     * Maximum number of Service Instances kept by the results cache, none if 0.
+     */
+    protected int resultCacheSize;
+    /**
+     * Use the SRV and TXT records found in the Additional section of the PTR responses.
+     */
+    protected boolean additionalRecords;
+    /**
+     * Transport the queries are sent with.
+     */
+    protected Transport transport;
+    /**
+     * Time an idle TCP connection is kept open, in milliseconds.
+     */
+    protected long tcpIdleTimeout;
+    /**
+     * Maximum number of queries pipelined over a TCP connection.
+     */
+    protected int tcpMaxInFlight;
+    /**
+     * EDNS payload size advertised by the queries, 0 to keep the dnsjava defaults.
+     */
+    protected int ednsPayloadSize;
+    /**
+     * Set the DO bit on the queries of the insecure lookups too.
+     */
+    protected boolean dnssecOk;
 
     /**
      * Configuration validation
@@ -64,13 +118,25 @@ public abstract class Configurable
      * Private Helper to push client notifications about any state change
      */
     protected Notifier notifier;
+    /**
+     * Dispatcher of the events to the typed listeners and to the observers.
+     */
+    private final EventBus events;
 
     protected Configurable()
     {
         this.introspected = false;
         this.checked = false;
+        this.events = new EventBus();
         this.notifier = this.new Notifier();
         this.dnsServers = new ArrayList<>();
+        this.dnsPorts = new ArrayList<>();
+        this.dnsEndpoints = new ArrayList<>();
+        this.lookupConcurrency = Constants.LOOKUP_CONCURRENCY;
+        this.resultCacheSize = Constants.RESULT_CACHE_SIZE;
+        this.transport = Transport.SIMPLE;
+        this.tcpIdleTimeout = Constants.TCP_IDLE_TIMEOUT;
+        this.tcpMaxInFlight = Constants.TCP_MAX_IN_FLIGHT;
     }
 
     /**
@@ -82,7 +148,24 @@ public abstract class Configurable
      */
     public final Configurable dnsServer(InetAddress host)
     {
+        return dnsServer(host, ResolverEndpoint.DNS_PORT);
+    }
+
+    /**
+     * Configure the target Resolution Server listening on a specific port. Multiple calls set
+     * multiple target Resolution Servers.
+     *
+     * @param host Server's address
+     * @param port Server's port
+     * @return This instance to further configure
+     */
+    public final Configurable dnsServer(InetAddress host, int port)
+    {
+        while (this.dnsPorts.size() < this.dnsServers.size()) {
+            this.dnsPorts.add(ResolverEndpoint.DNS_PORT);
+        }
         this.dnsServers.add(host);
+        this.dnsPorts.add(port);
         this.checked = false;
 
         return this;
@@ -145,6 +228,179 @@ public abstract class Configurable
         return this;
     }
 
+    /**
+     * Configure the concurrent resolution of Service Instances: the SRV and TXT queries of all the
+     * discovered instances are issued at once, at most <i>maxInFlight</i> at a time. The default
+     * value of 1 keeps the sequential resolution.
+     *
+     * @param maxInFlight Maximum number of concurrent queries, at least 1
+     * @return This instance to further configure
+     */
+    public final Configurable lookupConcurrency(int maxInFlight)
+    {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("Lookup concurrency must be at least 1");
+        }
+        this.lookupConcurrency = maxInFlight;
+        this.checked = false;
+
+        return this;
+    }
+
+    /**
+     * Configure the parallel validation of the secure lookups: the independent RRsets of a secure
+     * listing of Service Instances, i.e. the service names of each type then the SRV and TXT records
+     * of each instance, are resolved and validated by a pool of <i>workers</i> threads, so that the
+     * validation of an RRset overlaps with the queries of the next ones. Their outcomes are committed
+     * in the same order the sequential resolution would, once validated. It takes precedence over the
+     * lookup concurrency for the secure lookups. A value of 0 disables it, which is the default.
+     *
+     * @param workers Maximum number of RRsets validated at once, not negative
+     * @return This instance to further configure
+     */
+    public final Configurable validationParallelism(int workers)
+    {
+        if (workers < 0) {
+            throw new IllegalArgumentException("Validation parallelism must not be negative");
+        }
+        this.validationParallelism = workers;
+        this.checked = false;
+
+        return this;
+    }
+
+    /**
+     * Configure the hedged queries: in case more resolvers are configured and the current one has
+     * not answered a query within the <i>percentile</i> of the recently observed latencies, the same
+     * query is sent to the next resolver as well and the first valid answer is taken. The hedged
+     * queries never exceed <i>maxExtraLoad</i> times the lookups. A <i>percentile</i> of 0 disables
+     * hedging, which is the default.
+     *
+     * @param percentile Latency percentile triggering a hedge, in <code>[0, 100]</code>
+     * @param maxExtraLoad Maximum ratio of hedged queries over lookups, in <code>[0, 1]</code>
+     * @return This instance to further configure
+     */
+    public final Configurable hedging(double percentile, double maxExtraLoad)
+    {
+        if (percentile < 0.0 || percentile > 100.0) {
+            throw new IllegalArgumentException("Hedging percentile must be within [0, 100]");
+        }
+        if (maxExtraLoad < 0.0 || maxExtraLoad > 1.0) {
+            throw new IllegalArgumentException("Hedging extra load must be within [0, 1]");
+        }
+        this.hedgingPercentile = percentile;
+        this.hedgingBudget = maxExtraLoad;
+        this.checked = false;
+
+        return this;
+    }
+
+    /**
+     * Configure the results cache: resolved Service Instances are kept, up to <i>maxInstances</i>
+     * overall, until the shortest TTL of their SRV and TXT records expires. Instances built from
+     * records answered by the records cache, whose remaining TTL is unknown, are not kept. A value
+     * of 0, the default, disables the cache.
+     *
+     * @param maxInstances Maximum number of cached Service Instances, not negative
+     * @return This instance to further configure
+     */
+    public final Configurable resultCacheSize(int maxInstances)
+    {
+        if (maxInstances < 0) {
+            throw new IllegalArgumentException("Result cache size must not be negative");
+        }
+        this.resultCacheSize = maxInstances;
+        this.checked = false;
+
+        return this;
+    }
+
+    /**
+     * Configure the use of the Additional section: the SRV and TXT records a server adds to the
+     * service names listed in a PTR response are taken as they are, sparing the follow-up queries.
+     * It only applies to the insecure lookups, Additional records not being validated. Disabled by
+     * default.
+     *
+     * @param useThem <code>true</code> to take the SRV and TXT records from the Additional section
+     * @return This instance to further configure
+     */
+    public final Configurable additionalRecords(boolean useThem)
+    {
+        this.additionalRecords = useThem;
+        this.checked = false;
+
+        return this;
+    }
+
+    /**
+     * Configure the transport the queries are sent with: either a socket per query, blocking the
+     * querying thread, which is the default, a few UDP sockets multiplexing all the outstanding
+     * queries, or persistent TCP connections pipelining them. The multiplexed UDP transport retries
+     * the truncated responses over persistent TCP connections as well.
+     *
+     * @param queriesTransport The <code>Transport</code> to be used
+     * @return This instance to further configure
+     */
+    public final Configurable transport(Transport queriesTransport)
+    {
+        if (queriesTransport == null) {
+            throw new IllegalArgumentException("Transport must not be null");
+        }
+        this.transport = queriesTransport;
+        this.checked = false;
+
+        return this;
+    }
+
+    /**
+     * Configure the persistent TCP connections of the transports using them: a connection idle for
+     * <i>idleTimeout</i> milliseconds is closed, and a further connection is opened once
+     * <i>maxInFlight</i> queries are outstanding over each open one. Defaults to 10 seconds and 32
+     * queries.
+     *
+     * @param idleTimeout Time an idle connection is kept open, in milliseconds, positive
+     * @param maxInFlight Maximum number of queries pipelined over a connection, within [1, 65536]
+     * @return This instance to further configure
+     */
+    public final Configurable tcpConnections(long idleTimeout, int maxInFlight)
+    {
+        if (idleTimeout <= 0L) {
+            throw new IllegalArgumentException("TCP idle timeout must be positive");
+        }
+        if (maxInFlight < 1 || maxInFlight > 0x10000) {
+            throw new IllegalArgumentException("TCP queries in flight must be within [1, 65536]");
+        }
+        this.tcpIdleTimeout = idleTimeout;
+        this.tcpMaxInFlight = maxInFlight;
+        this.checked = false;
+
+        return this;
+    }
+
+    /**
+     * Configure the EDNS negotiation: queries advertise a payload size of <i>payloadSize</i> bytes,
+     * so that large responses, e.g. DNSSEC signed ones or large TXT sets, are not truncated, sparing
+     * the retry over TCP. Whenever a query times out, as a fragmented response might be dropped, it
+     * is retried with a smaller payload size, down to 1232 bytes, then to 512 bytes. The DO bit is
+     * always set on the queries of the secure lookups; <i>dnssecOk</i> sets it on the insecure ones
+     * too. By default the dnsjava settings are kept, with no negotiation.
+     *
+     * @param payloadSize The payload size advertised, within [512, 65535]
+     * @param dnssecOk <code>true</code> to request the DNSSEC records on the insecure lookups too
+     * @return This instance to further configure
+     */
+    public final Configurable edns(int payloadSize, boolean dnssecOk)
+    {
+        if (payloadSize < 512 || payloadSize > 65535) {
+            throw new IllegalArgumentException("EDNS payload size must be within [512, 65535]");
+        }
+        this.ednsPayloadSize = payloadSize;
+        this.dnssecOk = dnssecOk;
+        this.checked = false;
+
+        return this;
+    }
+
     /**
      * Set a status change observe encapsulating the client handler.
      *
@@ -155,12 +411,48 @@ public abstract class Configurable
     {
         if (handler != null) {
             this.notifier.addObserver(handler);
-            this.checked = false;
         }
 
         return this;
     }
 
+    /**
+     * Register a typed listener of the queries, notified whether this instance is introspected or
+     * not. Listeners are kept by a copy-on-write registry, hence registering one while lookups are
+     * running is safe, with no need for a new configuration check.
+     *
+     * @param listener A client <code>DiscoveryListener</code>
+     * @return This instance to further configure
+     */
+    public final Configurable listener(DiscoveryListener listener)
+    {
+        if (listener != null) {
+            this.events.register(listener);
+        }
+
+        return this;
+    }
+
+    /**
+     * Configure the asynchronous dispatch of the events to the listeners and to the observers: the
+     * threads carrying out the lookups hand the events over to a buffer of at least <i>capacity</i>
+     * events, drained in order by a dispatcher thread. Events published while the buffer is full are
+     * dropped. A value of 0 dispatches the events on the threads carrying out the lookups, which is
+     * the default. The dispatch mode changes at once, with no need for a new configuration check.
+     *
+     * @param capacity Number of events buffered, not negative
+     * @return This instance to further configure
+     */
+    public final Configurable asyncDispatch(int capacity)
+    {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Events buffer capacity must not be negative");
+        }
+        this.events.dispatchMode(capacity);
+
+        return this;
+    }
+
     /**
      * To check the actual configuration.
      *
@@ -175,16 +467,22 @@ public abstract class Configurable
             return;
         }
 
-        if(this.dnsServers.isEmpty()) {
-            String[] resolvers = ResolverConfig.getCurrentConfig().servers();
-            for(String resolver: resolvers) {
-                try {
-                    this.dnsServers.add(InetAddress.getByName(resolver));
-                } catch(UnknownHostException uhe) { /* acceptable, go ahead */ }
+        List<ResolverEndpoint> endpoints = new ArrayList<>();
+        for(int i = 0; i < this.dnsServers.size(); i++) {
+            InetAddress dnsServer = this.dnsServers.get(i);
+            if(dnsServer != null) {
+                int port = (i < this.dnsPorts.size() ? this.dnsPorts.get(i) : ResolverEndpoint.DNS_PORT);
+                endpoints.add(ResolverEndpoint.of(dnsServer, port));
+            } else {
+                endpoints.addAll(defaultEndpoints());
             }
-            if(this.dnsServers.isEmpty())
+        }
+        if(endpoints.isEmpty()) {
+            endpoints.addAll(defaultEndpoints());
+            if(endpoints.isEmpty())
                 throw new ConfigurationException("Unable to retrieve default DNS resolvers");
         }
+        this.dnsEndpoints = endpoints;
 
         if (this.trustAnchorFile != null) {
             try {
@@ -209,6 +507,26 @@ public abstract class Configurable
         this.checked = true;
     }
 
+    /**
+     * Retrieve the system's default DNS resolvers.
+     *
+     * @return A list of <code>ResolverEndpoint</code>, possibly empty
+     */
+    private static List<ResolverEndpoint> defaultEndpoints()
+    {
+        List<ResolverEndpoint> endpoints = new ArrayList<>();
+        String[] resolvers = ResolverConfig.getCurrentConfig().servers();
+        if(resolvers != null) {
+            for(String resolver: resolvers) {
+                try {
+                    endpoints.add(ResolverEndpoint.of(InetAddress.getByName(resolver)));
+                } catch(UnknownHostException uhe) { /* acceptable, go ahead */ }
+            }
+        }
+
+        return endpoints;
+    }
+
     /**
      * Check whether the configuration has been validated or not.
      *
@@ -245,6 +563,59 @@ public abstract class Configurable
         }
     }
 
+    /**
+     * Notify this instance's observers, building the status change event only if anyone is
+     * listening: no formatting takes place when this instance is not introspected or has no
+     * observer.
+     *
+     * @param what A <code>Supplier</code> of the status change event, either a <code>String</code>
+     *             or an <code>Object</code>
+     */
+    protected void statusChange(Supplier<?> what)
+    {
+        if (!introspecting()) {
+            return;
+        }
+        Object event = what.get();
+        if (event instanceof String) {
+            statusChange((String) event);
+        } else {
+            statusChange(event);
+        }
+    }
+
+    /**
+     * Check whether the status changes of this instance are listened to.
+     *
+     * @return <code>true</code> iff this instance is introspected and has at least an observer
+     */
+    protected boolean introspecting()
+    {
+        return this.introspected && this.notifier.countObservers() > 0;
+    }
+
+    /**
+     * Check whether the queries of this instance are listened to.
+     *
+     * @return <code>true</code> iff at least a <code>DiscoveryListener</code> is registered
+     */
+    protected boolean listened()
+    {
+        return this.events.hasListeners();
+    }
+
+    /**
+     * Notify this instance's listeners, building the query event only if any is registered.
+     *
+     * @param what A <code>Supplier</code> of the query event
+     */
+    protected void queryEvent(Supplier<QueryEvent> what)
+    {
+        if (listened()) {
+            this.events.publish(what.get());
+        }
+    }
+
     /**
      * Helper class encapsulating the introspective capabilities (asynchronous notification on
      * status changes).
@@ -256,21 +627,51 @@ public abstract class Configurable
     private class Notifier extends Observable
     {
 
+        /** Observers, never locked while notified, unlike the ones of <code>Observable</code>. */
+        private final CopyOnWriteArrayList<Observer> observers = new CopyOnWriteArrayList<>();
+
         @Override
-        public final void notifyObservers()
+        public void addObserver(Observer observer)
         {
-            setChanged();
-            if (Configurable.this.introspected) {
-                super.notifyObservers();
+            if (observer == null) {
+                throw new NullPointerException();
             }
+            this.observers.addIfAbsent(observer);
+        }
+
+        @Override
+        public void deleteObserver(Observer observer)
+        {
+            this.observers.remove(observer);
+        }
+
+        @Override
+        public void deleteObservers()
+        {
+            this.observers.clear();
+        }
+
+        @Override
+        public int countObservers()
+        {
+            return this.observers.size();
+        }
+
+        @Override
+        public final void notifyObservers()
+        {
+            notifyObservers(null);
         }
 
         @Override
         public final void notifyObservers(Object arg)
         {
-            setChanged();
-            if (Configurable.this.introspected) {
-                super.notifyObservers(arg);
+            if (Configurable.this.introspected && !this.observers.isEmpty()) {
+                Configurable.this.events.deliver(() -> {
+                    for (Observer observer : this.observers) {
+                        observer.update(this, arg);
+                    }
+                });
             }
         }
 
@@ -91,6 +91,26 @@ public final class Constants
 	 */
 	public static final int CACHE_TIME_LIMIT = 15 * 60;
 
+	/**
+	 * Default number of concurrent queries while resolving Service Instances (sequential).
+	 */
+	public static final int LOOKUP_CONCURRENCY = 1;
+
+	/**
+	 * Default number of Service Instances kept by the results cache (disabled).
+	 */
+	public static final int RESULT_CACHE_SIZE = 0;
+
+	/**
+	 * Default time an idle TCP connection to a server is kept open, in milliseconds.
+	 */
+	public static final long TCP_IDLE_TIMEOUT = 10000L;
+
+	/**
+	 * Default number of queries pipelined over a TCP connection.
+	 */
+	public static final int TCP_MAX_IN_FLIGHT = 32;
+
 	/**
 	 * Resource Record default TTL.
 	 */
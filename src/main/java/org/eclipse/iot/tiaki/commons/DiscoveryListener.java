@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.commons;
+
+/**
+ * A typed listener of the queries a discovery is made of, registered through
+ * {@link Configurable#listener(DiscoveryListener)}. Unlike the <code>Observer</code>s, it is notified
+ * whether the discovery is introspected or not.
+ *
+ * Listeners are called by the threads carrying out the queries, possibly concurrently, unless the
+ * asynchronous dispatch is configured: in that case they are called in order by a single dispatcher
+ * thread. Either way they should return quickly; any exception they throw is ignored, so that it
+ * never fails a query.
+ *
+ */
+public interface DiscoveryListener
+{
+
+    /**
+     * A query is about to be sent.
+     *
+     * @param event The <code>QueryEvent</code> of the started query
+     */
+    default void queryStarted(QueryEvent event)
+    {
+    }
+
+    /**
+     * A response has been received, even a negative one.
+     *
+     * @param event The <code>QueryEvent</code> of the answered query
+     */
+    default void queryAnswered(QueryEvent event)
+    {
+    }
+
+    /**
+     * No usable response has been received, or it could not be validated.
+     *
+     * @param event The <code>QueryEvent</code> of the failed query
+     */
+    default void queryFailed(QueryEvent event)
+    {
+    }
+
+}
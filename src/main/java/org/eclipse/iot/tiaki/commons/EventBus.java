@@ -0,0 +1,296 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.commons;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dispatcher of the events of a <code>Configurable</code>, to its typed listeners and to its
+ * observers. No lock is taken on the way: the listeners are kept by a copy-on-write registry, and
+ * the events are either delivered by the publishing thread, or handed over to a single dispatcher
+ * thread through a bounded lock-free ring buffer. In the latter case an event published while the
+ * buffer is full is dropped, rather than slowing the lookups down, and it is counted. A listener
+ * throwing an exception never fails a lookup, nor prevents the other listeners from being notified.
+ *
+ */
+final class EventBus
+{
+
+    /** Name of the dispatcher thread. */
+    static final String DISPATCHER_NAME = "tiaki-events";
+    /** Time a stopped dispatcher waits for the producers still offering an event, in nanoseconds. */
+    private static final long STOPPING_PARK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** Registered listeners. */
+    private final CopyOnWriteArrayList<DiscoveryListener> listeners;
+    /** Events dropped because of a full buffer. */
+    private final AtomicLong dropped;
+    /** Buffer of the asynchronous dispatch, <code>null</code> if synchronous. */
+    private volatile Ring ring;
+
+    EventBus()
+    {
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.dropped = new AtomicLong();
+    }
+
+    /**
+     * Register a listener, unless already registered.
+     *
+     * @param listener The <code>DiscoveryListener</code> to be registered
+     */
+    void register(DiscoveryListener listener)
+    {
+        this.listeners.addIfAbsent(listener);
+    }
+
+    /**
+     * Check whether any listener is registered.
+     *
+     * @return <code>true</code> iff at least a listener is registered
+     */
+    boolean hasListeners()
+    {
+        return !this.listeners.isEmpty();
+    }
+
+    /**
+     * Switch the dispatch mode: synchronous if <i>capacity</i> is 0, otherwise asynchronous through a
+     * buffer of at least <i>capacity</i> events. The events already buffered are still delivered.
+     *
+     * @param capacity Number of events the buffer holds, 0 for the synchronous dispatch
+     */
+    synchronized void dispatchMode(int capacity)
+    {
+        Ring current = this.ring;
+        if (current != null && capacity == current.capacity()) {
+            return;
+        }
+        this.ring = (capacity > 0 ? new Ring(capacity) : null);
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    /**
+     * Publish an event to the listeners, according to its phase.
+     *
+     * @param event The <code>QueryEvent</code> to be published
+     */
+    void publish(QueryEvent event)
+    {
+        deliver(() -> {
+            for (DiscoveryListener listener : this.listeners) {
+                try {
+                    dispatch(listener, event);
+                } catch (RuntimeException re) { /* a faulty listener must fail neither the query nor the others */ }
+            }
+        });
+    }
+
+    private static void dispatch(DiscoveryListener listener, QueryEvent event)
+    {
+        switch (event.getPhase()) {
+            case STARTED:
+                listener.queryStarted(event);
+                break;
+            case ANSWERED:
+                listener.queryAnswered(event);
+                break;
+            default:
+                listener.queryFailed(event);
+        }
+    }
+
+    /**
+     * Deliver an event, on the calling thread or on the dispatcher one. In case the dispatch mode is
+     * switched meanwhile, the event is delivered according to the new one.
+     *
+     * @param delivery The delivery of the event
+     */
+    void deliver(Runnable delivery)
+    {
+        while (true) {
+            Ring current = this.ring;
+            if (current == null) {
+                delivery.run();
+                return;
+            }
+            if (current.enter()) {
+                try {
+                    if (!current.offer(delivery)) {
+                        this.dropped.incrementAndGet();
+                    }
+                } finally {
+                    current.exit();
+                }
+                return;
+            }
+            // stopped meanwhile, it has been replaced already
+        }
+    }
+
+    /**
+     * Retrieve the number of events dropped so far because of a full buffer.
+     *
+     * @return The number of dropped events
+     */
+    long dropped()
+    {
+        return this.dropped.get();
+    }
+
+    /**
+     * A bounded multi-producer single-consumer ring buffer, drained by its own daemon thread. Each
+     * slot carries a sequence number telling whether it is free for the producers of the current lap
+     * or it holds an event for the consumer; producers claim slots by moving the tail forward. Once
+     * stopped, the dispatcher thread leaves only when no producer is still offering an event.
+     */
+    private static final class Ring implements Runnable
+    {
+
+        private final int mask;
+        private final AtomicReferenceArray<Runnable> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong tail;
+        /** Producers offering an event right now. */
+        private final AtomicInteger producers;
+        /** Next slot to be consumed, owned by the dispatcher thread. */
+        private long head;
+        private final Thread dispatcher;
+        private volatile boolean parked;
+        private volatile boolean stopped;
+
+        private Ring(int capacity)
+        {
+            int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+            this.mask = size - 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.sequences = new AtomicLongArray(size);
+            for (int i = 0; i < size; i++) {
+                this.sequences.set(i, i);
+            }
+            this.tail = new AtomicLong();
+            this.producers = new AtomicInteger();
+            this.dispatcher = new Thread(this, DISPATCHER_NAME);
+            this.dispatcher.setDaemon(true);
+            this.dispatcher.start();
+        }
+
+        private int capacity()
+        {
+            return this.mask + 1;
+        }
+
+        /**
+         * Start offering an event, unless stopped.
+         */
+        private boolean enter()
+        {
+            this.producers.incrementAndGet();
+            if (this.stopped) {
+                this.producers.decrementAndGet();
+                return false;
+            }
+
+            return true;
+        }
+
+        private void exit()
+        {
+            this.producers.decrementAndGet();
+        }
+
+        private boolean offer(Runnable delivery)
+        {
+            long position = this.tail.get();
+            while (true) {
+                int index = (int) position & this.mask;
+                long difference = this.sequences.get(index) - position;
+                if (difference == 0) {
+                    if (this.tail.compareAndSet(position, position + 1)) {
+                        this.slots.lazySet(index, delivery);
+                        this.sequences.set(index, position + 1);
+                        break;
+                    }
+                    position = this.tail.get();
+                } else if (difference < 0) {
+                    return false;   // full
+                } else {
+                    position = this.tail.get();
+                }
+            }
+            if (this.parked) {
+                LockSupport.unpark(this.dispatcher);
+            }
+
+            return true;
+        }
+
+        private Runnable poll()
+        {
+            int index = (int) this.head & this.mask;
+            if (this.sequences.get(index) != this.head + 1) {
+                return null;
+            }
+            Runnable delivery = this.slots.get(index);
+            this.slots.lazySet(index, null);
+            this.sequences.set(index, this.head + this.mask + 1);
+            this.head++;
+
+            return delivery;
+        }
+
+        private void stop()
+        {
+            this.stopped = true;
+            LockSupport.unpark(this.dispatcher);
+        }
+
+        @Override
+        public void run()
+        {
+            while (true) {
+                Runnable delivery = poll();
+                if (delivery == null && this.stopped && this.producers.get() == 0) {
+                    delivery = poll();  // offered right before the last producer left
+                    if (delivery == null) {
+                        return;
+                    }
+                }
+                if (delivery != null) {
+                    try {
+                        delivery.run();
+                    } catch (RuntimeException re) { /* a faulty observer must not stop the dispatcher */ }
+                    continue;
+                }
+                // published events are seen either by the check below or by the producers' unpark
+                this.parked = true;
+                if (this.sequences.get((int) this.head & this.mask) != this.head + 1) {
+                    if (this.stopped) {
+                        // waiting for the producers to leave, which they do not signal
+                        LockSupport.parkNanos(this, STOPPING_PARK);
+                    } else {
+                        LockSupport.park(this);
+                    }
+                }
+                this.parked = false;
+            }
+        }
+
+    }
+
+}
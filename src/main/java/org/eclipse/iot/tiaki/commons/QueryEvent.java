@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.commons;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+/**
+ * A query sent to a DNS server, as seen by a {@link DiscoveryListener}: when it is started, and
+ * once it is answered or it has failed. Unlike <code>StatusChangeEvent</code>, it carries structured
+ * fields, and nothing is formatted unless asked for.
+ *
+ */
+public final class QueryEvent
+{
+
+    /**
+     * Phase of a query.
+     */
+    public enum Phase
+    {
+        /** The query is about to be sent. */
+        STARTED,
+        /** A response has been received, even a negative one. */
+        ANSWERED,
+        /** No usable response has been received, or it could not be validated. */
+        FAILED
+    }
+
+    private final Phase phase;
+    /** Key of the server the query is sent to. */
+    private final String server;
+    /** Name being looked up. */
+    private final String name;
+    /** Resource Record type being looked up. */
+    private final int rrType;
+    /** <code>true</code> iff the response is validated. */
+    private final boolean secure;
+    /** Outcome of the query, <code>null</code> while started. */
+    private final StatusCode outcome;
+    /** Records answered, empty unless answered. */
+    private final List<Record> records;
+    /** Time elapsed since the query was started, in milliseconds. */
+    private final long elapsed;
+
+    private QueryEvent(Phase phase, String server, String name, int rrType, boolean secure, StatusCode outcome,
+                       List<Record> records, long elapsed)
+    {
+        this.phase = phase;
+        this.server = server;
+        this.name = name;
+        this.rrType = rrType;
+        this.secure = secure;
+        this.outcome = outcome;
+        this.records = records;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * Build the event of a query about to be sent.
+     *
+     * @param server Key of the server the query is sent to
+     * @param name Name being looked up
+     * @param rrType Resource Record type being looked up
+     * @param secure <code>true</code> iff the response is validated
+     * @return An instance of <code>QueryEvent</code>
+     */
+    public static QueryEvent started(String server, String name, int rrType, boolean secure)
+    {
+        return new QueryEvent(Phase.STARTED, server, name, rrType, secure, null,
+                              Collections.<Record>emptyList(), 0L);
+    }
+
+    /**
+     * Build the event of an answered query.
+     *
+     * @param started The event the query has been started with
+     * @param outcome Outcome of the query
+     * @param records Records answered, if any
+     * @param elapsed Time elapsed since the query was started, in milliseconds
+     * @return An instance of <code>QueryEvent</code>
+     */
+    public static QueryEvent answered(QueryEvent started, StatusCode outcome, Record[] records, long elapsed)
+    {
+        return new QueryEvent(Phase.ANSWERED, started.server, started.name, started.rrType, started.secure,
+                              outcome, (records == null ? Collections.<Record>emptyList()
+                                                        : Collections.unmodifiableList(Arrays.asList(records))),
+                              elapsed);
+    }
+
+    /**
+     * Build the event of a failed query.
+     *
+     * @param started The event the query has been started with
+     * @param outcome Outcome of the query
+     * @param elapsed Time elapsed since the query was started, in milliseconds
+     * @return An instance of <code>QueryEvent</code>
+     */
+    public static QueryEvent failed(QueryEvent started, StatusCode outcome, long elapsed)
+    {
+        return new QueryEvent(Phase.FAILED, started.server, started.name, started.rrType, started.secure,
+                              outcome, Collections.<Record>emptyList(), elapsed);
+    }
+
+    public Phase getPhase() { return phase; }
+
+    public String getServer() { return server; }
+
+    public String getName() { return name; }
+
+    public int getRrType() { return rrType; }
+
+    public boolean isSecure() { return secure; }
+
+    public StatusCode getOutcome() { return outcome; }
+
+    public List<Record> getRecords() { return records; }
+
+    public long getElapsed() { return elapsed; }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder builder = new StringBuilder();
+        builder.append(phase).append(' ').append(name).append(' ').append(Type.string(rrType))
+               .append(" @").append(server);
+        if (outcome != null) {
+            builder.append(' ').append(outcome).append(" in ").append(elapsed).append("ms");
+        }
+
+        return builder.toString();
+    }
+
+}
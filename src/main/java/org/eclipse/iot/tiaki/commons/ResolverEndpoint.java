@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.commons;
+
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Objects;
+
+/**
+ * Resolved descriptor of a configured DNS server: its address, port and the key it is displayed
+ * and traced with. It is computed once, when the configuration is checked, and it never triggers
+ * any name-service call (the key is the literal address, not the canonical host name).
+ *
+ */
+public final class ResolverEndpoint implements Serializable
+{
+
+    private static final long serialVersionUID = -1960526123406587431L;
+
+    /** Standard DNS port. */
+    public static final int DNS_PORT = 53;
+
+    /** Server's address. */
+    private final InetAddress address;
+    /** Server's port. */
+    private final int port;
+    /** Display key: the literal address, followed by <code>#port</code> for non standard ports. */
+    private final String key;
+
+    /**
+     * Build a descriptor for the server at the given address and standard DNS port.
+     *
+     * @param address Server's address
+     * @return An instance of <code>ResolverEndpoint</code>
+     */
+    public static ResolverEndpoint of(InetAddress address)
+    {
+        return of(address, DNS_PORT);
+    }
+
+    /**
+     * Build a descriptor for the server at the given address and port.
+     *
+     * @param address Server's address
+     * @param port    Server's port
+     * @return An instance of <code>ResolverEndpoint</code>
+     */
+    public static ResolverEndpoint of(InetAddress address, int port)
+    {
+        if (address == null) {
+            throw new IllegalArgumentException("null server address");
+        }
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException(String.format("invalid server port [%d]", port));
+        }
+
+        return new ResolverEndpoint(address, port);
+    }
+
+    public InetAddress getAddress() { return this.address; }
+
+    public int getPort() { return this.port; }
+
+    public String getKey() { return this.key; }
+
+    /**
+     * Return the socket address of this server.
+     *
+     * @return An <code>InetSocketAddress</code> built without any name resolution
+     */
+    public InetSocketAddress socketAddress()
+    {
+        return new InetSocketAddress(this.address, this.port);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return Objects.hash(this.address, this.port);
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final ResolverEndpoint other = (ResolverEndpoint) obj;
+
+        return this.port == other.port && Objects.equals(this.address, other.address);
+    }
+
+    @Override
+    public String toString()
+    {
+        return this.key;
+    }
+
+    private ResolverEndpoint(InetAddress address, int port)
+    {
+        this.address = address;
+        this.port = port;
+        this.key = (port == DNS_PORT ? address.getHostAddress() : address.getHostAddress() + "#" + port);
+    }
+
+}
@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.commons;
+
+/**
+ * Transport the queries are sent to the resolution servers with.
+ *
+ */
+public enum Transport
+{
+
+    /** A socket per query, blocking the querying thread (<code>SimpleResolver</code>). */
+    SIMPLE,
+    /** A few non-blocking UDP sockets shared by all the queries, served by a single thread. */
+    MULTIPLEXED_UDP,
+    /** Persistent TCP connections to each server, pipelining the queries (RFC 7766). */
+    PIPELINED_TCP
+
+}
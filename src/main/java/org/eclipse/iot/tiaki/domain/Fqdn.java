@@ -11,10 +11,15 @@ package org.eclipse.iot.tiaki.domain;
 
 import org.eclipse.iot.tiaki.commons.Constants;
 import org.eclipse.iot.tiaki.utils.ValidatorUtil;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.TextParseException;
 
 /**
- * A class abstracting a Fully Qualified Domain Name (FQDN).
+ * A class abstracting a Fully Qualified Domain Name (FQDN). The FQDN is built, validated and
+ * parsed once, when the instance is created, as are the prefixed ones it is asked for.
  *
  * @see <a href="http://en.wikipedia.org/wiki/Fully_qualified_domain_name">FQDN</a>
  * @see <a href="http://en.wikipedia.org/wiki/CNAME_record">CNAME</a>
@@ -26,6 +31,10 @@ public final class Fqdn
      * Quoting template for escaped FQDNs.
      */
     private static final String DNS_SD_QUOTED = "\"%s\"";
+    /**
+     * Maximum number of prefixed FQDNs kept by an instance.
+     */
+    private static final int PREFIXED_CACHE_SIZE = 8;
 
     /**
      * A label to be concatenated with the root domain name.
@@ -35,6 +44,22 @@ public final class Fqdn
      * A root domain name.
      */
     private final String domain;
+    /**
+     * The FQDN, quoted if DNS-SD specific, <code>null</code> if invalid.
+     */
+    private final String fqdn;
+    /**
+     * Why the FQDN is invalid, <code>null</code> if valid.
+     */
+    private final IllegalArgumentException invalid;
+    /**
+     * The FQDN as a DNS name, <code>null</code> if it cannot be parsed.
+     */
+    private final Name name;
+    /**
+     * The prefixed FQDNs built so far, by prefix.
+     */
+    private final Map<String, String> prefixed = new ConcurrentHashMap<>();
 
     /**
      * Constructor taking in input the domain name to be used onwards.
@@ -59,6 +84,17 @@ public final class Fqdn
         ValidatorUtil.check(entityLabel != null);
         this.entityLabel = entityLabel.trim();
         this.domain = domain.trim();
+
+        String built = null;
+        IllegalArgumentException failure = null;
+        try {
+            built = buildFQDN("");
+        } catch (IllegalArgumentException iae) {
+            failure = iae;
+        }
+        this.fqdn = built;
+        this.invalid = failure;
+        this.name = parse(built);
     }
 
     /**
@@ -69,7 +105,11 @@ public final class Fqdn
     // TODO Remove in favour of toString()
     public String fqdn()
     {
-        return buildFQDN("");
+        if (this.invalid != null) {
+            throw this.invalid;
+        }
+
+        return this.fqdn;
     }
 
     /**
@@ -80,11 +120,29 @@ public final class Fqdn
      */
     public String fqdnWithPrefix(String prefix)
     {
-        String builtFqdn = buildFQDN("");
+        String builtFqdn = fqdn();
         if(builtFqdn.contains(prefix))
             return builtFqdn;
-        else
-            return buildFQDN(prefix);
+
+        String builtWithPrefix = this.prefixed.get(prefix);
+        if (builtWithPrefix == null) {
+            builtWithPrefix = buildFQDN(prefix);
+            if (this.prefixed.size() < PREFIXED_CACHE_SIZE) {
+                this.prefixed.put(prefix, builtWithPrefix);
+            }
+        }
+
+        return builtWithPrefix;
+    }
+
+    /**
+     * Return the FQDN as a DNS name, unquoted.
+     *
+     * @return The <code>Name</code> of the FQDN, <code>null</code> if it cannot be parsed
+     */
+    public Name name()
+    {
+        return this.name;
     }
 
 	/**
@@ -139,10 +197,28 @@ public final class Fqdn
         }
     }
 
+    /**
+     * Parse a FQDN as a DNS name, unquoting it if DNS-SD specific.
+     *
+     * @param fqdn A FQDN as built, <code>null</code> if invalid
+     * @return The <code>Name</code> of the FQDN, <code>null</code> if it cannot be parsed
+     */
+    private static Name parse(String fqdn)
+    {
+        if (fqdn == null) {
+            return null;
+        }
+        try {
+            return Name.fromString(fqdn.startsWith("\"") ? fqdn.substring(1, fqdn.length() - 1) : fqdn);
+        } catch (TextParseException tpe) {
+            return null;
+        }
+    }
+
     @Override
     public String toString()
     {
-        return buildFQDN("");
+        return fqdn();
     }
 
     @Override
@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.domain;
+
+/**
+ * Parts of a {@link ServiceInstance} to be resolved while listing the instances. The parts which are
+ * not projected are not looked up: a TXT record left out is resolved on first access instead, and
+ * instances lacking it are no longer discarded.
+ *
+ */
+public enum InstanceProjection
+{
+
+	/** The SRV record only, the TXT record being resolved on demand. */
+	SRV( false, false ),
+	/** The SRV and TXT records, instances without TXT record being discarded. */
+	SRV_TXT( true, false ),
+	/** The SRV and TXT records, along with the TLSA records of the service endpoint. */
+	SRV_TXT_TLSA( true, true );
+
+	private final boolean text;
+	private final boolean certs;
+
+
+	private InstanceProjection ( boolean text, boolean certs )
+    {
+		this.text = text;
+		this.certs = certs;
+	}
+
+
+	/**
+	 * Check whether the TXT record is resolved along with the SRV one.
+	 *
+	 * @return <code>true</code> iff the TXT record is part of this projection
+	 */
+	public boolean withText ()
+    {
+		return this.text;
+	}
+
+
+	/**
+	 * Check whether the TLSA records of the service endpoint are resolved as well.
+	 *
+	 * @return <code>true</code> iff the TLSA records are part of this projection
+	 */
+	public boolean withCerts ()
+    {
+		return this.certs;
+	}
+
+}
@@ -10,12 +10,20 @@
 
 package org.eclipse.iot.tiaki.domain;
 
+import java.util.Collections;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Supplier;
 
 /**
  * Class to capture service instance related information. This includes both the SRV and TXT record information. It implements
  * {@link Comparable} to sort services based on priority of {@link ServiceRecord}.
  *
+ * The TXT record might be resolved on first access (see {@link InstanceProjection}); the TLSA records of the service
+ * endpoint are available only if they have been projected. Two instances are equal if they share type, SRV and TLSA
+ * records, whatever their TXT records: comparing never triggers a lookup.
+ *
  */
 public final class ServiceInstance extends DiscoveryRecord
 {
@@ -24,8 +32,12 @@ public final class ServiceInstance extends DiscoveryRecord
 	private final String serviceType;
 	/** The <code>ServiceRecord</code> of this Service Instance. */
 	private final ServiceRecord serviceRecord;
-	/** The <code>TextRecord</code> of this Service Instance. */
-	private final TextRecord textRecord;
+	/** The <code>TextRecord</code> of this Service Instance, once resolved. */
+	private TextRecord textRecord;
+	/** Resolves the <code>TextRecord</code> on first access, <code>null</code> once resolved. */
+	private Supplier<TextRecord> textLoader;
+	/** The <code>CertRecord</code>s of this Service Instance endpoint. */
+	private final Set<CertRecord> certRecords;
 
 
 	/**
@@ -39,6 +51,26 @@ public final class ServiceInstance extends DiscoveryRecord
 	 *        The <code>TextRecord</code> of this Service Instance
 	 */
 	public ServiceInstance ( String serviceType, ServiceRecord serviceRecord, TextRecord textRecord )
+    {
+		this( serviceType, serviceRecord, textRecord, Collections.<CertRecord> emptySet() );
+	}
+
+
+	/**
+	 * Four arguments constructor building up a Service Instance by its own type, record, textual information and the
+	 * certificates of its endpoint.
+	 *
+	 * @param serviceType
+	 *        A <code>String</code> defining the Service Type of this Service Instance
+	 * @param serviceRecord
+	 *        The <code>ServiceRecord</code> of this Service Instance
+	 * @param textRecord
+	 *        The <code>TextRecord</code> of this Service Instance
+	 * @param certRecords
+	 *        The <code>CertRecord</code>s of this Service Instance endpoint
+	 */
+	public ServiceInstance ( String serviceType, ServiceRecord serviceRecord, TextRecord textRecord,
+                             Set<CertRecord> certRecords )
     {
 		super( String.format( "%s %s %d %d %d %d %s", serviceType, serviceRecord.getHost(), serviceRecord.getPort(),
 				serviceRecord.getPriority(), serviceRecord.getWeight(), serviceRecord.getTtl(), textRecord.getRData() ),
@@ -46,6 +78,41 @@ public final class ServiceInstance extends DiscoveryRecord
 		this.serviceType = serviceType;
 		this.serviceRecord = serviceRecord;
 		this.textRecord = textRecord;
+		this.textLoader = null;
+		this.certRecords = Collections.unmodifiableSet( new TreeSet<>( certRecords ) );
+	}
+
+
+	private ServiceInstance ( String serviceType, ServiceRecord serviceRecord, Supplier<TextRecord> textLoader )
+    {
+		super( String.format( "%s %s %d %d %d %d", serviceType, serviceRecord.getHost(), serviceRecord.getPort(),
+				serviceRecord.getPriority(), serviceRecord.getWeight(), serviceRecord.getTtl() ),
+				serviceRecord.getTtl() );
+		this.serviceType = serviceType;
+		this.serviceRecord = serviceRecord;
+		this.textRecord = null;
+		this.textLoader = textLoader;
+		this.certRecords = Collections.emptySet();
+	}
+
+
+	/**
+	 * Static builder. It creates a Service Instance whose <code>TextRecord</code> is resolved on first access.
+	 *
+	 * @param serviceType
+	 *        A <code>String</code> defining the Service Type of this Service Instance
+	 * @param serviceRecord
+	 *        The <code>ServiceRecord</code> of this Service Instance
+	 * @param textLoader
+	 *        Resolves the <code>TextRecord</code>, returning <code>null</code> if there is none, or throwing an
+	 *        unchecked exception if it cannot be resolved for now
+	 *
+	 * @return A Service Instance with a lazily resolved <code>TextRecord</code>
+	 */
+	public static ServiceInstance build ( String serviceType, ServiceRecord serviceRecord,
+                                          Supplier<TextRecord> textLoader )
+    {
+		return new ServiceInstance( serviceType, serviceRecord, Objects.requireNonNull( textLoader ) );
 	}
 
 
@@ -61,20 +128,75 @@ public final class ServiceInstance extends DiscoveryRecord
 
 
 	/**
-	 * Returns the textRecord
+	 * Returns the textRecord, resolving it on first access if need be. A failed resolution is not kept: the
+	 * textRecord is resolved again on next access.
 	 *
 	 * @return the textRecord
+	 *
+	 * @throws RuntimeException
+	 *         as thrown by the loader if the textRecord cannot be resolved, e.g. an
+	 *         <code>UncheckedLookupException</code> if it fails validation
 	 */
 	public TextRecord getTextRecord ()
     {
-		return this.textRecord;
+		Supplier<TextRecord> loader = null;
+		synchronized ( this ) {
+			if ( this.textLoader == null ) {
+				return this.textRecord;
+			}
+			loader = this.textLoader;
+		}
+		// resolved out of the lock, concurrent first accesses might both resolve it; on failure the loader is
+		// kept, for the next access to try again
+		TextRecord resolved = loader.get();
+		synchronized ( this ) {
+			if ( this.textLoader != null ) {
+				this.textRecord = resolved;
+				this.textLoader = null;
+			}
+			return this.textRecord;
+		}
+	}
+
+
+	/**
+	 * Check whether the textRecord has been resolved already, without resolving it.
+	 *
+	 * @return <code>true</code> iff the textRecord is available without a lookup
+	 */
+	public synchronized boolean isTextRecordResolved ()
+    {
+		return this.textLoader == null;
+	}
+
+
+	/**
+	 * Retrieve the textRecord if it has been resolved already, without resolving it.
+	 *
+	 * @return the textRecord, <code>null</code> if not resolved yet or there is none
+	 */
+	private synchronized TextRecord resolvedTextRecord ()
+    {
+		return ( this.textLoader == null ? this.textRecord : null );
+	}
+
+
+	/**
+	 * Returns the certRecords of the service endpoint, empty unless they have been projected
+	 *
+	 * @return the certRecords
+	 */
+	public Set<CertRecord> getCertRecords ()
+    {
+		return this.certRecords;
 	}
 
 
 	@Override
 	public int hashCode ()
     {
-		return Objects.hash( this.serviceType, this.serviceRecord, this.textRecord );
+		// the textRecord is left out, not to resolve it
+		return Objects.hash( this.serviceType, this.serviceRecord, this.certRecords );
 	}
 
 
@@ -89,11 +211,11 @@ public final class ServiceInstance extends DiscoveryRecord
 			return false;
 		}
 
+		// the textRecord is left out as in hashCode, not to resolve it
 		final ServiceInstance that = (ServiceInstance) obj;
-
-		return Objects.equals( this.serviceType, that.getServiceType() )
-				&& Objects.equals( this.serviceRecord, that.getServiceRecord() )
-				&& Objects.equals( this.textRecord, that.getTextRecord() );
+		return Objects.equals( this.serviceType, that.serviceType )
+				&& Objects.equals( this.serviceRecord, that.serviceRecord )
+				&& Objects.equals( this.certRecords, that.certRecords );
 	}
 
 
@@ -118,9 +240,14 @@ public final class ServiceInstance extends DiscoveryRecord
     {
 		StringBuilder sb = new StringBuilder();
 		sb.append( this.serviceRecord );
-		if ( this.textRecord != null ) {
+		TextRecord resolved = resolvedTextRecord();
+		if ( resolved != null ) {
+			sb.append( " " )
+              .append( resolved.getRData() );
+		}
+		for ( CertRecord certRecord : this.certRecords ) {
 			sb.append( " " )
-              .append( this.textRecord.getRData() );
+              .append( certRecord );
 		}
 
 		return sb.toString();
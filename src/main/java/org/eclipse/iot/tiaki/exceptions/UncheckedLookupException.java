@@ -0,0 +1,33 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.exceptions;
+
+/**
+ * Wraps a <code>LookupException</code> raised where no checked exception can be, e.g. while
+ * resolving on first access the TXT record of a Service Instance.
+ *
+ */
+public class UncheckedLookupException extends RuntimeException
+{
+
+    private static final long serialVersionUID = 4823190452718620931L;
+
+    public UncheckedLookupException(LookupException cause)
+    {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized LookupException getCause()
+    {
+        return (LookupException) super.getCause();
+    }
+
+}
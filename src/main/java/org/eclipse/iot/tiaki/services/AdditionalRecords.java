@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+/**
+ * SRV and TXT records found in the Additional section of the PTR responses, by owner name. DNS-SD
+ * servers commonly add them to the service names they list, which spares the follow-up queries.
+ * Names are compared case insensitively; any other record type is ignored.
+ *
+ * Not thread-safe: it is meant to be filled and read within a single discovery.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc6763#section-12.1">RFC 6763, PTR Records</a>
+ */
+final class AdditionalRecords
+{
+
+    /** Harvested records, by owner name and type. */
+    private final Map<String, List<Record>> records = new HashMap<>();
+
+    /**
+     * Harvest the SRV and TXT records of an Additional section.
+     *
+     * @param additional The records of the Additional section, <code>null</code> if none
+     */
+    void harvest(Record[] additional)
+    {
+        if (additional == null) {
+            return;
+        }
+        for (Record record : additional) {
+            if (record.getType() == Type.SRV || record.getType() == Type.TXT) {
+                String key = key(record.getName().toString(), record.getType());
+                List<Record> rrSet = this.records.get(key);
+                if (rrSet == null) {
+                    rrSet = new ArrayList<>();
+                    this.records.put(key, rrSet);
+                }
+                if (!rrSet.contains(record)) {
+                    rrSet.add(record);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retrieve the records harvested for the given name and type.
+     *
+     * @param name The owner name
+     * @param rrType The Resource Record type, either SRV or TXT
+     *
+     * @return The harvested records, <code>null</code> if none
+     */
+    Record[] get(String name, int rrType)
+    {
+        List<Record> rrSet = this.records.get(key(name, rrType));
+
+        return (rrSet == null ? null : rrSet.toArray(new Record[rrSet.size()]));
+    }
+
+    private static String key(String name, int rrType)
+    {
+        String fqdn = name.toLowerCase();
+
+        return (fqdn.endsWith(".") ? fqdn : fqdn + ".") + "/" + rrType;
+    }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A <code>CompletableFuture</code> wrapping a blocking lookup run on a caller-supplied
+ * <code>Executor</code>. Unlike a plain <code>CompletableFuture</code>, cancelling it (or letting
+ * its deadline expire) interrupts the thread carrying out the lookup.
+ *
+ * @param <T> The type of the lookup result
+ */
+final class AsyncLookup<T> extends CompletableFuture<T> implements Runnable
+{
+
+    /** Single daemon thread shared by all instances to enforce deadlines. */
+    private static final ScheduledExecutorService DEADLINES =
+            Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("tiaki-deadlines"));
+
+    /** The blocking lookup to be run. */
+    private final Callable<T> lookup;
+    /** Guards <code>runner</code> against concurrent interruption. */
+    private final Object lock = new Object();
+    /** The thread running the lookup, if any. */
+    private Thread runner;
+    /** Whether <code>runner</code> has been interrupted by this lookup; guarded by <code>lock</code>. */
+    private boolean interrupted;
+
+    /**
+     * Submit the blocking <i>lookup</i> to the <i>executor</i>.
+     *
+     * @param lookup   The blocking lookup to be carried out
+     * @param executor The <code>Executor</code> running the lookup
+     * @param timeout  The deadline, no deadline if not positive
+     * @param unit     The <code>TimeUnit</code> of <code>timeout</code>
+     * @param <T>      The type of the lookup result
+     *
+     * @return A future completed with the lookup outcome
+     */
+    static <T> CompletableFuture<T> submit(Callable<T> lookup, Executor executor, long timeout, TimeUnit unit)
+    {
+        if (lookup == null || executor == null || unit == null) {
+            throw new IllegalArgumentException("null lookup, executor or time unit");
+        }
+
+        final AsyncLookup<T> future = new AsyncLookup<>(lookup);
+        if (timeout > 0) {
+            final ScheduledFuture<?> deadline = DEADLINES.schedule(future::expire, timeout, unit);
+            future.whenComplete((result, error) -> deadline.cancel(false));
+        }
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException ree) {
+            future.completeExceptionally(ree);
+        }
+
+        return future;
+    }
+
+    @Override
+    public void run()
+    {
+        synchronized (this.lock) {
+            if (isDone()) {
+                return;
+            }
+            this.runner = Thread.currentThread();
+        }
+        try {
+            complete(this.lookup.call());
+        } catch (Throwable error) {
+            completeExceptionally(error);
+        } finally {
+            synchronized (this.lock) {
+                this.runner = null;
+                // do not leak a late cancellation into the executor's thread, nor clear its own interrupts
+                if (this.interrupted) {
+                    Thread.interrupted();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning)
+    {
+        boolean cancelled = super.cancel(mayInterruptIfRunning);
+        if (cancelled) {
+            interruptRunner();
+        }
+
+        return cancelled;
+    }
+
+    /**
+     * Complete this future with a <code>TimeoutException</code> and stop the running lookup.
+     */
+    private void expire()
+    {
+        if (completeExceptionally(new TimeoutException("Lookup deadline expired"))) {
+            interruptRunner();
+        }
+    }
+
+    private void interruptRunner()
+    {
+        synchronized (this.lock) {
+            if (this.runner != null && !this.runner.isInterrupted()) {
+                this.runner.interrupt();
+                this.interrupted = true;
+            }
+        }
+    }
+
+    private AsyncLookup(Callable<T> lookup)
+    {
+        this.lookup = lookup;
+    }
+
+}
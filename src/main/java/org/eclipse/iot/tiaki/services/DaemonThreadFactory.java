@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A <code>ThreadFactory</code> building named daemon threads, so that internal pools never prevent
+ * the client application from exiting.
+ *
+ */
+final class DaemonThreadFactory implements ThreadFactory
+{
+
+    /** Prefix of the built threads' names. */
+    private final String prefix;
+    /** Sequence number of the next built thread. */
+    private final AtomicInteger sequence;
+
+    DaemonThreadFactory(String prefix)
+    {
+        this.prefix = prefix;
+        this.sequence = new AtomicInteger();
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable)
+    {
+        Thread thread = new Thread(runnable, this.prefix + "-" + this.sequence.incrementAndGet());
+        thread.setDaemon(true);
+
+        return thread;
+    }
+
+}
@@ -9,23 +9,44 @@
 
 package org.eclipse.iot.tiaki.services;
 
-import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.eclipse.iot.tiaki.AsyncDnsDiscovery;
 import org.eclipse.iot.tiaki.DnsDiscovery;
 import org.eclipse.iot.tiaki.commons.Configurable;
 import org.eclipse.iot.tiaki.commons.Constants;
 import org.eclipse.iot.tiaki.commons.LookupContext;
+import org.eclipse.iot.tiaki.commons.QueryEvent;
+import org.eclipse.iot.tiaki.commons.ResolverEndpoint;
 import org.eclipse.iot.tiaki.commons.StatusChangeEvent;
 import org.eclipse.iot.tiaki.commons.StatusCode;
 import org.eclipse.iot.tiaki.domain.CertRecord;
 import org.eclipse.iot.tiaki.domain.CompoundLabel;
 import org.eclipse.iot.tiaki.domain.DnsCertPrefix;
 import org.eclipse.iot.tiaki.domain.Fqdn;
+import org.eclipse.iot.tiaki.domain.InstanceProjection;
 import org.eclipse.iot.tiaki.domain.PointerRecord;
 import org.eclipse.iot.tiaki.domain.RecordsContainer;
 import org.eclipse.iot.tiaki.domain.ServiceInstance;
@@ -33,17 +54,28 @@ import org.eclipse.iot.tiaki.domain.ServiceRecord;
 import org.eclipse.iot.tiaki.domain.TextRecord;
 import org.eclipse.iot.tiaki.exceptions.ConfigurationException;
 import org.eclipse.iot.tiaki.exceptions.LookupException;
+import org.eclipse.iot.tiaki.exceptions.UncheckedLookupException;
+import org.eclipse.iot.tiaki.utils.ChainBundle;
 import org.eclipse.iot.tiaki.utils.DnsUtil;
 import org.eclipse.iot.tiaki.utils.ExceptionsUtil;
 import org.eclipse.iot.tiaki.utils.FormattingUtil;
 import org.eclipse.iot.tiaki.utils.ValidatorUtil;
 import org.xbill.DNS.Cache;
+import org.xbill.DNS.Credibility;
 import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
 import org.xbill.DNS.Lookup;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
 import org.xbill.DNS.PTRRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.RRset;
 import org.xbill.DNS.Record;
 import org.xbill.DNS.Resolver;
 import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SetResponse;
+import org.xbill.DNS.TextParseException;
 import org.xbill.DNS.TLSARecord;
 import org.xbill.DNS.TXTRecord;
 import org.xbill.DNS.Type;
@@ -52,29 +84,75 @@ import org.xbill.DNS.Type;
  * Class encapsulating the DNS-SD Service Lookup facilities.
  *
  */
-public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
+public class DnsServicesDiscovery extends Configurable implements DnsDiscovery, AsyncDnsDiscovery
 {
 
     /** Lookup Cache. */
     private Cache anyClassCache;
     /** Thread-owned Errors trace. */
     private ThreadLocal<Map<String, StatusCode>> errorsTrace;
+    /**
+     * Whether the lookup of the owning thread got records from <code>anyClassCache</code>, which
+     * keeps their original TTL: how long they are still valid for is unknown.
+     */
+    private final ThreadLocal<Boolean> aged = new ThreadLocal<>();
     /** DNS Lookup helper. */
     private ServicesLookupHelper helper;
+    /** Resolvers shared by the lookups, rebuilt upon configuration changes. */
+    private volatile ResolversRegistry registry;
+    /** Pool carrying out the concurrent Service Instances resolution. */
+    private ExecutorService lookupPool;
+    /** Number of threads of <code>lookupPool</code>. */
+    private int lookupPoolSize;
+    /** Pool resolving and validating the secure lookups in parallel. */
+    private ExecutorService validationPool;
+    /** Parallelism of <code>validationPool</code>. */
+    private int validationPoolSize;
+    /** Longest TTL of positive answers, in seconds. */
+    private final int positiveTTL;
+    /** Negative answers to the validated lookups (plain ones are negatively cached by <code>anyClassCache</code>). */
+    private final NegativeCache negativeCache;
+    /** Resolved Service Instances, <code>null</code> if disabled. */
+    private volatile ServiceInstancesCache instancesCache;
+    /** Health of the resolvers, rebuilt upon configuration changes. */
+    private volatile ResolversHealth health;
+    /** Hedged queries policy, <code>null</code> if disabled. */
+    private volatile HedgingPolicy hedging;
+    /** Pool carrying out the hedged queries. */
+    private ExecutorService hedgePool;
+    /** Outstanding lookups, shared by identical concurrent ones. */
+    private final LookupCoalescer<Flight, Resolution> inFlight = new LookupCoalescer<>();
+    /** Lookups and queries counters. */
+    private final LookupStatistics statistics = new LookupStatistics();
 
     public DnsServicesDiscovery() { this(Constants.CACHE_SIZE, Constants.CACHE_TIME_LIMIT); }
 
     /**
-     * Overloaded constructor taking as argument Cache size and TTL.
+     * Overloaded constructor taking as argument Cache size and TTL, the latter applying to both
+     * positive and negative answers.
      *
      * @param cacheSize Unsigned <code>int</code> defining the Cache size
      * @param cacheTTL Unsigned <code>int</code> defining the Cache TTL
      */
-    public DnsServicesDiscovery(int cacheSize, int cacheTTL)
+    public DnsServicesDiscovery(int cacheSize, int cacheTTL) { this(cacheSize, cacheTTL, cacheTTL); }
+
+    /**
+     * Overloaded constructor taking as argument Cache size and separate TTL ceilings for positive
+     * and negative answers. Negative answers are kept for their SOA minimum TTL, never longer than
+     * <i>negativeTTL</i>.
+     *
+     * @param cacheSize Unsigned <code>int</code> defining the Cache size
+     * @param positiveTTL Unsigned <code>int</code> defining the longest TTL of positive answers, in seconds
+     * @param negativeTTL Unsigned <code>int</code> defining the longest TTL of negative answers, in seconds
+     */
+    public DnsServicesDiscovery(int cacheSize, int positiveTTL, int negativeTTL)
     {
         this.anyClassCache = new Cache(DClass.ANY);
         this.anyClassCache.setMaxEntries(cacheSize);
-        this.anyClassCache.setMaxNCache(cacheTTL);
+        this.anyClassCache.setMaxCache(positiveTTL);
+        this.anyClassCache.setMaxNCache(negativeTTL);
+        this.positiveTTL = positiveTTL;
+        this.negativeCache = new NegativeCache(cacheSize, negativeTTL);
         this.helper = this.new ServicesLookupHelper();
         this.errorsTrace = new ThreadLocal<Map<String, StatusCode>>() {
             @Override
@@ -115,6 +193,14 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
     @Override
     public Set<ServiceInstance> listServiceInstances(Fqdn browsingDomain, CompoundLabel type, boolean secValidation)
             throws LookupException, ConfigurationException
+    {
+        return listServiceInstances(browsingDomain, type, InstanceProjection.SRV_TXT, secValidation);
+    }
+
+    @Override
+    public Set<ServiceInstance> listServiceInstances(Fqdn browsingDomain, CompoundLabel type,
+                                                     InstanceProjection projection, boolean secValidation)
+            throws LookupException, ConfigurationException
     {
         try {
             ValidatorUtil.isValidDomainName(browsingDomain);
@@ -123,19 +209,31 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
         }
         ValidatorUtil.isValidLabel(type);
         validatedConf();
-        Set<ServiceInstance> result = null;
+        ServiceInstancesCache cache = this.instancesCache;
+        Set<ServiceInstance> result = (cache != null ? cache.get(browsingDomain, type, projection, secValidation) : null);
+        if (result != null) {
+            statusChange(() -> FormattingUtil.info("Cached Service Instances"));
+            return result;
+        }
         try {
+            aged.remove();
             result = new TreeSet<>();
-            result.addAll(this.helper.serviceInstances(browsingDomain, type, secValidation));
+            result.addAll(this.helper.serviceInstances(browsingDomain, type, projection, secValidation));
             if (result.isEmpty() && !ExceptionsUtil.onlyNameResolutionTrace(this.errorsTrace.get())) {
                 throw ExceptionsUtil.build(StatusCode.RESOURCE_LOOKUP_ERROR,
-                        FormattingUtil.unableToResolve(browsingDomain.fqdnWithPrefix(type.prefixString())),
+                        FormattingUtil.unableToResolve(browsingDomain.fqdnWithPrefix(type.hasProtocol()
+                                ? type.prefixString() : type.prefixString(Constants.TCP))),
                         errorsTrace.get());
             }
+            // only instances fresh from the resolvers are known to last their whole TTL
+            if (cache != null && aged.get() == null) {
+                cache.put(browsingDomain, type, projection, secValidation, result);
+            }
         } catch (LookupException | ConfigurationException exception) {
             throw exception;
         } finally {
             errorsTrace.remove();
+            aged.remove();
         }
 
         return result;
@@ -209,30 +307,32 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
             throw new LookupException(StatusCode.ILLEGAL_FQDN, name.fqdn());
         }
         validatedConf();
-        if (name == null || name.fqdn().isEmpty()) {
-            name = new Fqdn(this.dnsSecDomain);
-        }
+        Fqdn zone = (name == null || name.fqdn().isEmpty() ? new Fqdn(this.dnsSecDomain) : name);
 
         Map<String, Resolver> resolvers = retrieveResolvers(true);
         Iterator<String> itrResolvers = resolvers.keySet().iterator();
         boolean validated = false;
-        String server = null;
         do {
-            server = itrResolvers.next();
-            statusChange(FormattingUtil.server(server));
-            statusChange(FormattingUtil.query(name, "", "SOA"));
+            String server = itrResolvers.next();
+            statusChange(() -> FormattingUtil.server(server));
+            statusChange(() -> FormattingUtil.query(zone, "", "SOA"));
             try {
-                validated = DnsUtil.checkDnsSec(name, resolvers.get(server), Type.SOA);
+                this.statistics.record(true, 1);
+                long start = System.nanoTime();
+                validated = DnsUtil.checkDnsSec(zone, resolvers.get(server), Type.SOA);
+                if (validated || !Thread.currentThread().isInterrupted()) {
+                    this.health.record(server, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), !validated);
+                }
                 if (validated) {
-                    statusChange(FormattingUtil.response(FormattingUtil.authenticData(name.fqdn())));
+                    statusChange(() -> FormattingUtil.response(FormattingUtil.authenticData(zone.fqdn())));
                 } else {
-                    statusChange(FormattingUtil.response(FormattingUtil.networkError(name.fqdn())));
+                    statusChange(() -> FormattingUtil.response(FormattingUtil.networkError(zone.fqdn())));
                 }
             } catch (LookupException le) {
                 if (le.dnsError() == StatusCode.RESOURCE_LOOKUP_ERROR) {
-                    statusChange(FormattingUtil.response(FormattingUtil.unableToResolve(name.fqdn())));
+                    statusChange(() -> FormattingUtil.response(FormattingUtil.unableToResolve(zone.fqdn())));
                 } else {
-                    statusChange(FormattingUtil.response(FormattingUtil.unableToValidate(name.fqdn())));
+                    statusChange(() -> FormattingUtil.response(FormattingUtil.unableToValidate(zone.fqdn())));
                 }
 
                 if (le.dnsError() == StatusCode.RESOURCE_INSECURE_ERROR) {
@@ -247,9 +347,149 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
         return validated;
     }
 
+    @Override
+    public byte[] exportDnsSecChain(Fqdn name, int... rrTypes) throws LookupException, ConfigurationException
+    {
+        try {
+            ValidatorUtil.isValidDomainName(name);
+        } catch(IllegalArgumentException exception) {
+            throw new LookupException(StatusCode.ILLEGAL_FQDN, (name == null ? null : name.fqdn()));
+        }
+        validatedConf();
+
+        // a resolver of its own per server, not to share the keys validated so far
+        ResolversRegistry resolvers = this.registry;
+        Iterator<ResolverEndpoint> itrEndpoints = this.dnsEndpoints.iterator();
+        while (true) {
+            ResolverEndpoint endpoint = itrEndpoints.next();
+            statusChange(() -> FormattingUtil.server(endpoint.getKey()));
+            try {
+                ChainBundle bundle = ChainBundle.collect(resolvers.newResolver(endpoint),
+                                                         this.trustAnchorDefault, name, rrTypes);
+                statusChange(() -> FormattingUtil.response(FormattingUtil.authenticData(name.fqdn())));
+
+                return bundle.toWire();
+            } catch (LookupException le) {
+                if (le.dnsError() != StatusCode.NETWORK_ERROR || !itrEndpoints.hasNext()) {
+                    statusChange(() -> FormattingUtil.response(FormattingUtil.unableToValidate(name.fqdn())));
+                    throw le;
+                }
+                statusChange(() -> FormattingUtil.response(FormattingUtil.networkError(name.fqdn())));
+            }
+        }
+    }
+
+    @Override
+    public Record[] verifyDnsSecChain(byte[] bundle, Fqdn name, int... rrTypes)
+                                    throws LookupException, ConfigurationException
+    {
+        try {
+            ValidatorUtil.isValidDomainName(name);
+        } catch(IllegalArgumentException exception) {
+            throw new LookupException(StatusCode.ILLEGAL_FQDN, (name == null ? null : name.fqdn()));
+        }
+        validatedConf();
+
+        return ChainBundle.parse(bundle).verify(this.trustAnchorDefault, name, rrTypes);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> listServiceTypesAsync(final Fqdn browsingDomain, final boolean secValidation,
+                                                                Executor executor, long timeout, TimeUnit unit)
+    {
+        return AsyncLookup.submit(() -> listServiceTypes(browsingDomain, secValidation), executor, timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Set<ServiceInstance>> listServiceInstancesAsync(final Fqdn browsingDomain,
+                                                                             final CompoundLabel type,
+                                                                             final InstanceProjection projection,
+                                                                             final boolean secValidation,
+                                                                             Executor executor, long timeout,
+                                                                             TimeUnit unit)
+    {
+        return AsyncLookup.submit(() -> listServiceInstances(browsingDomain, type, projection, secValidation),
+                                  executor, timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Set<TextRecord>> listTextRecordsAsync(final Fqdn browsingDomain, final String label,
+                                                                   final boolean secValidation, Executor executor,
+                                                                   long timeout, TimeUnit unit)
+    {
+        return AsyncLookup.submit(() -> listTextRecords(browsingDomain, label, secValidation),
+                                  executor, timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Set<CertRecord>> listTLSARecordsAsync(final Fqdn browsingDomain,
+                                                                   final DnsCertPrefix tlsaPrefix,
+                                                                   final boolean secValidation, Executor executor,
+                                                                   long timeout, TimeUnit unit)
+    {
+        return AsyncLookup.submit(() -> listTLSARecords(browsingDomain, tlsaPrefix, secValidation),
+                                  executor, timeout, unit);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> isDnsSecValidAsync(final Fqdn name, Executor executor, long timeout,
+                                                         TimeUnit unit)
+    {
+        return AsyncLookup.submit(() -> isDnsSecValid(name), executor, timeout, unit);
+    }
+
+    /**
+     * Retrieve the counters of the lookups carried out by this instance.
+     *
+     * @return The live <code>LookupStatistics</code> of this instance
+     */
+    public LookupStatistics statistics()
+    {
+        return this.statistics;
+    }
+
+    /**
+     * Check the configuration and, whenever it has changed, rebuild the registry of resolvers to be
+     * shared by the subsequent lookups.
+     *
+     * @param reloadConfig  <code>true</code> iff the configuration has to be reloaded
+     *
+     * @throws ConfigurationException In case this instance has not been configured properly
+     */
+    @Override
+    public void checkConfiguration(boolean reloadConfig) throws ConfigurationException
+    {
+        if (!reloadConfig && this.registry != null && this.checked) {
+            return;
+        }
+
+        synchronized (this) {
+            if (!reloadConfig && this.registry != null && this.checked) {
+                return;
+            }
+            super.checkConfiguration(reloadConfig);
+            ResolversRegistry former = this.registry;
+            this.registry = ResolversRegistry.build(this.dnsEndpoints, this.trustAnchorDefault,
+                    new TransportSettings(this.transport, this.tcpIdleTimeout, this.tcpMaxInFlight,
+                                          this.ednsPayloadSize, this.dnssecOk, this.statistics));
+            if (former != null) {
+                // its connections would be kept open by their reader threads otherwise; the lookups
+                // still running over them, lazy TXT loaders included, are let through
+                former.retire();
+            }
+            this.health = new ResolversHealth();
+            // results resolved upon a former configuration are dropped
+            this.instancesCache = (this.resultCacheSize > 0
+                                    ? new ServiceInstancesCache(this.resultCacheSize, this.positiveTTL) : null);
+            this.negativeCache.clear();
+            this.hedging = (this.hedgingPercentile > 0.0 && this.dnsEndpoints.size() > 1
+                                    ? new HedgingPolicy(this.hedgingPercentile, this.hedgingBudget) : null);
+        }
+    }
+
     /**
      * Private helper to retrieve a set of one or more instances of <code>Resolver</code> to carry
-     * out the lookup.
+     * out the lookup, ranked by their observed health.
      *
      * @param secValidation <code>true</code> iff DNSSEC validation id needed
      * @return Instance(s) of <code>Resolver</code>
@@ -260,19 +500,64 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
     private Map<String, Resolver> retrieveResolvers(boolean secValidation)
                                     throws ConfigurationException
     {
-        Map<String, Resolver> resolvers = new LinkedHashMap<>();
-        for(InetAddress dnsServer: this.dnsServers) {
-            if (dnsServer != null && (!dnsServer.getHostAddress().isEmpty()
-                    || !dnsServer.getCanonicalHostName().isEmpty())) {
-                String server = ((dnsServer.getHostAddress().isEmpty())
-                        ? dnsServer.getCanonicalHostName() : dnsServer.getHostAddress());
-                resolvers.put(server, DnsUtil.getResolver(secValidation, this.trustAnchorDefault, server));
-            } else {
-                resolvers.putAll(DnsUtil.getResolvers(secValidation, this.trustAnchorDefault));
+        validatedConf();
+
+        return this.health.rank(this.registry.resolvers(secValidation));
+    }
+
+    /**
+     * Private helper to retrieve the pool carrying out concurrent lookups, (re)built according to
+     * the configured concurrency level.
+     *
+     * @return An <code>ExecutorService</code> having <code>lookupConcurrency</code> threads
+     */
+    private synchronized ExecutorService lookupPool()
+    {
+        if (this.lookupPool == null || this.lookupPoolSize != this.lookupConcurrency) {
+            if (this.lookupPool != null) {
+                this.lookupPool.shutdown();
+            }
+            this.lookupPool = Executors.newFixedThreadPool(this.lookupConcurrency,
+                                                           new DaemonThreadFactory("tiaki-lookup"));
+            this.lookupPoolSize = this.lookupConcurrency;
+        }
+
+        return this.lookupPool;
+    }
+
+    /**
+     * Private helper to retrieve the pool resolving and validating the secure lookups in parallel,
+     * (re)built according to the configured parallelism.
+     *
+     * @return An <code>ExecutorService</code> having <code>validationParallelism</code> threads, as many
+     *         as the exchanges blocking at once since nothing compensates for the blocked ones
+     */
+    private synchronized ExecutorService validationPool()
+    {
+        if (this.validationPool == null || this.validationPoolSize != this.validationParallelism) {
+            if (this.validationPool != null) {
+                this.validationPool.shutdown();
             }
+            this.validationPool = Executors.newFixedThreadPool(this.validationParallelism,
+                                                               new DaemonThreadFactory("tiaki-validation"));
+            this.validationPoolSize = this.validationParallelism;
+        }
+
+        return this.validationPool;
+    }
+
+    /**
+     * Private helper to retrieve the pool carrying out the hedged queries.
+     *
+     * @return A cached <code>ExecutorService</code>
+     */
+    private synchronized ExecutorService hedgePool()
+    {
+        if (this.hedgePool == null) {
+            this.hedgePool = Executors.newCachedThreadPool(new DaemonThreadFactory("tiaki-hedge"));
         }
 
-        return resolvers;
+        return this.hedgePool;
     }
 
     /**
@@ -287,7 +572,6 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
      * @version 1.0
      * @since 2015/05/02
      */
-    // TODO Deal with DNSSECJava validation problems to avoid a double resolving process
     private final class ServicesLookupHelper
     {
 
@@ -310,7 +594,7 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
         public Set<String> serviceTypes(Fqdn browsingDomain, boolean secValidation)
                                 throws LookupException, ConfigurationException
         {
-            statusChange(FormattingUtil.info((secValidation?"Secure Resolving mode":"Insecure Resolving mode")));
+            statusChange(() -> FormattingUtil.info((secValidation?"Secure Resolving mode":"Insecure Resolving mode")));
             Map<String, Resolver> resolvers = retrieveResolvers(false);
             Map<String, Resolver> valResolvers = retrieveResolvers(true);
 
@@ -320,19 +604,18 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
             Iterator<String> itrResolvers = resolvers.keySet().iterator();
             LookupContext ctx = DnsUtil.context(browsingDomain, Constants.SERVICES_DNS_SD_UDP, "", "",
                                                 Type.PTR, secValidation);
-            String server = null;
             do {
-                server = itrResolvers.next();
+                String server = itrResolvers.next();
                 Resolver resolver = resolvers.get(server);
                 ctx.setResolver(resolver);
                 Resolver valResolver = valResolvers.get(server);
                 ctx.setValResolver(valResolver);
-                statusChange(FormattingUtil.server(server));
+                statusChange(() -> FormattingUtil.server(server));
 
                 try {
                     Record[] records = lookup(ctx);
                     set.getLabels().addAll(DnsUtil.extractNamesFromRecords(records));
-                    statusChange(StatusChangeEvent.build(browsingDomain.fqdn(), Type.string(Type.PTR),
+                    statusChange(() -> StatusChangeEvent.build(browsingDomain.fqdn(), Type.string(Type.PTR),
                                     StatusChangeEvent.castedArray(records)));
                 } catch (LookupException le) {
                     if (le.dnsError().equals(StatusCode.NETWORK_ERROR) && !itrResolvers.hasNext()) {
@@ -347,7 +630,7 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
                     }
                 }
             } while (itrResolvers.hasNext() && set.getLabels().isEmpty());
-            statusChange(FormattingUtil.answer());
+            statusChange(() -> FormattingUtil.answer());
 
             return set.getLabels();
         }
@@ -370,7 +653,7 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
         public Set<TextRecord> serviceTexts(Fqdn browsingDomain, String label, boolean secValidation)
                                     throws LookupException, ConfigurationException
         {
-            statusChange(FormattingUtil.info((secValidation?"Secure Resolving mode":"Insecure Resolving mode")));
+            statusChange(() -> FormattingUtil.info((secValidation?"Secure Resolving mode":"Insecure Resolving mode")));
             Map<String, Resolver> resolvers = retrieveResolvers(false);
             Map<String, Resolver> valResolvers = retrieveResolvers(true);
 
@@ -379,19 +662,18 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
 
             Iterator<String> itrResolvers = resolvers.keySet().iterator();
             LookupContext ctx = DnsUtil.context(browsingDomain, label, label, "", Type.TXT, secValidation);
-            String server = null;
             do {
-                server = itrResolvers.next();
+                String server = itrResolvers.next();
                 Resolver resolver = resolvers.get(server);
                 ctx.setResolver(resolver);
                 Resolver valResolver = valResolvers.get(server);
                 ctx.setValResolver(valResolver);
-                statusChange(FormattingUtil.server(server));
+                statusChange(() -> FormattingUtil.server(server));
 
                 try {
                     Record[] records = lookup(ctx);
                     parseRecords(records, set, RrHolderType.OTHER);
-                    statusChange(StatusChangeEvent.build(browsingDomain.fqdnWithPrefix(label),
+                    statusChange(() -> StatusChangeEvent.build(browsingDomain.fqdnWithPrefix(label),
                                     "", StatusChangeEvent.castedList(set.getTexts())));
                 } catch (LookupException le) {
                     if (le.dnsError().equals(StatusCode.NETWORK_ERROR) && !itrResolvers.hasNext()) {
@@ -406,7 +688,7 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
                     }
                 }
             } while (itrResolvers.hasNext() && set.getTexts().isEmpty());
-            statusChange(FormattingUtil.answer());
+            statusChange(() -> FormattingUtil.answer());
 
             return set.getTexts();
         }
@@ -417,6 +699,7 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
          *
          * @param browsingDomain <code>Fqdn</code> representing the browsing domain
          * @param type A <code>String</code> defining the Service Type to be looked up
+         * @param projection The parts of the Service Instances to be resolved
          * @param secValidation  <code>true</code> in case secure browsing is needed
          *
          * @return A set of <code>String</code> identifying the retrieve Service records.
@@ -426,10 +709,11 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
          * @throws ConfigurationException
          *      In case of wrong/faulty static and/or runtime configuration.
          */
-        public Set<ServiceInstance> serviceInstances(Fqdn browsingDomain, CompoundLabel type, boolean secValidation)
+        public Set<ServiceInstance> serviceInstances(Fqdn browsingDomain, CompoundLabel type,
+                                                     InstanceProjection projection, boolean secValidation)
                                         throws LookupException, ConfigurationException
         {
-            statusChange(FormattingUtil.info((secValidation?"Secure Resolving mode":"Insecure Resolving mode")));
+            statusChange(() -> FormattingUtil.info((secValidation?"Secure Resolving mode":"Insecure Resolving mode")));
             Map<String, Resolver> resolvers = retrieveResolvers(false);
             Map<String, Resolver> valResolvers = retrieveResolvers(true);
 
@@ -438,49 +722,42 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
             Iterator<String> itrResolvers = resolvers.keySet().iterator();
 
             // retrive instances by subtype, skip the types listing step
-            boolean bySubType = type.hasSubType(), byProto = type.hasProtocol();
+            boolean bySubType = type.hasSubType();
+            List<String> prefixes = typePrefixes(type);
             LookupContext ctx = DnsUtil.context(browsingDomain, "", "", type.getType(),
                                                 Type.PTR, secValidation);
-            String server = null;
             do {
-                server = itrResolvers.next();
+                String server = itrResolvers.next();
                 Resolver resolver = resolvers.get(server);
                 ctx.setResolver(resolver);
                 Resolver valResolver = valResolvers.get(server);
                 ctx.setValResolver(valResolver);
-                statusChange(FormattingUtil.server(server));
+                statusChange(() -> FormattingUtil.server(server));
 
                 try {
                     Set<String> types = new TreeSet<>();
                     ctx.setDomainName(browsingDomain);
                     if(!bySubType) {
-                        if(!byProto) {
-                            ctx.setLabel(type.prefixString(Constants.TCP));
-                            types.addAll(DnsUtil.filterByType(type.prefixString(Constants.TCP),
-                                            retrieveDnsSdTypes(ctx)));  // TCP services
-
-                            ctx.setLabel(type.prefixString(Constants.UDP));
-                            types.addAll(DnsUtil.filterByType(type.prefixString(Constants.UDP),
-                                            retrieveDnsSdTypes(ctx)));  // UDP services
-                        } else {
-                            ctx.setLabel(type.prefixString());
-                            types.addAll(DnsUtil.filterByType(type.prefixString(), retrieveDnsSdTypes(ctx)));  // service types
+                        // a single enumeration of the service types, filtered by each protocol
+                        ctx.setLabel(prefixes.get(0));
+                        Set<String> index = retrieveDnsSdTypes(ctx);
+                        for (String prefix : prefixes) {
+                            types.addAll(DnsUtil.filterByType(prefix, index));
                         }
-                        statusChange(StatusChangeEvent.build(ctx.getDomainName().fqdnWithPrefix(ctx.getPrefix()),
+                        statusChange(() -> StatusChangeEvent.build(ctx.getDomainName().fqdnWithPrefix(ctx.getPrefix()),
                                     Type.string(ctx.getRrType()), StatusChangeEvent.castedList(types)));
                     } else {    // browsing by subtype
-                        if(!byProto) {
-                            types.add(browsingDomain.fqdnWithPrefix(type.prefixString(Constants.TCP)));
-                            types.add(browsingDomain.fqdnWithPrefix(type.prefixString(Constants.UDP)));
-                        } else
-                            types.add(browsingDomain.fqdnWithPrefix(type.prefixString()));
+                        for (String prefix : prefixes) {
+                            types.add(browsingDomain.fqdnWithPrefix(prefix));
+                        }
                     }
 
-                    Set<String> names = retrieveDnsNames(ctx, types);   // service names
+                    AdditionalRecords additional = new AdditionalRecords();
+                    Set<String> names = retrieveDnsNames(ctx, types, additional);   // service names
                     ctx.setDomainName(browsingDomain);
-                    statusChange(StatusChangeEvent.build(ctx.getDomainName().fqdnWithPrefix(ctx.getPrefix()),
+                    statusChange(() -> StatusChangeEvent.build(ctx.getDomainName().fqdnWithPrefix(ctx.getPrefix()),
                                     Type.string(ctx.getRrType()), StatusChangeEvent.castedList(names)));
-                    instances.addAll(retrieveDnsInstances(ctx, names)); // service instances
+                    instances.addAll(retrieveDnsInstances(ctx, names, additional, projection)); // service instances
                 } catch (LookupException le) {
                     if (le.dnsError().equals(StatusCode.NETWORK_ERROR) && !itrResolvers.hasNext()) {
                         throw  le;
@@ -489,12 +766,12 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
                         throw le;
                     } else {
                         errorsTrace.get().put(
-                                ExceptionsUtil.traceKey(resolver, browsingDomain.fqdnWithPrefix(type.prefixString()),
+                                ExceptionsUtil.traceKey(resolver, browsingDomain.fqdnWithPrefix(prefixes.get(0)),
                                         "Retrieving-Instances"), le.dnsError());
                     }
                 }
             } while (itrResolvers.hasNext() && instances.isEmpty());
-            statusChange(FormattingUtil.answer());
+            statusChange(() -> FormattingUtil.answer());
 
             return instances;
         }
@@ -520,7 +797,7 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
                                            boolean secValidation)
                                 throws LookupException, ConfigurationException
         {
-            statusChange(FormattingUtil.info((secValidation?"Secure Resolving mode":"Insecure Resolving mode")));
+            statusChange(() -> FormattingUtil.info((secValidation?"Secure Resolving mode":"Insecure Resolving mode")));
             Map<String, Resolver> resolvers = retrieveResolvers(false);
             Map<String, Resolver> valResolvers = retrieveResolvers(true);
 
@@ -531,14 +808,13 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
             String tlsaFqdn = tlsaPrefix.toString() + Constants.DNS_LABEL_DELIMITER + browsingDomain.fqdn();
             Fqdn browsingDomainWithTLSAPrefix = new Fqdn(tlsaFqdn);
             LookupContext ctx = DnsUtil.context(browsingDomainWithTLSAPrefix, "", "", "", Type.TLSA, secValidation);
-            String server;
             do {
-                server = itrResolvers.next();
+                String server = itrResolvers.next();
                 Resolver resolver = resolvers.get(server);
                 ctx.setResolver(resolver);
                 Resolver valResolver = valResolvers.get(server);
                 ctx.setValResolver(valResolver);
-                statusChange(FormattingUtil.server(server));
+                statusChange(() -> FormattingUtil.server(server));
 
                 try {
                     Record[] records = lookup(ctx);
@@ -547,7 +823,7 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
                             tlsaDiscoveryRecords.add(new CertRecord((TLSARecord) record));
                         }
                     }
-                    statusChange(StatusChangeEvent.build(ctx.getDomainName().fqdnWithPrefix(ctx.getPrefix()),
+                    statusChange(() -> StatusChangeEvent.build(ctx.getDomainName().fqdnWithPrefix(ctx.getPrefix()),
                                     "", StatusChangeEvent.castedList(tlsaDiscoveryRecords)));
                 } catch (LookupException le) {
                     if (le.dnsError().equals(StatusCode.NETWORK_ERROR) && !itrResolvers.hasNext()) {
@@ -563,7 +839,7 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
                     }
                 }
             } while (itrResolvers.hasNext() && tlsaDiscoveryRecords.isEmpty());
-            statusChange(FormattingUtil.answer());
+            statusChange(() -> FormattingUtil.answer());
 
             return tlsaDiscoveryRecords;
         }
@@ -580,42 +856,543 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
          */
         private Record[] lookup(LookupContext ctx) throws LookupException
         {
-            Lookup lookup = DnsUtil.instantiateLookup(ctx.getDomainName().fqdnWithPrefix(ctx.getPrefix()),
-                                                      ctx.getResolver(),
-                                                      ctx.getRrType(),
+            return settle(resolve(ctx));
+        }
+
+        /**
+         * Lookup the DNS Resource Records, harvesting the Additional section of the response.
+         *
+         * @param ctx A <code>LookupContext</code> defining this lookup parameters
+         * @param additional The <code>AdditionalRecords</code> collecting the Additional section
+         *
+         * @return A set of one or more Resource <code>Record</code>
+         *
+         * @throws LookupException
+         *      In case of unsuccessful DNS lookup; the <code>StatusCode</code> is returned as part of this error.
+         */
+        private Record[] lookup(LookupContext ctx, AdditionalRecords additional) throws LookupException
+        {
+            Resolution res = resolve(ctx);
+            Record[] records = settle(res);
+            additional.harvest(res.additional);
+
+            return records;
+        }
+
+        /**
+         * Carry out the network part of a lookup. It has no side effect on the calling thread
+         * (neither status changes nor error traces), hence it can be run on any thread. Concurrent
+         * identical lookups are coalesced: a single one goes to the wire and its outcome is shared.
+         *
+         * @param ctx A <code>LookupContext</code> defining this lookup parameters
+         *
+         * @return The <code>Resolution</code> to be settled by the calling thread
+         *
+         * @throws LookupException
+         *      In case the <code>Lookup</code> cannot be instantiated.
+         */
+        private Resolution resolve(LookupContext ctx) throws LookupException
+        {
+            final Resolution res = new Resolution(ctx);
+            final HedgingPolicy policy = hedging;
+
+            return inFlight.run(new Flight(res), () -> (policy != null ? resolveHedged(res, policy) : attempt(res)));
+        }
+
+        /**
+         * Carry out the network part of a lookup against its own resolver, notifying the listeners,
+         * if any, when the query starts and completes. An attempt left unanswered because it has been
+         * abandoned meanwhile, i.e. its thread interrupted as a hedge loser or a cancelled lookup is,
+         * tells nothing about the resolver: it is neither recorded nor notified as failed.
+         *
+         * @param res The <code>Resolution</code> to be carried out
+         *
+         * @return The <code>Resolution</code> to be settled by the calling thread
+         *
+         * @throws LookupException
+         *      In case the query cannot be instantiated.
+         */
+        private Resolution attempt(Resolution res) throws LookupException
+        {
+            String server = registry.serverOf(res.secure ? res.valResolver : res.resolver);
+            QueryEvent started = (listened() ? QueryEvent.started(server, queryName(res), res.rrType, res.secure)
+                                             : null);
+            if (started != null) {
+                queryEvent(() -> started);
+            }
+            long start = System.nanoTime();
+            Resolution outcome;
+            try {
+                outcome = (res.secure ? resolveValidated(res) : resolvePlain(res));
+            } catch (LookupException le) {
+                if (started != null && !Thread.currentThread().isInterrupted()) {
+                    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                    queryEvent(() -> QueryEvent.failed(started, le.dnsError(), elapsed));
+                }
+                throw le;
+            }
+            if (!answered(outcome) && Thread.currentThread().isInterrupted()) {
+                // dnsjava reports the interrupt as a timeout
+                return outcome;
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            health.record(server, elapsed, !answered(outcome));
+            if (started != null) {
+                queryEvent(() -> completed(started, outcome, elapsed));
+            }
+
+            return outcome;
+        }
+
+        /**
+         * Build the event of a completed query: failed if it has not been answered or validated.
+         */
+        private QueryEvent completed(QueryEvent started, Resolution res, long elapsed)
+        {
+            if (res.secFailure != null) {
+                return QueryEvent.failed(started, res.secFailure.dnsError(), elapsed);
+            }
+            if (!answered(res)) {
+                return QueryEvent.failed(started, res.outcome, elapsed);
+            }
+
+            return QueryEvent.answered(started, res.outcome, res.records, elapsed);
+        }
+
+        /**
+         * Build the name a lookup queries for, unquoted.
+         */
+        private String queryName(Resolution res)
+        {
+            return res.domainName.fqdnWithPrefix(res.prefix).replace("\"", "");
+        }
+
+        /**
+         * Carry out the network part of a lookup, hedging it: whenever the current resolver has not
+         * answered within the policy delay, and the budget allows it, the query is sent to the next
+         * resolver as well. The first answer wins and the outstanding queries are cancelled.
+         *
+         * @param res The <code>Resolution</code> to be carried out
+         * @param policy The <code>HedgingPolicy</code> in force
+         *
+         * @return The <code>Resolution</code> to be settled by the calling thread
+         *
+         * @throws LookupException
+         *      In case the query cannot be instantiated or the calling thread is interrupted.
+         */
+        private Resolution resolveHedged(Resolution res, HedgingPolicy policy) throws LookupException
+        {
+            List<Resolution> attempts = alternatives(res);
+            // answered from the caches, a lookup neither needs hedging nor pays for it
+            if (attempts.size() < 2 || inCache(res)) {
+                return attempt(res);
+            }
+
+            policy.lookup();
+            CompletionService<Resolution> race = new ExecutorCompletionService<>(hedgePool());
+            List<Future<Resolution>> launched = new ArrayList<>();
+            try {
+                launched.add(race.submit(timed(attempts.get(0), policy)));
+                int next = 1, pending = 1;
+                while (true) {
+                    Future<Resolution> done = (next < attempts.size()
+                                                ? race.poll(policy.delay(), TimeUnit.MILLISECONDS)
+                                                : race.take());
+                    if (done == null) {
+                        if (policy.tryHedge()) {
+                            statistics.hedge();
+                            launched.add(race.submit(timed(attempts.get(next), policy)));
+                            pending++;
+                            next++;
+                        } else {
+                            next = attempts.size();    // out of budget, wait for the outstanding ones
+                        }
+                        continue;
+                    }
+
+                    Resolution outcome = await(done);
+                    if (answered(outcome) || --pending == 0) {
+                        return outcome;
+                    }
+                }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new LookupException(StatusCode.NETWORK_ERROR, "Interrupted while resolving", ie);
+            } finally {
+                for (Future<Resolution> pending : launched) {
+                    pending.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * Wrap an attempt so that its latency is recorded, in case it has been answered by the
+         * resolver rather than from the caches.
+         */
+        private Callable<Resolution> timed(final Resolution res, final HedgingPolicy policy)
+        {
+            return () -> {
+                long start = System.nanoTime();
+                Resolution outcome = attempt(res);
+                if (answered(outcome) && outcome.issued > 0) {
+                    policy.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+
+                return outcome;
+            };
+        }
+
+        /**
+         * Check whether a resolver has answered, even negatively.
+         */
+        private boolean answered(Resolution res)
+        {
+            return !(res.outcome == StatusCode.NETWORK_ERROR || res.outcome == StatusCode.SERVER_ERROR);
+        }
+
+        /**
+         * Build the attempts of a lookup: against its own resolver first, then against the other
+         * ones by rank, except those out of rotation.
+         *
+         * @param res The <code>Resolution</code> to be carried out
+         *
+         * @return The attempts, in order
+         */
+        private List<Resolution> alternatives(Resolution res)
+        {
+            ResolversRegistry resolvers = registry;
+            ResolversHealth servers = health;
+            Map<String, Resolver> plain = servers.rank(resolvers.resolvers(false));
+            Map<String, Resolver> validating = resolvers.resolvers(true);
+            List<Resolution> attempts = new ArrayList<>();
+            attempts.add(res);
+            for (Map.Entry<String, Resolver> server : plain.entrySet()) {
+                boolean own = (server.getValue() == res.resolver
+                                || validating.get(server.getKey()) == res.valResolver);
+                if (!own && !servers.isOpen(server.getKey())) {
+                    attempts.add(new Resolution(res, server.getValue(), validating.get(server.getKey())));
+                }
+            }
+
+            return attempts;
+        }
+
+        /**
+         * Carry out the network part of a lookup by means of a <code>Lookup</code>.
+         *
+         * @param res The <code>Resolution</code> to be carried out
+         *
+         * @return The <code>Resolution</code> to be settled by the calling thread
+         *
+         * @throws LookupException
+         *      In case the <code>Lookup</code> cannot be instantiated.
+         */
+        private Resolution resolvePlain(Resolution res) throws LookupException
+        {
+            if (additionalRecords && res.rrType == Type.PTR) {
+                return resolveWithAdditional(res);
+            }
+            Lookup lookup = DnsUtil.instantiateLookup(res.domainName.fqdnWithPrefix(res.prefix),
+                                                      res.resolver,
+                                                      res.rrType,
                                                       anyClassCache);
-            ctx.setLookup(lookup);
+            int issued = (inCache(res.domainName.fqdnWithPrefix(res.prefix), res.rrType) ? 0 : 1);
             Record[] records = lookup.run();
             // double attemp without quotes
-            if(records == null && ctx.getDomainName().fqdnWithPrefix(ctx.getPrefix()).contains("\"")) {
-                lookup = DnsUtil.instantiateLookup(ctx.getDomainName().fqdnWithPrefix(ctx.getPrefix()).replaceAll("\"", ""),
-                                                   ctx.getResolver(),
-                                                   ctx.getRrType(),
+            if(records == null && res.domainName.fqdnWithPrefix(res.prefix).contains("\"")) {
+                String unquoted = res.domainName.fqdnWithPrefix(res.prefix).replaceAll("\"", "");
+                lookup = DnsUtil.instantiateLookup(unquoted,
+                                                   res.resolver,
+                                                   res.rrType,
                                                    anyClassCache);
-                ctx.setLookup(lookup);
+                issued += (inCache(unquoted, res.rrType) ? 0 : 1);
                 records = lookup.run();
             }
+            statistics.record(false, issued);
+            res.issued = issued;
+
+            res.records = records;
+            res.outcome = DnsUtil.checkLookupStatus(lookup);
+
+            return res;
+        }
 
-            statusChange(FormattingUtil.query(ctx.getDomainName(), ctx.getPrefix(),
-                         Type.string(ctx.getRrType())));
-            StatusCode outcome = DnsUtil.checkLookupStatus(lookup);
-            if(outcome == StatusCode.SUCCESSFUL_OPERATION) {
-                if(records != null && records.length > 0 && ctx.isSecure()) {
-                    Fqdn toCheck = new Fqdn(ctx.getPrefix(), ctx.getDomainName().domain());
-                    DnsUtil.checkDnsSec(toCheck, ctx.getValResolver(), ctx.getRrType());
+        /**
+         * Carry out the network part of a lookup by means of a single query, so that the Additional
+         * section of the response is retained. The records cache is looked up first, positive and
+         * negative answers alike; the response feeds it, along with the SRV and TXT records of its
+         * Additional section, so that a cached answer comes with them as well.
+         *
+         * @param res The <code>Resolution</code> to be carried out
+         *
+         * @return The <code>Resolution</code> to be settled by the calling thread
+         *
+         * @throws LookupException
+         *      In case the query cannot be instantiated.
+         */
+        private Resolution resolveWithAdditional(Resolution res) throws LookupException
+        {
+            int issued = 0;
+            for (String candidate : candidates(res.domainName.fqdnWithPrefix(res.prefix))) {
+                if (cached(candidate, res)) {
+                    if (res.outcome == StatusCode.SUCCESSFUL_OPERATION) {
+                        break;
+                    }
+                    continue;
                 }
-            }else if (outcome.equals(StatusCode.SERVER_ERROR) ||
-                      outcome.equals(StatusCode.NETWORK_ERROR)) {
-                throw ExceptionsUtil.build(outcome,
-                                           FormattingUtil.unableToResolve(ctx.getDomainName().fqdn()),
-                                           errorsTrace.get());
+                Message response = DnsUtil.query(candidate, res.resolver, res.rrType);
+                issued++;
+                res.outcome = DnsUtil.checkResponseStatus(response, res.rrType);
+                if (response != null) {
+                    anyClassCache.addMessage(response);
+                    for (RRset rrset : response.getSectionRRsets(Section.ADDITIONAL)) {
+                        if (rrset.getType() == Type.SRV || rrset.getType() == Type.TXT) {
+                            anyClassCache.addRRset(rrset, Credibility.ADDITIONAL);
+                        }
+                    }
+                }
+                if (res.outcome == StatusCode.SUCCESSFUL_OPERATION) {
+                    res.records = DnsUtil.answers(response, res.rrType);
+                    res.additional = response.getSectionArray(Section.ADDITIONAL);
+                    break;
+                }
+            }
+            statistics.record(false, issued);
+            res.issued = issued;
+
+            return res;
+        }
+
+        /**
+         * Check whether a lookup would be answered from the caches, with no query sent.
+         *
+         * @param res The <code>Resolution</code> to be carried out
+         *
+         * @return <code>true</code> iff either the answer or its denial is cached
+         */
+        private boolean inCache(Resolution res)
+        {
+            String name = res.domainName.fqdnWithPrefix(res.prefix);
+            if (res.secure) {
+                return negativeCache.get(name, res.rrType) != null;
+            }
+
+            return inCache(name, res.rrType);
+        }
+
+        /**
+         * Check whether the records cache holds either the answer to a query or its denial.
+         *
+         * @param name The queried name
+         * @param rrType The queried Resource Record type
+         *
+         * @return <code>true</code> iff the query would be answered from the records cache
+         */
+        private boolean inCache(String name, int rrType)
+        {
+            Name owner;
+            try {
+                owner = Name.fromString(name, Name.root);
+            } catch (TextParseException tpe) {
+                return false;
+            }
+            SetResponse cached = anyClassCache.lookupRecords(owner, rrType, Credibility.NORMAL);
+
+            return cached.isSuccessful() || cached.isNXDOMAIN() || cached.isNXRRSET();
+        }
+
+        /**
+         * Answer a lookup from the records cache, if it holds either the answer or its denial. A
+         * cached answer comes with the cached SRV and TXT records of the names it points to.
+         *
+         * @param name The name to be looked up
+         * @param res The <code>Resolution</code> to be answered
+         *
+         * @return <code>true</code> iff the cache has answered, the outcome being set
+         */
+        private boolean cached(String name, Resolution res)
+        {
+            Name owner;
+            try {
+                owner = Name.fromString(name, Name.root);
+            } catch (TextParseException tpe) {
+                return false;   // the query fails the same way
+            }
+            SetResponse cached = anyClassCache.lookupRecords(owner, res.rrType, Credibility.NORMAL);
+            if (cached.isNXDOMAIN()) {
+                res.outcome = StatusCode.RESOLUTION_NAME_ERROR;
+            } else if (cached.isNXRRSET()) {
+                res.outcome = StatusCode.RESOLUTION_RR_TYPE_ERROR;
+            } else if (cached.isSuccessful()) {
+                List<Record> records = new ArrayList<>();
+                List<Record> additional = new ArrayList<>();
+                for (RRset rrset : cached.answers()) {
+                    for (Iterator<?> itr = rrset.rrs(); itr.hasNext();) {
+                        Record record = (Record) itr.next();
+                        if (record.getType() != res.rrType) {
+                            continue;
+                        }
+                        records.add(record);
+                        if (!(record instanceof PTRRecord)) {
+                            continue;
+                        }
+                        Name target = ((PTRRecord) record).getTarget();
+                        for (int rrType : new int[] { Type.SRV, Type.TXT }) {
+                            SetResponse harvested = anyClassCache.lookupRecords(target, rrType,
+                                                                                Credibility.ADDITIONAL);
+                            if (harvested.isSuccessful()) {
+                                for (RRset set : harvested.answers()) {
+                                    for (Iterator<?> rrs = set.rrs(); rrs.hasNext();) {
+                                        additional.add((Record) rrs.next());
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+                if (records.isEmpty()) {
+                    return false;
+                }
+                res.outcome = StatusCode.SUCCESSFUL_OPERATION;
+                res.records = records.toArray(new Record[records.size()]);
+                res.additional = additional.toArray(new Record[additional.size()]);
             } else {
+                return false;
+            }
+
+            return true;
+        }
+
+        /**
+         * Carry out the network part of a DNSSEC validated lookup: the query is sent once through
+         * the <code>ValidatingResolver</code>, which resolves and validates in the same exchange,
+         * and the validated answers are retained.
+         *
+         * @param res The <code>Resolution</code> to be carried out
+         *
+         * @return The <code>Resolution</code> to be settled by the calling thread
+         *
+         * @throws LookupException
+         *      In case the query cannot be instantiated.
+         */
+        private Resolution resolveValidated(Resolution res) throws LookupException
+        {
+            Message response = null;
+            int issued = 0;
+            for (String candidate : candidates(res.domainName.fqdnWithPrefix(res.prefix))) {
+                response = null;
+                res.outcome = negativeCache.get(candidate, res.rrType);
+                if (res.outcome == null) {
+                    response = DnsUtil.query(candidate, res.valResolver, res.rrType);
+                    issued++;
+                    res.outcome = DnsUtil.checkResponseStatus(response, res.rrType);
+                    denied(candidate, res.rrType, res.outcome, response);
+                }
+                if (res.outcome == StatusCode.SUCCESSFUL_OPERATION) {
+                    break;
+                }
+            }
+            statistics.record(true, issued);
+            res.issued = issued;
+
+            if(res.outcome == StatusCode.SUCCESSFUL_OPERATION) {
+                res.records = DnsUtil.answers(response, res.rrType);
+            }
+            // failed validations are reported as such, either the answer is not authenticated or
+            // the validator discarded it
+            if(res.outcome == StatusCode.SUCCESSFUL_OPERATION
+                    || (response != null && response.getRcode() == Rcode.SERVFAIL)) {
+                StatusCode validation = DnsUtil.checkValidationStatus(response);
+                if(validation != StatusCode.SUCCESSFUL_OPERATION) {
+                    res.secFailure = ExceptionsUtil.build(validation,
+                                                          "DNSSEC Validation Failed",
+                                                          new LinkedHashMap<String, StatusCode>());
+                }
+            }
+
+            return res;
+        }
+
+        /**
+         * Build the names a lookup is attempted with: the name itself, then without quotes if any.
+         *
+         * @param name The name to be looked up
+         *
+         * @return The candidate names, in attempt order
+         */
+        private String[] candidates(String name)
+        {
+            // double attemp without quotes
+            return (name.contains("\"") ? new String[] { name, name.replaceAll("\"", "") } : new String[] { name });
+        }
+
+        /**
+         * Cache an authenticated denial of existence, for the SOA minimum TTL it comes with.
+         *
+         * @param name The queried name
+         * @param rrType The queried Resource Record type
+         * @param outcome The outcome of the query
+         * @param response The validated response, <code>null</code> if none
+         */
+        private void denied(String name, int rrType, StatusCode outcome, Message response)
+        {
+            if (response != null && response.getHeader().getFlag(Flags.AD)
+                    && (outcome == StatusCode.RESOLUTION_NAME_ERROR
+                        || outcome == StatusCode.RESOLUTION_RR_TYPE_ERROR)) {
+                negativeCache.put(name, rrType, outcome, DnsUtil.negativeTtl(response));
+            }
+        }
+
+        /**
+         * Settle a <code>Resolution</code> on the calling thread: notify the query, note records
+         * answered from the cache, trace any recoverable error and raise the unrecoverable ones.
+         *
+         * @param res A <code>Resolution</code> previously carried out
+         *
+         * @return A set of one or more Resource <code>Record</code>
+         *
+         * @throws LookupException
+         *      In case of unsuccessful DNS lookup; the <code>StatusCode</code> is returned as part of this error.
+         */
+        private Record[] settle(Resolution res) throws LookupException
+        {
+            statusChange(() -> FormattingUtil.query(res.domainName, res.prefix, Type.string(res.rrType)));
+            if (res.issued == 0 && res.records != null && res.records.length > 0) {
+                aged.set(Boolean.TRUE);
+            }
+            if(res.secFailure != null) {
+                throw res.secFailure;
+            }
+            if (res.outcome.equals(StatusCode.SERVER_ERROR) ||
+                      res.outcome.equals(StatusCode.NETWORK_ERROR)) {
+                throw ExceptionsUtil.build(res.outcome,
+                                           FormattingUtil.unableToResolve(res.domainName.fqdn()),
+                                           errorsTrace.get());
+            } else if (res.outcome != StatusCode.SUCCESSFUL_OPERATION) {
                 errorsTrace.get().put(
-                        ExceptionsUtil.traceKey(ctx.getResolver(), ctx.getResolver().toString() + ctx.getDomainName(),
-                                "Checking-Lookup-Status"), outcome);
+                        ExceptionsUtil.traceKey(res.resolver, res.resolver.toString() + res.domainName,
+                                "Checking-Lookup-Status"), res.outcome);
+            }
+
+            return (res.records == null?new Record[0]:res.records);
+        }
+
+        /**
+         * Plan the service types a lookup is made of: the given type over its own protocol, or over
+         * both TCP and UDP when it has none. The type index is enumerated once per resolver and then
+         * filtered by each of them, as it is shared by all the protocols.
+         *
+         * @param type The <code>CompoundLabel</code> being looked up
+         *
+         * @return The prefixes of the service types to be looked up
+         */
+        private List<String> typePrefixes(CompoundLabel type)
+        {
+            if (type.hasProtocol()) {
+                return Collections.singletonList(type.prefixString());
             }
 
-            return (records == null?new Record[0]:records);
+            return Arrays.asList(type.prefixString(Constants.TCP), type.prefixString(Constants.UDP));
         }
 
         /**
@@ -643,27 +1420,68 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
          * Retrieve the DNS Service's Names.
          *
          * @param ctx A <code>LookupContext</code> defining this lookup parameters
+         * @param additional The <code>AdditionalRecords</code> collecting the Additional sections
          *
          * @return A set of <code>String</code> containing the DNS service names
          *
          * @throws LookupException
          *      In case of unsuccessful DNS lookup; the <code>StatusCode</code> is returned as part of this error.
          */
-        private Set<String> retrieveDnsNames(LookupContext ctx, Set<String> zones)
+        private Set<String> retrieveDnsNames(LookupContext ctx, Set<String> zones, AdditionalRecords additional)
                                 throws LookupException
         {
+            ExecutorService pool = concurrentPool(ctx);
+            if (pool != null && ctx.isSecure() && zones.size() > 1) {
+                return retrieveDnsNamesConcurrently(ctx, zones, pool);
+            }
+
             ctx.setPrefix("");
             ctx.setRrType(Type.PTR);
             RecordsContainer set = new RecordsContainer();
             for (String zone : zones) {
                 ctx.setDomainName(new Fqdn(zone));
-                Record[] records = lookup(ctx);
+                Record[] records = lookup(ctx, additional);
                 parseRecords(records, set, RrHolderType.NAMES);
             }
 
             return set.getLabels();
         }
 
+        /**
+         * Retrieve the DNS Service's Names issuing the PTR queries of all the service types at once.
+         * Outcomes are settled in the order of the service types, as the sequential resolution would.
+         * Secure lookups only: they bear no Additional section to be harvested.
+         *
+         * @param ctx A <code>LookupContext</code> defining this lookup parameters
+         * @param zones The service types
+         * @param pool The <code>ExecutorService</code> carrying out the resolutions
+         *
+         * @return A set of <code>String</code> containing the DNS service names
+         *
+         * @throws LookupException
+         *      In case of unsuccessful DNS lookup; the <code>StatusCode</code> is returned as part of this error.
+         */
+        private Set<String> retrieveDnsNamesConcurrently(LookupContext ctx, Set<String> zones, ExecutorService pool)
+                                throws LookupException
+        {
+            Map<String, Future<Resolution>> ptrResolutions = new LinkedHashMap<>();
+            try {
+                for (String zone : zones) {
+                    ptrResolutions.put(zone, submit(pool, resolution(ctx, zone, Type.PTR)));
+                }
+                RecordsContainer set = new RecordsContainer();
+                for (Future<Resolution> ptrResolution : ptrResolutions.values()) {
+                    parseRecords(settle(await(ptrResolution)), set, RrHolderType.NAMES);
+                }
+
+                return set.getLabels();
+            } finally {
+                for (Future<Resolution> pending : ptrResolutions.values()) {
+                    pending.cancel(true);
+                }
+            }
+        }
+
         /**
          * Retrieve the Service's records.
          *
@@ -693,15 +1511,23 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
          * Retrieve the Service's instances.
          *
          * @param ctx A <code>LookupContext</code> defining this lookup parameters
+         * @param additional The <code>AdditionalRecords</code> sparing the SRV and TXT queries
+         * @param projection The parts of the Service Instances to be resolved
          *
          * @return A set of <code>String</code> containing the service's records
          *
          * @throws LookupException
          *      In case of unsuccessful DNS lookup; the <code>StatusCode</code> is returned as part of this error.
          */
-        private Set<ServiceInstance> retrieveDnsInstances(LookupContext ctx, Set<String> svcNames)
+        private Set<ServiceInstance> retrieveDnsInstances(LookupContext ctx, Set<String> svcNames,
+                                                          AdditionalRecords additional, InstanceProjection projection)
                                         throws LookupException
         {
+            ExecutorService pool = concurrentPool(ctx);
+            if (pool != null && svcNames.size() > 1) {
+                return retrieveDnsInstancesConcurrently(ctx, svcNames, additional, projection, pool);
+            }
+
             Set<ServiceInstance> svcInstances = new TreeSet<>();
             Set<String> aName = new LinkedHashSet<>();
             RecordsContainer set = new RecordsContainer();
@@ -710,29 +1536,341 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
                 set.getTexts().clear();
                 aName.add(svcName);
 
-                Set<ServiceRecord> svcRecords = retrieveDnsRecords(ctx, aName);
-                statusChange(StatusChangeEvent.build(svcName, "", StatusChangeEvent.castedList(svcRecords)));
+                Set<ServiceRecord> svcRecords;
+                Record[] records = additional.get(svcName, Type.SRV);
+                if (records != null) {
+                    RecordsContainer harvested = new RecordsContainer();
+                    parseRecords(records, harvested, RrHolderType.OTHER);
+                    svcRecords = harvested.getRecords();
+                } else {
+                    svcRecords = retrieveDnsRecords(ctx, aName);
+                }
+                statusChange(() -> StatusChangeEvent.build(svcName, "", StatusChangeEvent.castedList(svcRecords)));
                 if (svcRecords.isEmpty()) {
                     continue;
                 }
+                ServiceRecord svcRecord = svcRecords.iterator().next();
 
-                ctx.setPrefix("");
-                ctx.setRrType(Type.TXT);
-                ctx.setDomainName(new Fqdn(svcName));
-                Record[] records = lookup(ctx);
+                records = additional.get(svcName, Type.TXT);
+                if (records == null && !projection.withText()) {
+                    svcInstances.add(ServiceInstance.build(ctx.getType(), svcRecord, textLoader(ctx, svcName)));
+                    continue;
+                }
+                if (records == null) {
+                    ctx.setPrefix("");
+                    ctx.setRrType(Type.TXT);
+                    ctx.setDomainName(new Fqdn(svcName));
+                    records = lookup(ctx);
+                }
                 parseRecords(records, set, RrHolderType.OTHER);
-                statusChange(StatusChangeEvent.build(svcName, "", StatusChangeEvent.castedList(set.getTexts())));
+                statusChange(() -> StatusChangeEvent.build(svcName, "", StatusChangeEvent.castedList(set.getTexts())));
                 if (set.getTexts().isEmpty()) {
                     continue;
                 }
 
-                svcInstances.add(new ServiceInstance(ctx.getType(), svcRecords.iterator().next(),
-                                    TextRecord.build(set.getTexts())));
+                Set<CertRecord> certs = new TreeSet<>();
+                if (projection.withCerts()) {
+                    parseCerts(settle(resolve(detached(ctx, tlsaName(svcName, svcRecord), Type.TLSA))), certs);
+                }
+                svcInstances.add(new ServiceInstance(ctx.getType(), svcRecord, TextRecord.build(set.getTexts()),
+                                    certs));
             }
 
             return svcInstances;
         }
 
+        /**
+         * Retrieve the Service's instances issuing all the SRV and TXT queries at once, as many at a
+         * time as the pool allows. Outcomes are settled in the same order the sequential resolution
+         * would: a TXT outcome is discarded if its SRV set is empty. The TLSA queries, if projected,
+         * are issued as soon as the SRV record they depend on is settled.
+         *
+         * @param ctx A <code>LookupContext</code> defining this lookup parameters
+         * @param additional The <code>AdditionalRecords</code> sparing the SRV and TXT queries
+         * @param projection The parts of the Service Instances to be resolved
+         * @param pool The <code>ExecutorService</code> carrying out the resolutions
+         *
+         * @return A set of <code>String</code> containing the service's records
+         *
+         * @throws LookupException
+         *      In case of unsuccessful DNS lookup; the <code>StatusCode</code> is returned as part of this error.
+         */
+        private Set<ServiceInstance> retrieveDnsInstancesConcurrently(LookupContext ctx, Set<String> svcNames,
+                                                                      AdditionalRecords additional,
+                                                                      InstanceProjection projection,
+                                                                      ExecutorService pool)
+                                        throws LookupException
+        {
+            Map<String, Future<Resolution>> srvResolutions = new LinkedHashMap<>();
+            Map<String, Future<Resolution>> txtResolutions = new LinkedHashMap<>();
+            Map<String, Future<Resolution>> tlsaResolutions = new LinkedHashMap<>();
+            try {
+                for (String svcName : svcNames) {
+                    if (additional.get(svcName, Type.SRV) == null) {
+                        srvResolutions.put(svcName, submit(pool, resolution(ctx, svcName, Type.SRV)));
+                    }
+                    if (projection.withText() && additional.get(svcName, Type.TXT) == null) {
+                        txtResolutions.put(svcName, submit(pool, resolution(ctx, svcName, Type.TXT)));
+                    }
+                }
+
+                Map<String, ServiceInstance> svcInstances = new LinkedHashMap<>();
+                for (String svcName : svcNames) {
+                    RecordsContainer set = new RecordsContainer();
+                    parseRecords(collect(srvResolutions, additional, svcName, Type.SRV), set, RrHolderType.OTHER);
+                    statusChange(() -> StatusChangeEvent.build(svcName, "", StatusChangeEvent.castedList(set.getRecords())));
+                    if (set.getRecords().isEmpty()) {
+                        continue;
+                    }
+                    ServiceRecord svcRecord = set.getRecords().iterator().next();
+
+                    if (!projection.withText() && additional.get(svcName, Type.TXT) == null) {
+                        svcInstances.put(svcName, ServiceInstance.build(ctx.getType(), svcRecord,
+                                                                        textLoader(ctx, svcName)));
+                        continue;
+                    }
+                    parseRecords(collect(txtResolutions, additional, svcName, Type.TXT), set, RrHolderType.OTHER);
+                    statusChange(() -> StatusChangeEvent.build(svcName, "", StatusChangeEvent.castedList(set.getTexts())));
+                    if (set.getTexts().isEmpty()) {
+                        continue;
+                    }
+
+                    if (projection.withCerts()) {
+                        tlsaResolutions.put(svcName, submit(pool, resolution(ctx, tlsaName(svcName, svcRecord),
+                                                                             Type.TLSA)));
+                    }
+                    svcInstances.put(svcName, new ServiceInstance(ctx.getType(), svcRecord,
+                                                                  TextRecord.build(set.getTexts())));
+                }
+
+                Set<ServiceInstance> completed = new TreeSet<>();
+                for (Map.Entry<String, ServiceInstance> svcInstance : svcInstances.entrySet()) {
+                    ServiceInstance instance = svcInstance.getValue();
+                    Future<Resolution> tlsa = tlsaResolutions.get(svcInstance.getKey());
+                    if (tlsa != null) {
+                        Set<CertRecord> certs = new TreeSet<>();
+                        parseCerts(settle(await(tlsa)), certs);
+                        instance = new ServiceInstance(instance.getServiceType(), instance.getServiceRecord(),
+                                                       instance.getTextRecord(), certs);
+                    }
+                    completed.add(instance);
+                }
+
+                return completed;
+            } finally {
+                for (Future<Resolution> pending : srvResolutions.values()) {
+                    pending.cancel(true);
+                }
+                for (Future<Resolution> pending : txtResolutions.values()) {
+                    pending.cancel(true);
+                }
+                for (Future<Resolution> pending : tlsaResolutions.values()) {
+                    pending.cancel(true);
+                }
+            }
+        }
+
+        /**
+         * Select the pool the independent queries of a lookup are issued with: the validation pool
+         * for the secure lookups, if configured, the lookup pool otherwise, if concurrent.
+         *
+         * @param ctx A <code>LookupContext</code> providing the security mode
+         *
+         * @return The <code>ExecutorService</code>, <code>null</code> for a sequential resolution
+         */
+        private ExecutorService concurrentPool(LookupContext ctx)
+        {
+            if (ctx.isSecure() && validationParallelism > 0) {
+                return validationPool();
+            }
+
+            return (lookupConcurrency > 1 ? lookupPool() : null);
+        }
+
+        /**
+         * Submit a resolution to a pool or, should the pool have been replaced and shut down
+         * meanwhile, upon a configuration change, carry it out on the calling thread.
+         *
+         * @param pool The pool the resolution is submitted to
+         * @param resolution The resolution to be carried out
+         *
+         * @return The outcome of the resolution, to be awaited
+         */
+        private Future<Resolution> submit(ExecutorService pool, Callable<Resolution> resolution)
+        {
+            try {
+                return pool.submit(resolution);
+            } catch (RejectedExecutionException shutDown) {
+                FutureTask<Resolution> inline = new FutureTask<>(resolution);
+                inline.run();
+
+                return inline;
+            }
+        }
+
+        /**
+         * Build the loader resolving on demand the TXT record of a Service Instance, against the
+         * same resolver and with the same security mode it has been listed with. The loader yields
+         * <code>null</code> if there is no TXT record, and raises an
+         * <code>UncheckedLookupException</code> if it cannot be resolved, or fails validation, so
+         * that the failure is not taken for a missing record.
+         *
+         * @param ctx A <code>LookupContext</code> providing resolvers and security mode
+         * @param svcName The service name
+         *
+         * @return The loader of the <code>TextRecord</code>
+         */
+        private Supplier<TextRecord> textLoader(LookupContext ctx, String svcName)
+        {
+            final LookupContext detached = detached(ctx, svcName, Type.TXT);
+
+            return () -> {
+                Set<TextRecord> texts = new TreeSet<>();
+                try {
+                    // not settled: out of any lookup, there is no errors trace to fill
+                    Resolution res = resolve(detached);
+                    if (res.secFailure != null) {
+                        throw res.secFailure;
+                    }
+                    if (res.outcome == StatusCode.SERVER_ERROR || res.outcome == StatusCode.NETWORK_ERROR) {
+                        throw ExceptionsUtil.build(res.outcome, FormattingUtil.unableToResolve(svcName),
+                                                   new LinkedHashMap<String, StatusCode>());
+                    }
+                    if (res.outcome != StatusCode.SUCCESSFUL_OPERATION) {
+                        return null;
+                    }
+                    for (Record record : res.records) {
+                        if (record instanceof TXTRecord) {
+                            texts.add(TextRecord.build((TXTRecord) record));
+                        }
+                    }
+                } catch (LookupException le) {
+                    throw new UncheckedLookupException(le);
+                }
+
+                return (texts.isEmpty() ? null : TextRecord.build(texts));
+            };
+        }
+
+        /**
+         * Build the name of the TLSA records of a Service Instance endpoint, i.e.
+         * <code>_port._proto.host</code>.
+         *
+         * @param svcName The service name, bearing the protocol
+         * @param svcRecord The <code>ServiceRecord</code> of the Service Instance
+         *
+         * @return The TLSA owner name
+         *
+         * @see <a href="https://tools.ietf.org/html/rfc6698#section-3">RFC 6698, Domain Names for TLSA Certificate Associations</a>
+         */
+        private String tlsaName(String svcName, ServiceRecord svcRecord)
+        {
+            String proto = (svcName.contains(Constants.UDP) ? Constants.UDP : Constants.TCP).replace("_", "");
+            DnsCertPrefix tlsaPrefix = new DnsCertPrefix(svcRecord.getPort() + ":" + proto);
+
+            return tlsaPrefix.toString() + Constants.DNS_LABEL_DELIMITER + svcRecord.getHost();
+        }
+
+        /**
+         * Collect the TLSA records out of the given ones.
+         *
+         * @param records The records of a TLSA lookup
+         * @param certs The set collecting the <code>CertRecord</code>s
+         */
+        private void parseCerts(Record[] records, Set<CertRecord> certs)
+        {
+            for (Record record : records) {
+                if (record instanceof TLSARecord) {
+                    certs.add(new CertRecord((TLSARecord) record));
+                }
+            }
+        }
+
+        /**
+         * Collect the records of a service name, either resolved or harvested.
+         *
+         * @param pending The pending resolutions, by service name
+         * @param additional The harvested <code>AdditionalRecords</code>
+         * @param svcName The service name
+         * @param rrType The Resource Record type
+         *
+         * @return The records of the service name
+         *
+         * @throws LookupException
+         *      In case of unsuccessful DNS lookup; the <code>StatusCode</code> is returned as part of this error.
+         */
+        private Record[] collect(Map<String, Future<Resolution>> pending, AdditionalRecords additional,
+                                 String svcName, int rrType)
+                            throws LookupException
+        {
+            Future<Resolution> resolution = pending.get(svcName);
+
+            return (resolution == null ? additional.get(svcName, rrType) : settle(await(resolution)));
+        }
+
+        /**
+         * Build a detached resolution for the given service name and Resource Record type.
+         *
+         * @param ctx A <code>LookupContext</code> providing resolvers and security mode
+         * @param svcName The service name to be looked up
+         * @param rrType The Resource Record type to be looked up
+         *
+         * @return A <code>Callable</code> carrying out the resolution on its own context
+         */
+        private Callable<Resolution> resolution(LookupContext ctx, String svcName, int rrType)
+        {
+            final LookupContext detached = detached(ctx, svcName, rrType);
+
+            return () -> resolve(detached);
+        }
+
+        /**
+         * Build a context for the given name and Resource Record type, detached from the given one
+         * but sharing its resolvers and security mode.
+         *
+         * @param ctx A <code>LookupContext</code> providing resolvers and security mode
+         * @param name The name to be looked up
+         * @param rrType The Resource Record type to be looked up
+         *
+         * @return A new <code>LookupContext</code>
+         */
+        private LookupContext detached(LookupContext ctx, String name, int rrType)
+        {
+            LookupContext detached = DnsUtil.context(new Fqdn(name), "", ctx.getLabel(), ctx.getType(),
+                                                     rrType, ctx.isSecure());
+            detached.setResolver(ctx.getResolver());
+            detached.setValResolver(ctx.getValResolver());
+
+            return detached;
+        }
+
+        /**
+         * Wait for a detached resolution, unwrapping its failure if any.
+         *
+         * @param pending The pending resolution
+         *
+         * @return The completed <code>Resolution</code>
+         *
+         * @throws LookupException
+         *      In case the resolution failed or the waiting thread has been interrupted.
+         */
+        private Resolution await(Future<Resolution> pending) throws LookupException
+        {
+            try {
+                return pending.get();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new LookupException(StatusCode.NETWORK_ERROR, "Interrupted while resolving", ie);
+            } catch (ExecutionException ee) {
+                if (ee.getCause() instanceof LookupException) {
+                    throw (LookupException) ee.getCause();
+                } else if (ee.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ee.getCause();
+                }
+                throw new LookupException(StatusCode.RESOURCE_LOOKUP_ERROR, "Unable to resolve", ee.getCause());
+            }
+        }
+
         /**
          * Scrapes the Discovery Service Records according to their nature.
          *
@@ -771,4 +1909,88 @@ public class DnsServicesDiscovery extends Configurable implements DnsDiscovery
 
     }
 
+    /**
+     * Key identifying identical lookups: same name, type, resolver and security mode.
+     */
+    private static final class Flight
+    {
+        private final String name;
+        private final int rrType;
+        private final Resolver resolver;
+        private final boolean secure;
+
+        private Flight(Resolution res)
+        {
+            this.name = res.domainName.fqdnWithPrefix(res.prefix).toLowerCase();
+            this.rrType = res.rrType;
+            this.resolver = (res.secure ? res.valResolver : res.resolver);
+            this.secure = res.secure;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.name, this.rrType, System.identityHashCode(this.resolver), this.secure);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final Flight other = (Flight) obj;
+
+            return this.rrType == other.rrType && this.secure == other.secure
+                    && this.resolver == other.resolver && Objects.equals(this.name, other.name);
+        }
+    }
+
+    /**
+     * Outcome of the network part of a lookup, along with the parameters it has been carried out
+     * with (the <code>LookupContext</code> is mutable and might have been changed meanwhile).
+     */
+    private static final class Resolution
+    {
+        private final Fqdn domainName;
+        private final String prefix;
+        private final int rrType;
+        private final boolean secure;
+        private final Resolver resolver;
+        private final Resolver valResolver;
+        /** Records returned by the lookup, <code>null</code> if none. */
+        private Record[] records;
+        /** Additional section of the response, <code>null</code> if not retained. */
+        private Record[] additional;
+        /** Outcome of the lookup. */
+        private StatusCode outcome;
+        /** DNSSEC validation failure, if any. */
+        private LookupException secFailure;
+        /** Number of queries sent to the resolver, none if answered from the caches. */
+        private int issued;
+
+        private Resolution(Resolution res, Resolver resolver, Resolver valResolver)
+        {
+            this.domainName = res.domainName;
+            this.prefix = res.prefix;
+            this.rrType = res.rrType;
+            this.secure = res.secure;
+            this.resolver = resolver;
+            this.valResolver = valResolver;
+        }
+
+        private Resolution(LookupContext ctx)
+        {
+            this.domainName = ctx.getDomainName();
+            this.prefix = ctx.getPrefix();
+            this.rrType = ctx.getRrType();
+            this.secure = ctx.isSecure();
+            this.resolver = ctx.getResolver();
+            this.valResolver = ctx.getValResolver();
+        }
+    }
+
 }
@@ -0,0 +1,340 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
+import org.xbill.DNS.ExtendedFlags;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+
+/**
+ * A <code>Resolver</code> negotiating the EDNS payload size: queries advertise the configured size,
+ * and the DO bit if requested, so that large responses come back over UDP instead of truncated.
+ * Whenever a query times out, as a response too large for the path would, being fragmented and
+ * dropped, it is retried once with the next smaller size, 1232 bytes, then 512 bytes, waiting a
+ * fraction of the timeout only. As a timeout tells nothing of the path until the server is known
+ * to be reachable, nor once the querying thread is interrupted, no retry is made before a first
+ * response, nor for an interrupted query. A size reduced by a successful retry is kept for a
+ * while, then the configured one is tried again.
+ *
+ * Queries go over the UDP resolver, truncated responses being retried over the TCP one, unless
+ * truncation is ignored; both the truncations and the fallbacks are counted. If both resolvers are
+ * the same, queries go over it as they are, with no fallback.
+ *
+ * Thread-safe.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc6891#section-6.2.5">EDNS(0) Payload Size Selection</a>
+ */
+final class EdnsResolver implements Resolver
+{
+
+    /** Payload size avoiding IP fragmentation on most paths. */
+    static final int SAFE_PAYLOAD_SIZE = 1232;
+    /** Payload size any server supports. */
+    static final int MIN_PAYLOAD_SIZE = 512;
+    /** Time a reduced payload size is kept, in milliseconds. */
+    private static final long REDUCTION_PERIOD = TimeUnit.MINUTES.toMillis(10);
+    /** Query timeout unless configured, as for a <code>SimpleResolver</code>, in milliseconds. */
+    private static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+    /** Fraction of the query timeout a retry with a smaller payload size waits for. */
+    private static final int PROBE_DIVISOR = 4;
+    /** Most threads carrying out the asynchronous queries at once. */
+    private static final int ASYNC_THREADS = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+    /** Time an idle asynchronous queries thread is kept, in seconds. */
+    private static final long ASYNC_KEEP_ALIVE = 60L;
+
+    private final Resolver udp;
+    private final Resolver tcp;
+    private final LookupStatistics statistics;
+    /** Monotonic clock, in nanoseconds. */
+    private final LongSupplier ticker;
+    /** Payload sizes, the configured one first, then the fallbacks. */
+    private volatile int[] payloadSizes;
+    /** Configured EDNS flags, i.e. the DO bit if requested. */
+    private final int baseFlags;
+    private volatile int flags;
+    @SuppressWarnings("rawtypes")
+    private volatile List options;
+    private volatile boolean edns = true;
+    private volatile boolean tcpOnly;
+    private volatile boolean ignoreTruncation;
+    /** Time a retry with a smaller payload size waits for, in milliseconds. */
+    private volatile long probeTimeout = DEFAULT_TIMEOUT / PROBE_DIVISOR;
+    /** Whether the server ever responded over UDP. */
+    private volatile boolean reachable;
+    /** Index of the payload size in use; guarded by this resolver. */
+    private int reduced;
+    /** End of the reduction period, in nanoseconds; guarded by this resolver. */
+    private long reducedUntil;
+
+    EdnsResolver(Resolver udp, Resolver tcp, int payloadSize, boolean dnssecOk, LookupStatistics statistics)
+    {
+        this(udp, tcp, payloadSize, dnssecOk, statistics, System::nanoTime);
+    }
+
+    EdnsResolver(Resolver udp, Resolver tcp, int payloadSize, boolean dnssecOk, LookupStatistics statistics,
+                 LongSupplier ticker)
+    {
+        this.udp = udp;
+        this.tcp = tcp;
+        this.statistics = statistics;
+        this.ticker = ticker;
+        this.payloadSizes = payloadSizes(payloadSize);
+        this.baseFlags = (dnssecOk ? ExtendedFlags.DO : 0);
+        this.flags = this.baseFlags;
+        if (udp != tcp) {
+            // truncated responses are retried here, to be counted
+            this.udp.setIgnoreTruncation(true);
+        }
+    }
+
+    @Override
+    public void setPort(int port)
+    {
+        this.udp.setPort(port);
+        if (this.tcp != this.udp) {
+            this.tcp.setPort(port);
+        }
+    }
+
+    @Override
+    public void setTCP(boolean flag)
+    {
+        this.tcpOnly = flag;
+    }
+
+    @Override
+    public void setIgnoreTruncation(boolean flag)
+    {
+        this.ignoreTruncation = flag;
+    }
+
+    @Override
+    public void setEDNS(int level)
+    {
+        setEDNS(level, 0, 0, null);
+    }
+
+    /**
+     * Configure EDNS: a payload size of 0 keeps the configured one, and the flags, e.g. the DO bit
+     * a <code>ValidatingResolver</code> sets, replace the ones previously set, the configured DO bit
+     * being always kept.
+     */
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void setEDNS(int level, int payloadSize, int ednsFlags, List ednsOptions)
+    {
+        if (level != 0 && level != -1) {
+            throw new IllegalArgumentException("invalid EDNS level - must be 0 or -1");
+        }
+        this.edns = (level == 0);
+        if (payloadSize != 0) {
+            this.payloadSizes = payloadSizes(payloadSize);
+        }
+        this.flags = this.baseFlags | ednsFlags;
+        this.options = ednsOptions;
+    }
+
+    @Override
+    public void setTSIGKey(TSIG key)
+    {
+        this.udp.setTSIGKey(key);
+        if (this.tcp != this.udp) {
+            this.tcp.setTSIGKey(key);
+        }
+    }
+
+    @Override
+    public void setTimeout(int secs, int msecs)
+    {
+        this.probeTimeout = Math.max(1L, (TimeUnit.SECONDS.toMillis(secs) + msecs) / PROBE_DIVISOR);
+        this.udp.setTimeout(secs, msecs);
+        if (this.tcp != this.udp) {
+            this.tcp.setTimeout(secs, msecs);
+        }
+    }
+
+    @Override
+    public void setTimeout(int secs)
+    {
+        setTimeout(secs, 0);
+    }
+
+    @Override
+    public Message send(Message query) throws IOException
+    {
+        int[] sizes = this.payloadSizes;
+        if (this.tcpOnly || this.udp == this.tcp) {
+            return this.tcp.send(withEdns(query, sizes[0]));
+        }
+
+        int step = step(sizes.length);
+        Message sized = withEdns(query, sizes[step]);
+        Message response;
+        try {
+            response = this.udp.send(sized);
+        } catch (SocketTimeoutException timeout) {
+            // dnsjava reports an interrupt as a timeout
+            if (sized == query || step + 1 >= sizes.length || !this.reachable
+                || Thread.currentThread().isInterrupted()) {
+                throw timeout;
+            }
+            sized = withEdns(query, sizes[step + 1]);
+            response = probe(sized, timeout);
+            reduce(step + 1);
+            this.statistics.ednsFallback();
+        }
+        this.reachable = true;
+        if (!this.ignoreTruncation && response.getHeader().getFlag(Flags.TC)) {
+            this.statistics.truncation();
+            return this.tcp.send(sized);
+        }
+
+        return response;
+    }
+
+    @Override
+    public Object sendAsync(final Message query, final ResolverListener listener)
+    {
+        final Object id = new Object();
+        Async.POOL.execute(() -> {
+            Message response;
+            try {
+                response = send(query);
+            } catch (IOException | RuntimeException e) {
+                listener.handleException(id, e instanceof IOException ? (IOException) e : new IOException(e));
+                return;
+            }
+            listener.receiveMessage(id, response);
+        });
+
+        return id;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "EdnsResolver [" + this.udp + "]";
+    }
+
+    /**
+     * Retry a query timed out with a smaller payload size, waiting for <code>probeTimeout</code>
+     * only: the original timeout is thrown if no response comes back meanwhile.
+     */
+    private Message probe(Message query, SocketTimeoutException timeout) throws IOException
+    {
+        CompletableFuture<Message> response = new CompletableFuture<>();
+        this.udp.sendAsync(query, new ResolverListener() {
+
+            @Override
+            public void receiveMessage(Object id, Message m)
+            {
+                response.complete(m);
+            }
+
+            @Override
+            public void handleException(Object id, Exception e)
+            {
+                response.completeExceptionally(e);
+            }
+        });
+        try {
+            return response.get(this.probeTimeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw timeout;
+        } catch (TimeoutException e) {
+            throw timeout;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Copy the query, unless it carries an OPT record already, adding one with the given size.
+     */
+    private Message withEdns(Message query, int payloadSize)
+    {
+        if (!this.edns || query.getOPT() != null) {
+            return query;
+        }
+        // dnsjava draws the ID lazily: have it drawn once, so that the copy and the query share it
+        query.getHeader().getID();
+        Message copy = (Message) query.clone();
+        copy.addRecord(new OPTRecord(payloadSize, 0, 0, this.flags, this.options), Section.ADDITIONAL);
+
+        return copy;
+    }
+
+    private synchronized int step(int steps)
+    {
+        if (this.reduced > 0 && this.ticker.getAsLong() - this.reducedUntil >= 0) {
+            this.reduced = 0;
+        }
+
+        return Math.min(this.reduced, steps - 1);
+    }
+
+    private synchronized void reduce(int step)
+    {
+        if (step > this.reduced) {
+            this.reduced = step;
+            this.reducedUntil = this.ticker.getAsLong() + TimeUnit.MILLISECONDS.toNanos(REDUCTION_PERIOD);
+        }
+    }
+
+    private static int[] payloadSizes(int payloadSize)
+    {
+        if (payloadSize > SAFE_PAYLOAD_SIZE) {
+            return new int[] { payloadSize, SAFE_PAYLOAD_SIZE, MIN_PAYLOAD_SIZE };
+        }
+
+        return (payloadSize > MIN_PAYLOAD_SIZE ? new int[] { payloadSize, MIN_PAYLOAD_SIZE }
+                                               : new int[] { payloadSize });
+    }
+
+    /**
+     * Threads carrying out the asynchronous queries, created on first use: at most
+     * <code>ASYNC_THREADS</code>, the queries in excess waiting for one to be available.
+     */
+    private static final class Async
+    {
+        private static final ExecutorService POOL = pool();
+
+        private static ExecutorService pool()
+        {
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(ASYNC_THREADS, ASYNC_THREADS, ASYNC_KEEP_ALIVE,
+                                                             TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                                                             new DaemonThreadFactory("tiaki-edns"));
+            pool.allowCoreThreadTimeOut(true);
+
+            return pool;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.Arrays;
+
+/**
+ * Policy driving the hedged queries: a query is sent to the next resolver too, once the current one
+ * has not answered within the configured percentile of the recently observed latencies. Hedges are
+ * paid with a budget replenished by each lookup, so that the extra load never exceeds the configured
+ * ratio of the lookups (plus a small burst). Lookups answered from the caches are left out, of the
+ * budget and of the latencies alike.
+ *
+ * Thread-safe.
+ */
+final class HedgingPolicy
+{
+
+    /** Number of latency samples retained. */
+    private static final int SAMPLES = 128;
+    /** Number of samples needed before the percentile is trusted. */
+    private static final int MIN_SAMPLES = 16;
+    /** Delay used until enough samples have been collected, in milliseconds. */
+    private static final long INITIAL_DELAY = 500L;
+    /** Shortest delay, in milliseconds. */
+    private static final long MIN_DELAY = 5L;
+    /** Number of hedges which can be sent in a row, budget permitting. */
+    private static final double MAX_BURST = 10.0;
+
+    /** Percentile of the latencies after which a hedge is sent, in <code>(0, 100]</code>. */
+    private final double percentile;
+    /** Maximum ratio of hedges over lookups, in <code>[0, 1]</code>. */
+    private final double budgetRatio;
+    /** Ring buffer of the latest latencies, in milliseconds. */
+    private final long[] latencies = new long[SAMPLES];
+    /** Number of samples recorded so far. */
+    private long recorded;
+    /** Hedges currently affordable. */
+    private double budget;
+
+    HedgingPolicy(double percentile, double budgetRatio)
+    {
+        this.percentile = percentile;
+        this.budgetRatio = budgetRatio;
+        this.budget = 0.0;
+    }
+
+    /**
+     * Account for a new lookup sent to the resolvers, replenishing the budget.
+     */
+    synchronized void lookup()
+    {
+        this.budget = Math.min(MAX_BURST, this.budget + this.budgetRatio);
+    }
+
+    /**
+     * Try to pay for a hedge.
+     *
+     * @return <code>true</code> iff the budget allows one more hedge
+     */
+    synchronized boolean tryHedge()
+    {
+        if (this.budget < 1.0) {
+            return false;
+        }
+        this.budget -= 1.0;
+
+        return true;
+    }
+
+    /**
+     * Record the latency of an answered query.
+     *
+     * @param millis The latency, in milliseconds
+     */
+    synchronized void record(long millis)
+    {
+        this.latencies[(int) (this.recorded++ % SAMPLES)] = millis;
+    }
+
+    /**
+     * Retrieve how long to wait for an answer before hedging.
+     *
+     * @return The delay, in milliseconds
+     */
+    synchronized long delay()
+    {
+        if (this.recorded < MIN_SAMPLES) {
+            return INITIAL_DELAY;
+        }
+        int samples = (int) Math.min(this.recorded, SAMPLES);
+        long[] sorted = Arrays.copyOf(this.latencies, samples);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(this.percentile / 100.0 * samples) - 1;
+
+        return Math.max(MIN_DELAY, sorted[Math.max(0, Math.min(rank, samples - 1))]);
+    }
+
+}
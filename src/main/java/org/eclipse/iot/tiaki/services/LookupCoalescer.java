@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import org.eclipse.iot.tiaki.commons.StatusCode;
+import org.eclipse.iot.tiaki.exceptions.LookupException;
+
+/**
+ * Single-flight execution of identical lookups: while a lookup is outstanding, concurrent callers
+ * asking for the same key wait for it and share its outcome instead of issuing their own.
+ * Once the lookup completes, the key is released and a subsequent call triggers a new lookup.
+ * A lookup whose caller gets interrupted, e.g. a cancelled one, tells nothing of the outcome the
+ * others are waiting for: it is abandoned instead, one of them carrying out the lookup anew.
+ *
+ * @param <K> The type of the key identifying identical lookups
+ * @param <V> The type of the lookup outcome
+ */
+final class LookupCoalescer<K, V>
+{
+
+    /** Outstanding lookups, by key. */
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Run the <i>lookup</i>, unless an identical one is outstanding, in which case its outcome is
+     * awaited and shared.
+     *
+     * @param key    The key identifying identical lookups
+     * @param lookup The lookup to be run
+     *
+     * @return The lookup outcome, possibly shared with concurrent callers
+     *
+     * @throws LookupException
+     *      Raised by the lookup, or in case the calling thread is interrupted while waiting.
+     */
+    V run(K key, Callable<V> lookup) throws LookupException
+    {
+        while (true) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> outstanding = this.inFlight.putIfAbsent(key, flight);
+            if (outstanding == null) {
+                return lead(key, flight, lookup);
+            }
+            try {
+                return await(outstanding);
+            } catch (Abandoned abandoned) {
+                // the outstanding lookup has been given up: take over
+            }
+        }
+    }
+
+    private V lead(K key, CompletableFuture<V> flight, Callable<V> lookup) throws LookupException
+    {
+        V outcome;
+        try {
+            outcome = lookup.call();
+        } catch (Throwable error) {
+            // released first, for the abandoned callers not to find the flight again
+            this.inFlight.remove(key, flight);
+            flight.completeExceptionally(Thread.currentThread().isInterrupted() ? Abandoned.INSTANCE : error);
+            throw rethrow(error);
+        }
+        this.inFlight.remove(key, flight);
+        if (Thread.currentThread().isInterrupted()) {
+            flight.completeExceptionally(Abandoned.INSTANCE);
+        } else {
+            flight.complete(outcome);
+        }
+
+        return outcome;
+    }
+
+    /**
+     * Number of outstanding lookups.
+     *
+     * @return The number of distinct keys being looked up
+     */
+    int outstanding() { return this.inFlight.size(); }
+
+    private V await(CompletableFuture<V> outstanding) throws LookupException
+    {
+        try {
+            return outstanding.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new LookupException(StatusCode.NETWORK_ERROR, "Interrupted while waiting for a lookup");
+        } catch (ExecutionException ee) {
+            throw rethrow(ee.getCause());
+        }
+    }
+
+    private static LookupException rethrow(Throwable error)
+    {
+        if (error instanceof LookupException) {
+            return (LookupException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error instanceof Error) {
+            throw (Error) error;
+        }
+
+        return new LookupException(StatusCode.SERVER_ERROR, error.toString());
+    }
+
+    /**
+     * Outcome shared in place of the one of a lookup whose caller has been interrupted.
+     */
+    private static final class Abandoned extends RuntimeException
+    {
+        private static final long serialVersionUID = 2760418313853093312L;
+
+        private static final Abandoned INSTANCE = new Abandoned();
+
+        private Abandoned()
+        {
+            super("Lookup abandoned", null, false, false);
+        }
+    }
+
+}
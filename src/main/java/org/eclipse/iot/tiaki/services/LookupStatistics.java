@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the lookups carried out by a <code>DnsServicesDiscovery</code> and of the queries
+ * they issued to the resolvers, split by security mode. Counters are updated lock-free, hence they
+ * can be read at any time without affecting the lookups.
+ *
+ */
+public final class LookupStatistics
+{
+
+    /** Lookups carried out without DNSSEC validation. */
+    private final AtomicLong lookups = new AtomicLong();
+    /** Queries issued by the lookups carried out without DNSSEC validation. */
+    private final AtomicLong queries = new AtomicLong();
+    /** Lookups carried out with DNSSEC validation. */
+    private final AtomicLong secureLookups = new AtomicLong();
+    /** Queries issued by the lookups carried out with DNSSEC validation. */
+    private final AtomicLong secureQueries = new AtomicLong();
+    /** Lookups hedged to a further resolver. */
+    private final AtomicLong hedges = new AtomicLong();
+    /** Truncated UDP responses retried over TCP. */
+    private final AtomicLong truncations = new AtomicLong();
+    /** Queries retried with a smaller EDNS payload size. */
+    private final AtomicLong ednsFallbacks = new AtomicLong();
+
+    LookupStatistics() { super(); }
+
+    /**
+     * Record a lookup.
+     *
+     * @param secure  <code>true</code> iff the lookup has been DNSSEC validated
+     * @param issued  Number of queries issued to the resolver by the lookup
+     */
+    void record(boolean secure, int issued)
+    {
+        if (secure) {
+            this.secureLookups.incrementAndGet();
+            this.secureQueries.addAndGet(issued);
+        } else {
+            this.lookups.incrementAndGet();
+            this.queries.addAndGet(issued);
+        }
+    }
+
+    /**
+     * Record a lookup hedged to a further resolver.
+     */
+    void hedge()
+    {
+        this.hedges.incrementAndGet();
+    }
+
+    /**
+     * Record a truncated UDP response, the query being retried over TCP.
+     */
+    void truncation()
+    {
+        this.truncations.incrementAndGet();
+    }
+
+    /**
+     * Record a query retried with a smaller EDNS payload size.
+     */
+    void ednsFallback()
+    {
+        this.ednsFallbacks.incrementAndGet();
+    }
+
+    public long getLookups() { return this.lookups.get(); }
+
+    public long getQueries() { return this.queries.get(); }
+
+    public long getSecureLookups() { return this.secureLookups.get(); }
+
+    public long getSecureQueries() { return this.secureQueries.get(); }
+
+    public long getHedges() { return this.hedges.get(); }
+
+    public long getTruncations() { return this.truncations.get(); }
+
+    public long getEdnsFallbacks() { return this.ednsFallbacks.get(); }
+
+    /**
+     * Reset all the counters.
+     */
+    public void reset()
+    {
+        this.lookups.set(0L);
+        this.queries.set(0L);
+        this.secureLookups.set(0L);
+        this.secureQueries.set(0L);
+        this.hedges.set(0L);
+        this.truncations.set(0L);
+        this.ednsFallbacks.set(0L);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("lookups=%d, queries=%d, secureLookups=%d, secureQueries=%d, hedges=%d, "
+                                + "truncations=%d, ednsFallbacks=%d",
+                getLookups(), getQueries(), getSecureLookups(), getSecureQueries(), getHedges(),
+                getTruncations(), getEdnsFallbacks());
+    }
+
+}
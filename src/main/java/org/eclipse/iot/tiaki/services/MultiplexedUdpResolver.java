@@ -0,0 +1,213 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import org.eclipse.iot.tiaki.commons.Constants;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.TSIG;
+
+/**
+ * A <code>Resolver</code> sending its queries over a <code>UdpMultiplexer</code>, instead of
+ * opening a socket per query: outstanding queries share a handful of sockets and threads. It
+ * behaves as a <code>SimpleResolver</code> otherwise: truncated responses are retried over TCP,
+ * unless truncation is ignored, and TCP only mode is honoured, both over the persistent connections
+ * of a <code>TcpPipeline</code>.
+ *
+ * The listeners of <code>sendAsync</code> are called back on the selector thread, or on a connection
+ * thread if the query is retried over TCP: they must not block.
+ */
+final class MultiplexedUdpResolver implements Resolver
+{
+
+    /** Default time a response is waited for, in milliseconds, as for <code>SimpleResolver</code>. */
+    private static final long DEFAULT_TIMEOUT = 10000L;
+
+    private final UdpMultiplexer multiplexer;
+    private volatile TcpPipeline pipeline;
+    private volatile InetSocketAddress address;
+    private volatile boolean tcp;
+    private volatile boolean ignoreTruncation;
+    private volatile OPTRecord queryOPT;
+    private volatile TSIG tsig;
+    private volatile long timeout = DEFAULT_TIMEOUT;
+
+    MultiplexedUdpResolver(TcpPipeline pipeline) throws IOException
+    {
+        this(UdpMultiplexer.shared(), pipeline);
+    }
+
+    MultiplexedUdpResolver(InetSocketAddress address, UdpMultiplexer multiplexer)
+    {
+        this(multiplexer, new TcpPipeline(address, Constants.TCP_IDLE_TIMEOUT, Constants.TCP_MAX_IN_FLIGHT));
+    }
+
+    MultiplexedUdpResolver(UdpMultiplexer multiplexer, TcpPipeline pipeline)
+    {
+        this.address = pipeline.server();
+        this.multiplexer = multiplexer;
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public void setPort(int port)
+    {
+        TcpPipeline former = this.pipeline;
+        this.pipeline = former.withPort(port);
+        this.address = this.pipeline.server();
+        former.close();
+    }
+
+    @Override
+    public void setTCP(boolean flag)
+    {
+        this.tcp = flag;
+    }
+
+    @Override
+    public void setIgnoreTruncation(boolean flag)
+    {
+        this.ignoreTruncation = flag;
+    }
+
+    @Override
+    public void setEDNS(int level)
+    {
+        setEDNS(level, 0, 0, null);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void setEDNS(int level, int payloadSize, int flags, List options)
+    {
+        if (level != 0 && level != -1) {
+            throw new IllegalArgumentException("invalid EDNS level - must be 0 or -1");
+        }
+        this.queryOPT = (level == -1 ? null
+                : new OPTRecord(payloadSize == 0 ? SimpleResolver.DEFAULT_EDNS_PAYLOADSIZE : payloadSize,
+                                0, level, flags, options));
+    }
+
+    @Override
+    public void setTSIGKey(TSIG key)
+    {
+        this.tsig = key;
+    }
+
+    @Override
+    public void setTimeout(int secs, int msecs)
+    {
+        this.timeout = secs * 1000L + msecs;
+    }
+
+    @Override
+    public void setTimeout(int secs)
+    {
+        setTimeout(secs, 0);
+    }
+
+    @Override
+    public Message send(Message query) throws IOException
+    {
+        try {
+            if (this.tcp) {
+                return tcpResolver().exchange(query).get();
+            }
+            Message response = this.multiplexer.send(prepare(query), this.address, this.tsig, this.timeout).get();
+
+            return (truncated(response) ? tcpResolver().exchange(query).get() : response);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + this.address);
+        } catch (ExecutionException ee) {
+            throw failure(ee.getCause());
+        }
+    }
+
+    @Override
+    public Object sendAsync(final Message query, final ResolverListener listener)
+    {
+        final Object id = new Object();
+        CompletableFuture<Message> response = (this.tcp
+                ? tcpResolver().exchange(query)
+                : this.multiplexer.send(prepare(query), this.address, this.tsig, this.timeout));
+        response.thenCompose(message -> (!this.tcp && truncated(message)
+                                            ? tcpResolver().exchange(query)
+                                            : CompletableFuture.completedFuture(message)))
+                .whenComplete((message, failure) -> {
+                    if (failure == null) {
+                        listener.receiveMessage(id, message);
+                    } else {
+                        listener.handleException(id, failure(failure instanceof CompletionException
+                                                             ? failure.getCause() : failure));
+                    }
+                });
+
+        return id;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "MultiplexedUdpResolver [" + this.address + "]";
+    }
+
+    /**
+     * Copy the query, as the transport changes its ID, adding the EDNS record if configured.
+     */
+    private Message prepare(Message query)
+    {
+        // dnsjava draws the ID lazily: have it drawn once, so that the copy and the query share it
+        query.getHeader().getID();
+        Message copy = (Message) query.clone();
+        OPTRecord opt = this.queryOPT;
+        if (opt != null && copy.getOPT() == null) {
+            copy.addRecord(opt, Section.ADDITIONAL);
+        }
+
+        return copy;
+    }
+
+    private boolean truncated(Message response)
+    {
+        return !this.ignoreTruncation && response.getHeader().getFlag(Flags.TC);
+    }
+
+    private PipelinedTcpResolver tcpResolver()
+    {
+        PipelinedTcpResolver resolver = new PipelinedTcpResolver(this.pipeline);
+        resolver.setTSIGKey(this.tsig);
+        resolver.setTimeout((int) (this.timeout / 1000L), (int) (this.timeout % 1000L));
+        OPTRecord opt = this.queryOPT;
+        if (opt != null) {
+            resolver.setEDNS(opt.getVersion(), opt.getPayloadSize(), opt.getFlags(), opt.getOptions());
+        }
+
+        return resolver;
+    }
+
+    private static IOException failure(Throwable cause)
+    {
+        return (cause instanceof IOException ? (IOException) cause : new IOException(cause));
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.eclipse.iot.tiaki.commons.StatusCode;
+
+/**
+ * Cache of the negative answers (i.e. name or Resource Record type not found), keyed by name and
+ * type. As per RFC 2308, an answer is kept for the SOA minimum TTL it has been returned with,
+ * never longer than a configured ceiling. The cache is bounded by its number of entries, the least
+ * recently used ones being evicted first.
+ *
+ * Thread-safe.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc2308">Negative Caching of DNS Queries</a>
+ */
+final class NegativeCache
+{
+
+    /** Longest time an answer is kept for, in seconds. */
+    private final long maxTtl;
+    /** Monotonic clock, in nanoseconds. */
+    private final LongSupplier ticker;
+    /** Entries, in access order. */
+    private final LinkedHashMap<Key, Denial> entries;
+
+    NegativeCache(int maxEntries, long maxTtl) { this(maxEntries, maxTtl, System::nanoTime); }
+
+    NegativeCache(final int maxEntries, long maxTtl, LongSupplier ticker)
+    {
+        this.maxTtl = maxTtl;
+        this.ticker = ticker;
+        this.entries = new LinkedHashMap<Key, Denial>(16, 0.75f, true) {
+            private static final long serialVersionUID = 2154478283137536342L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Denial> eldest)
+            {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Retrieve the unexpired negative answer for the given name and type, if any.
+     *
+     * @param name   The queried name
+     * @param rrType The queried Resource Record type
+     *
+     * @return The outcome of the cached answer, <code>null</code> in case of miss
+     */
+    synchronized StatusCode get(String name, int rrType)
+    {
+        Key key = new Key(name, rrType);
+        Denial entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt - this.ticker.getAsLong() <= 0) {
+            this.entries.remove(key);
+            return null;
+        }
+
+        return entry.outcome;
+    }
+
+    /**
+     * Cache a negative answer.
+     *
+     * @param name    The queried name
+     * @param rrType  The queried Resource Record type
+     * @param outcome The outcome of the answer
+     * @param soaTtl  The negative TTL the answer has been returned with, in seconds
+     */
+    synchronized void put(String name, int rrType, StatusCode outcome, long soaTtl)
+    {
+        long ttl = Math.min(soaTtl, this.maxTtl);
+        if (ttl <= 0L) {
+            return;
+        }
+        this.entries.put(new Key(name, rrType),
+                         new Denial(outcome, this.ticker.getAsLong() + TimeUnit.SECONDS.toNanos(ttl)));
+    }
+
+    synchronized void clear() { this.entries.clear(); }
+
+    synchronized int size() { return this.entries.size(); }
+
+    private static final class Denial
+    {
+        private final StatusCode outcome;
+        private final long expiresAt;
+
+        private Denial(StatusCode outcome, long expiresAt)
+        {
+            this.outcome = outcome;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static final class Key
+    {
+        private final String name;
+        private final int rrType;
+
+        private Key(String name, int rrType)
+        {
+            this.name = name.toLowerCase();
+            this.rrType = rrType;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.name, this.rrType);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+
+            return this.rrType == other.rrType && Objects.equals(this.name, other.name);
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.OPTRecord;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.TSIG;
+
+/**
+ * A <code>Resolver</code> sending its queries over the persistent connections of a
+ * <code>TcpPipeline</code>, instead of a connection per query. Queries always go over TCP, hence
+ * the TCP only mode and the truncation settings have no effect.
+ *
+ * The listeners of <code>sendAsync</code> are called back on the threads reading the connections:
+ * they must not block.
+ */
+final class PipelinedTcpResolver implements Resolver
+{
+
+    /** Default time a response is waited for, in milliseconds, as for <code>SimpleResolver</code>. */
+    private static final long DEFAULT_TIMEOUT = 10000L;
+
+    private volatile TcpPipeline pipeline;
+    private volatile OPTRecord queryOPT;
+    private volatile TSIG tsig;
+    private volatile long timeout = DEFAULT_TIMEOUT;
+
+    PipelinedTcpResolver(TcpPipeline pipeline)
+    {
+        this.pipeline = pipeline;
+    }
+
+    @Override
+    public void setPort(int port)
+    {
+        TcpPipeline former = this.pipeline;
+        this.pipeline = former.withPort(port);
+        former.close();
+    }
+
+    @Override
+    public void setTCP(boolean flag)
+    {
+        // always over TCP
+    }
+
+    @Override
+    public void setIgnoreTruncation(boolean flag)
+    {
+        // never truncated over TCP
+    }
+
+    @Override
+    public void setEDNS(int level)
+    {
+        setEDNS(level, 0, 0, null);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void setEDNS(int level, int payloadSize, int flags, List options)
+    {
+        if (level != 0 && level != -1) {
+            throw new IllegalArgumentException("invalid EDNS level - must be 0 or -1");
+        }
+        this.queryOPT = (level == -1 ? null
+                : new OPTRecord(payloadSize == 0 ? SimpleResolver.DEFAULT_EDNS_PAYLOADSIZE : payloadSize,
+                                0, level, flags, options));
+    }
+
+    @Override
+    public void setTSIGKey(TSIG key)
+    {
+        this.tsig = key;
+    }
+
+    @Override
+    public void setTimeout(int secs, int msecs)
+    {
+        this.timeout = secs * 1000L + msecs;
+    }
+
+    @Override
+    public void setTimeout(int secs)
+    {
+        setTimeout(secs, 0);
+    }
+
+    @Override
+    public Message send(Message query) throws IOException
+    {
+        try {
+            return exchange(query).get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for " + this.pipeline.server());
+        } catch (ExecutionException ee) {
+            throw failure(ee.getCause());
+        }
+    }
+
+    @Override
+    public Object sendAsync(final Message query, final ResolverListener listener)
+    {
+        final Object id = new Object();
+        exchange(query).whenComplete((message, failure) -> {
+            if (failure == null) {
+                listener.receiveMessage(id, message);
+            } else {
+                listener.handleException(id, failure(failure));
+            }
+        });
+
+        return id;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "PipelinedTcpResolver [" + this.pipeline.server() + "]";
+    }
+
+    /**
+     * Send a query over the pipeline, leaving the given one untouched.
+     *
+     * @param query The query
+     *
+     * @return The response, or an <code>IOException</code> in case of failure or timeout
+     */
+    CompletableFuture<Message> exchange(Message query)
+    {
+        // dnsjava draws the ID lazily: have it drawn once, so that the copy and the query share it
+        query.getHeader().getID();
+        Message copy = (Message) query.clone();
+        OPTRecord opt = this.queryOPT;
+        if (opt != null && copy.getOPT() == null) {
+            copy.addRecord(opt, Section.ADDITIONAL);
+        }
+
+        return this.pipeline.send(copy, this.tsig, this.timeout);
+    }
+
+    private static IOException failure(Throwable cause)
+    {
+        return (cause instanceof IOException ? (IOException) cause : new IOException(cause));
+    }
+
+}
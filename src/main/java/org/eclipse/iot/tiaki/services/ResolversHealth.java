@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.xbill.DNS.Resolver;
+
+/**
+ * Health of the configured resolvers, tracked upon every lookup: smoothed round trip time and its
+ * variance (as per RFC 6298), along with a smoothed failure rate. Resolvers are ranked by score,
+ * i.e. their retransmission timeout inflated by their failure rate, the unknown ones first.
+ *
+ * A resolver failing several times in a row is taken out of rotation for a back-off period, which
+ * doubles upon every further failure; it is ranked last meanwhile, so that it is addressed only once
+ * all the healthy ones have failed. Once the back-off expires, it is given another chance.
+ *
+ * Thread-safe.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc6298">Computing TCP's Retransmission Timer</a>
+ */
+final class ResolversHealth
+{
+
+    /** Smoothing factor of the round trip time. */
+    private static final double ALPHA = 1.0 / 8.0;
+    /** Smoothing factor of the round trip time variance. */
+    private static final double BETA = 1.0 / 4.0;
+    /** Smoothing factor of the failure rate. */
+    private static final double GAMMA = 1.0 / 8.0;
+    /** Weight of the failure rate over the score. */
+    private static final double FAILURE_PENALTY = 10.0;
+    /** Number of consecutive failures opening the circuit. */
+    private static final int FAILURES_THRESHOLD = 3;
+    /** First back-off period, in milliseconds. */
+    private static final long MIN_BACKOFF = 1000L;
+    /** Longest back-off period, in milliseconds. */
+    private static final long MAX_BACKOFF = 60000L;
+
+    /** Monotonic clock, in nanoseconds. */
+    private final LongSupplier ticker;
+    /** Health, by server. */
+    private final Map<String, Health> servers = new ConcurrentHashMap<>();
+
+    ResolversHealth() { this(System::nanoTime); }
+
+    ResolversHealth(LongSupplier ticker)
+    {
+        this.ticker = ticker;
+    }
+
+    /**
+     * Record the outcome of a lookup.
+     *
+     * @param server The server which has been addressed
+     * @param millis The lookup round trip time, in milliseconds
+     * @param failed <code>true</code> iff the server has not answered
+     */
+    void record(String server, long millis, boolean failed)
+    {
+        if (server != null) {
+            this.servers.computeIfAbsent(server, key -> new Health()).record(millis, failed, this.ticker.getAsLong());
+        }
+    }
+
+    /**
+     * Check whether a server is out of rotation.
+     *
+     * @param server The server to be checked
+     *
+     * @return <code>true</code> iff the server circuit is open
+     */
+    boolean isOpen(String server)
+    {
+        Health health = this.servers.get(server);
+
+        return health != null && health.isOpen(this.ticker.getAsLong());
+    }
+
+    /**
+     * Rank the resolvers by score, the ones out of rotation last.
+     *
+     * @param resolvers The resolvers, by server, in configuration order
+     *
+     * @return An unmodifiable <code>Map</code> of the same resolvers, ranked
+     */
+    Map<String, Resolver> rank(Map<String, Resolver> resolvers)
+    {
+        final long now = this.ticker.getAsLong();
+        List<Ranked> ranked = new ArrayList<>(resolvers.size());
+        for (String server : resolvers.keySet()) {
+            Health health = this.servers.get(server);
+            ranked.add(health == null ? new Ranked(server, false, 0.0) : health.rank(server, now));
+        }
+        // stable: ties keep the configuration order
+        Collections.sort(ranked, (one, other) -> {
+            if (one.open != other.open) {
+                return (one.open ? 1 : -1);
+            }
+            return Double.compare(one.score, other.score);
+        });
+
+        Map<String, Resolver> ordered = new LinkedHashMap<>();
+        for (Ranked server : ranked) {
+            ordered.put(server.server, resolvers.get(server.server));
+        }
+
+        return Collections.unmodifiableMap(ordered);
+    }
+
+    private static final class Ranked
+    {
+        private final String server;
+        private final boolean open;
+        private final double score;
+
+        private Ranked(String server, boolean open, double score)
+        {
+            this.server = server;
+            this.open = open;
+            this.score = score;
+        }
+    }
+
+    private static final class Health
+    {
+        /** Smoothed round trip time, in milliseconds, negative if unknown. */
+        private double srtt = -1.0;
+        /** Smoothed round trip time variance, in milliseconds. */
+        private double rttvar;
+        /** Smoothed failure rate. */
+        private double failures;
+        /** Number of consecutive failures. */
+        private int consecutive;
+        /** Current back-off period, in milliseconds. */
+        private long backoff;
+        /** End of the back-off period, in nanoseconds. */
+        private long openUntil;
+
+        private synchronized void record(long millis, boolean failed, long now)
+        {
+            this.failures += GAMMA * ((failed ? 1.0 : 0.0) - this.failures);
+            if (failed) {
+                if (++this.consecutive >= FAILURES_THRESHOLD) {
+                    this.backoff = (this.backoff == 0L ? MIN_BACKOFF : Math.min(MAX_BACKOFF, 2 * this.backoff));
+                    this.openUntil = now + TimeUnit.MILLISECONDS.toNanos(this.backoff);
+                }
+                return;
+            }
+
+            this.consecutive = 0;
+            this.backoff = 0L;
+            if (this.srtt < 0.0) {
+                this.srtt = millis;
+                this.rttvar = millis / 2.0;
+            } else {
+                this.rttvar += BETA * (Math.abs(this.srtt - millis) - this.rttvar);
+                this.srtt += ALPHA * (millis - this.srtt);
+            }
+        }
+
+        private synchronized boolean isOpen(long now)
+        {
+            return this.backoff > 0L && this.openUntil - now > 0;
+        }
+
+        private synchronized Ranked rank(String server, long now)
+        {
+            double rto = (this.srtt < 0.0 ? 0.0 : this.srtt + 4 * this.rttvar);
+
+            return new Ranked(server, isOpen(now), (rto + 1.0) * (1.0 + FAILURE_PENALTY * this.failures));
+        }
+    }
+
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.eclipse.iot.tiaki.commons.ResolverEndpoint;
+import org.eclipse.iot.tiaki.commons.Transport;
+import org.eclipse.iot.tiaki.exceptions.ConfigurationException;
+import org.eclipse.iot.tiaki.utils.DnsUtil;
+import org.xbill.DNS.Resolver;
+
+/**
+ * Immutable registry of the <code>Resolver</code> instances to be used by the lookups, keyed by
+ * server and security mode. It is built once per checked configuration, so that neither the
+ * resolvers' setup nor the trust anchor parsing take place on the lookup path; being immutable,
+ * it can be shared across threads. Once replaced, it has to be retired, releasing the persistent TCP
+ * connections of its resolvers as they get idle.
+ *
+ */
+final class ResolversRegistry implements Closeable
+{
+
+    /** Plain resolvers, by server, in configuration order. */
+    private final Map<String, Resolver> resolvers;
+    /** Validating resolvers, by server, in configuration order. */
+    private final Map<String, Resolver> valResolvers;
+    /** Servers, by resolver (either plain or validating). */
+    private final Map<Resolver, String> servers;
+    /** Persistent TCP connections of the resolvers, by server. */
+    private final Map<String, TcpPipeline> pipelines;
+    /** Transport settings the resolvers are built with. */
+    private final TransportSettings settings;
+
+    /**
+     * Build the registry up for the configured servers.
+     *
+     * @param dnsServers  The resolved descriptors of the configured DNS servers
+     * @param trustAnchor The trust anchor the validating resolvers are loaded with
+     *
+     * @return A new <code>ResolversRegistry</code>
+     *
+     * @throws ConfigurationException
+     *      In case instance(s) of <code>Resolver</code> cannot he instantiated.
+     */
+    static ResolversRegistry build(List<ResolverEndpoint> dnsServers, String trustAnchor)
+                                throws ConfigurationException
+    {
+        return build(dnsServers, trustAnchor, Transport.SIMPLE);
+    }
+
+    /**
+     * Build the registry up for the configured servers, sending the queries with the given transport.
+     *
+     * @param dnsServers  The resolved descriptors of the configured DNS servers
+     * @param trustAnchor The trust anchor the validating resolvers are loaded with
+     * @param transport   The <code>Transport</code> the queries are sent with
+     *
+     * @return A new <code>ResolversRegistry</code>
+     *
+     * @throws ConfigurationException
+     *      In case instance(s) of <code>Resolver</code> cannot he instantiated.
+     */
+    static ResolversRegistry build(List<ResolverEndpoint> dnsServers, String trustAnchor, Transport transport)
+                                throws ConfigurationException
+    {
+        return build(dnsServers, trustAnchor, new TransportSettings(transport));
+    }
+
+    /**
+     * Build the registry up for the configured servers, with the given transport settings. The
+     * persistent TCP connections to a server are shared by its plain and validating resolvers.
+     *
+     * @param dnsServers  The resolved descriptors of the configured DNS servers
+     * @param trustAnchor The trust anchor the validating resolvers are loaded with
+     * @param settings    The <code>TransportSettings</code> of the resolvers
+     *
+     * @return A new <code>ResolversRegistry</code>
+     *
+     * @throws ConfigurationException
+     *      In case instance(s) of <code>Resolver</code> cannot he instantiated.
+     */
+    static ResolversRegistry build(List<ResolverEndpoint> dnsServers, String trustAnchor, TransportSettings settings)
+                                throws ConfigurationException
+    {
+        Map<String, TcpPipeline> pipelines = new HashMap<>();
+        if (settings.transport() != Transport.SIMPLE) {
+            for (ResolverEndpoint dnsServer : dnsServers) {
+                pipelines.put(dnsServer.getKey(), new TcpPipeline(dnsServer.socketAddress(),
+                                                                  settings.tcpIdleTimeout(), settings.tcpMaxInFlight()));
+            }
+        }
+
+        try {
+            return new ResolversRegistry(instantiate(dnsServers, false, trustAnchor, settings, pipelines),
+                                         instantiate(dnsServers, true, trustAnchor, settings, pipelines),
+                                         pipelines, settings);
+        } catch (ConfigurationException | RuntimeException e) {
+            for (TcpPipeline pipeline : pipelines.values()) {
+                pipeline.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieve the resolvers for the requested security mode.
+     *
+     * @param secValidation <code>true</code> iff DNSSEC validation is needed
+     *
+     * @return An unmodifiable <code>Map</code> of <code>Resolver</code> by server
+     */
+    Map<String, Resolver> resolvers(boolean secValidation)
+    {
+        return (secValidation ? this.valResolvers : this.resolvers);
+    }
+
+    /**
+     * Retrieve the server a resolver addresses.
+     *
+     * @param resolver A plain or validating resolver of this registry
+     *
+     * @return The server key, <code>null</code> if the resolver does not belong to this registry
+     */
+    String serverOf(Resolver resolver)
+    {
+        return this.servers.get(resolver);
+    }
+
+    /**
+     * Build a plain resolver of its own for a server, with the transport settings of the registry
+     * ones and over their TCP connections, e.g. for a validator not sharing the keys validated so
+     * far, nor setting the EDNS flags of the shared resolvers.
+     *
+     * @param dnsServer The resolved descriptor of a configured DNS server
+     *
+     * @return A new <code>Resolver</code>
+     *
+     * @throws ConfigurationException
+     *      In case the <code>Resolver</code> cannot he instantiated.
+     */
+    Resolver newResolver(ResolverEndpoint dnsServer) throws ConfigurationException
+    {
+        return (this.settings.transport() == Transport.SIMPLE && !this.settings.negotiatesEdns()
+                    ? DnsUtil.getResolver(false, null, dnsServer)
+                    : head(dnsServer, this.settings, this.pipelines.get(dnsServer.getKey())));
+    }
+
+    /**
+     * Retire the persistent TCP connections of the resolvers: they are closed once idle, the queries
+     * in flight over them being answered. The resolvers keep working, e.g. for the lookups started
+     * before the registry has been replaced, their connections being closed as soon as idle.
+     */
+    void retire()
+    {
+        for (TcpPipeline pipeline : this.pipelines.values()) {
+            pipeline.retire();
+        }
+    }
+
+    /**
+     * Close the persistent TCP connections of the resolvers: the queries in flight over them fail,
+     * and so do the ones sent afterwards.
+     */
+    @Override
+    public void close()
+    {
+        for (TcpPipeline pipeline : this.pipelines.values()) {
+            pipeline.close();
+        }
+    }
+
+    private static Map<String, Resolver> instantiate(List<ResolverEndpoint> dnsServers, boolean secValidation,
+                                                     String trustAnchor, TransportSettings settings,
+                                                     Map<String, TcpPipeline> pipelines)
+                                            throws ConfigurationException
+    {
+        Map<String, Resolver> resolvers = new LinkedHashMap<>();
+        for(ResolverEndpoint dnsServer: dnsServers) {
+            resolvers.put(dnsServer.getKey(),
+                          (settings.transport() == Transport.SIMPLE && !settings.negotiatesEdns()
+                                ? DnsUtil.getResolver(secValidation, trustAnchor, dnsServer)
+                                : DnsUtil.getResolver(secValidation, trustAnchor,
+                                                      head(dnsServer, settings, pipelines.get(dnsServer.getKey())))));
+        }
+
+        return Collections.unmodifiableMap(resolvers);
+    }
+
+    /**
+     * Instantiate the resolver sending the queries to a server, negotiating the EDNS payload size
+     * over the transport's UDP and TCP resolvers if configured.
+     */
+    private static Resolver head(ResolverEndpoint dnsServer, TransportSettings settings, TcpPipeline pipeline)
+                        throws ConfigurationException
+    {
+        Resolver udp;
+        Resolver tcp;
+        try {
+            switch (settings.transport()) {
+                case PIPELINED_TCP:
+                    udp = new PipelinedTcpResolver(pipeline);
+                    tcp = udp;
+                    break;
+                case MULTIPLEXED_UDP:
+                    udp = new MultiplexedUdpResolver(pipeline);
+                    tcp = new PipelinedTcpResolver(pipeline);
+                    break;
+                default:
+                    udp = DnsUtil.getResolver(false, null, dnsServer);
+                    tcp = DnsUtil.getResolver(false, null, dnsServer);
+                    tcp.setTCP(true);
+                    break;
+            }
+        } catch (IOException ioe) {
+            throw new ConfigurationException(String.format("Unable to open the %s transport to [%s]",
+                                                           settings.transport(), dnsServer), ioe);
+        }
+
+        return (settings.negotiatesEdns() ? new EdnsResolver(udp, tcp, settings.ednsPayloadSize(),
+                                                             settings.dnssecOk(), settings.statistics())
+                                          : udp);
+    }
+
+    private ResolversRegistry(Map<String, Resolver> resolvers, Map<String, Resolver> valResolvers,
+                              Map<String, TcpPipeline> pipelines, TransportSettings settings)
+    {
+        this.resolvers = resolvers;
+        this.valResolvers = valResolvers;
+        this.pipelines = pipelines;
+        this.settings = settings;
+        this.servers = new IdentityHashMap<>();
+        for (Map.Entry<String, Resolver> server : resolvers.entrySet()) {
+            this.servers.put(server.getValue(), server.getKey());
+        }
+        for (Map.Entry<String, Resolver> server : valResolvers.entrySet()) {
+            this.servers.put(server.getValue(), server.getKey());
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.eclipse.iot.tiaki.domain.CertRecord;
+import org.eclipse.iot.tiaki.domain.CompoundLabel;
+import org.eclipse.iot.tiaki.domain.Fqdn;
+import org.eclipse.iot.tiaki.domain.InstanceProjection;
+import org.eclipse.iot.tiaki.domain.ServiceInstance;
+
+/**
+ * Cache of the resolved Service Instances, keyed by browsing domain, Service Type, projection and
+ * security mode. An entry expires with the shortest TTL among the SRV, TXT and TLSA records it has
+ * been built from (TXT records yet to be resolved aside), never later than a configured ceiling.
+ * The TTLs are counted from the time the entry is put, hence only instances built from records
+ * just received are to be cached. The cache is bounded by the overall number of cached instances:
+ * the least recently used entries are evicted first.
+ *
+ * Thread-safe.
+ */
+final class ServiceInstancesCache
+{
+
+    /** Maximum number of cached instances, over all the entries. */
+    private final int maxWeight;
+    /** Longest time an entry is kept for, in seconds. */
+    private final long maxTtl;
+    /** Monotonic clock, in nanoseconds. */
+    private final LongSupplier ticker;
+    /** Entries, in access order. */
+    private final LinkedHashMap<Key, Entry> entries;
+    /** Number of cached instances, over all the entries. */
+    private int weight;
+
+    ServiceInstancesCache(int maxWeight, long maxTtl) { this(maxWeight, maxTtl, System::nanoTime); }
+
+    ServiceInstancesCache(int maxWeight, long maxTtl, LongSupplier ticker)
+    {
+        this.maxWeight = maxWeight;
+        this.maxTtl = maxTtl;
+        this.ticker = ticker;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Retrieve the unexpired instances for the given lookup, if any.
+     *
+     * @param browsingDomain The browsing domain
+     * @param type           The Service Type
+     * @param projection     The parts the instances have been resolved with
+     * @param secure         <code>true</code> iff the instances have been DNSSEC validated
+     *
+     * @return A copy of the cached instances, <code>null</code> in case of miss
+     */
+    synchronized Set<ServiceInstance> get(Fqdn browsingDomain, CompoundLabel type, InstanceProjection projection,
+                                          boolean secure)
+    {
+        Key key = new Key(browsingDomain, type, projection, secure);
+        Entry entry = this.entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt - this.ticker.getAsLong() <= 0) {
+            this.entries.remove(key);
+            this.weight -= entry.weight();
+            return null;
+        }
+
+        return new TreeSet<>(entry.instances);
+    }
+
+    /**
+     * Cache the instances resolved for the given lookup. Empty sets, as well as sets built from
+     * records with no TTL, are not cached.
+     *
+     * @param browsingDomain The browsing domain
+     * @param type           The Service Type
+     * @param projection     The parts the instances have been resolved with
+     * @param secure         <code>true</code> iff the instances have been DNSSEC validated
+     * @param instances      The resolved instances
+     */
+    synchronized void put(Fqdn browsingDomain, CompoundLabel type, InstanceProjection projection, boolean secure,
+                          Set<ServiceInstance> instances)
+    {
+        long ttl = Math.min(minTtl(instances), this.maxTtl);
+        if (ttl <= 0L || instances.size() > this.maxWeight) {
+            return;
+        }
+
+        Entry entry = new Entry(Collections.unmodifiableSet(new TreeSet<>(instances)),
+                                this.ticker.getAsLong() + TimeUnit.SECONDS.toNanos(ttl));
+        Entry previous = this.entries.put(new Key(browsingDomain, type, projection, secure), entry);
+        if (previous != null) {
+            this.weight -= previous.weight();
+        }
+        this.weight += entry.weight();
+        evict();
+    }
+
+    /**
+     * Drop all the entries.
+     */
+    synchronized void clear()
+    {
+        this.entries.clear();
+        this.weight = 0;
+    }
+
+    synchronized int size() { return this.entries.size(); }
+
+    /**
+     * Evict the expired entries first, then the least recently used ones, until the cache is back
+     * within its bound.
+     */
+    private void evict()
+    {
+        if (this.weight <= this.maxWeight) {
+            return;
+        }
+        long now = this.ticker.getAsLong();
+        Iterator<Entry> itr = this.entries.values().iterator();
+        while (itr.hasNext()) {
+            Entry entry = itr.next();
+            if (entry.expiresAt - now <= 0) {
+                itr.remove();
+                this.weight -= entry.weight();
+            }
+        }
+        itr = this.entries.values().iterator();
+        while (this.weight > this.maxWeight && itr.hasNext()) {
+            Entry entry = itr.next();
+            itr.remove();
+            this.weight -= entry.weight();
+        }
+    }
+
+    /**
+     * Shortest TTL among the SRV, TXT and TLSA records the instances have been built from; the TXT
+     * records not resolved yet are left out, not to resolve them.
+     */
+    private static long minTtl(Set<ServiceInstance> instances)
+    {
+        long min = Long.MAX_VALUE;
+        for (ServiceInstance instance : instances) {
+            min = Math.min(min, instance.getServiceRecord().getTtl());
+            if (instance.isTextRecordResolved() && instance.getTextRecord() != null) {
+                min = Math.min(min, instance.getTextRecord().getTtl());
+            }
+            for (CertRecord cert : instance.getCertRecords()) {
+                min = Math.min(min, cert.getTtl());
+            }
+        }
+
+        return (instances.isEmpty() ? 0L : min);
+    }
+
+    private static final class Entry
+    {
+        private final Set<ServiceInstance> instances;
+        private final long expiresAt;
+
+        private Entry(Set<ServiceInstance> instances, long expiresAt)
+        {
+            this.instances = instances;
+            this.expiresAt = expiresAt;
+        }
+
+        private int weight() { return this.instances.size(); }
+    }
+
+    /**
+     * Lookup key; unlike <code>CompoundLabel</code> equality, it accounts for the protocol too.
+     */
+    private static final class Key
+    {
+        private final String domain;
+        private final String type;
+        private final String subType;
+        private final String proto;
+        private final InstanceProjection projection;
+        private final boolean secure;
+
+        private Key(Fqdn browsingDomain, CompoundLabel label, InstanceProjection projection, boolean secure)
+        {
+            this.domain = browsingDomain.fqdn().toLowerCase();
+            this.type = label.getType();
+            this.subType = label.getSubType();
+            this.proto = label.getProto();
+            this.projection = projection;
+            this.secure = secure;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.domain, this.type, this.subType, this.proto, this.projection, this.secure);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+
+            return this.secure == other.secure && this.projection == other.projection
+                    && Objects.equals(this.domain, other.domain)
+                    && Objects.equals(this.type, other.type)
+                    && Objects.equals(this.subType, other.subType)
+                    && Objects.equals(this.proto, other.proto);
+        }
+    }
+
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.TSIG;
+
+/**
+ * Persistent DNS over TCP connections to a server, as per RFC 7766: connections are kept open once
+ * idle and reused by the subsequent queries, which are pipelined, up to a maximum number in flight
+ * per connection. A further connection is opened whenever all the open ones are full; a connection
+ * idle for longer than the idle timeout is closed.
+ *
+ * Every query is given a random ID, unique over its connection, and responses are matched by ID as
+ * they come, in any order; a response is accepted only if it echoes the question. Queries left
+ * unanswered by a connection closed by the server are sent once more over a fresh connection.
+ * A retired pipeline keeps serving the queries, closing each connection as soon as it is idle.
+ *
+ * Thread-safe. Each open connection is read by a thread of its own, where the returned futures are
+ * completed too.
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc7766">DNS Transport over TCP</a>
+ */
+final class TcpPipeline implements Closeable
+{
+
+    private final InetSocketAddress server;
+    /** Time an idle connection is kept open, in milliseconds. */
+    private final long idleTimeout;
+    /** Maximum number of queries in flight over a connection. */
+    private final int maxInFlight;
+    private final List<Connection> connections = new CopyOnWriteArrayList<>();
+    private final DaemonThreadFactory readers;
+    private volatile boolean closed;
+    /** Whether connections are closed once idle, rather than kept open. */
+    private volatile boolean retired;
+
+    TcpPipeline(InetSocketAddress server, long idleTimeout, int maxInFlight)
+    {
+        this.server = server;
+        this.idleTimeout = idleTimeout;
+        this.maxInFlight = maxInFlight;
+        this.readers = new DaemonThreadFactory("tiaki-tcp-" + server);
+    }
+
+    /**
+     * Build a pipeline to another port of the same server, with the same limits.
+     *
+     * @param port The port of the server
+     *
+     * @return A new <code>TcpPipeline</code>
+     */
+    TcpPipeline withPort(int port)
+    {
+        return new TcpPipeline(new InetSocketAddress(this.server.getAddress(), port), this.idleTimeout,
+                               this.maxInFlight);
+    }
+
+    InetSocketAddress server() { return this.server; }
+
+    /**
+     * Send a query, asynchronously, over an open connection if any has room left, over a new one
+     * otherwise. The query is changed, as it is given a fresh ID; the ID of the response is set back
+     * to the original one.
+     *
+     * @param query The query, not shared with other threads
+     * @param tsig The key the query is signed with and the response verified with, if any
+     * @param timeout The time the response is waited for, in milliseconds
+     *
+     * @return The response, or an <code>IOException</code> in case of failure or timeout
+     */
+    CompletableFuture<Message> send(Message query, TSIG tsig, long timeout)
+    {
+        Exchange exchange = new Exchange(query, tsig, timeout);
+        exchange.expiry = Timeouts.SCHEDULER.schedule(() -> expire(exchange), timeout, TimeUnit.MILLISECONDS);
+        exchange.result.whenComplete((response, failure) -> exchange.expiry.cancel(false));
+        dispatch(exchange);
+
+        return exchange.result;
+    }
+
+    /**
+     * Retrieve the number of open connections.
+     *
+     * @return The number of open connections
+     */
+    int connections()
+    {
+        return this.connections.size();
+    }
+
+    /**
+     * Close the connections once they are idle, the queries in flight being answered: to be called
+     * once the pipeline is replaced, while queries might still be sent over it.
+     */
+    void retire()
+    {
+        this.retired = true;
+        for (Connection connection : this.connections) {
+            connection.closeIfRetired();
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        this.closed = true;
+        for (Connection connection : this.connections) {
+            connection.close(new IOException("Transport closed"), false);
+        }
+    }
+
+    private void dispatch(Exchange exchange)
+    {
+        if (this.closed) {
+            exchange.result.completeExceptionally(new IOException("Transport closed"));
+            return;
+        }
+        Connection connection = acquire(exchange);
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.write(exchange);
+        } catch (IOException ioe) {
+            // the connection is dead: its queries, this one included, are sent again over another one
+            connection.close(ioe, true);
+        }
+    }
+
+    /**
+     * Register the query over a connection with room left, opening one if needed.
+     *
+     * @return The connection, <code>null</code> if none could be opened, the query having failed
+     */
+    private Connection acquire(Exchange exchange)
+    {
+        for (Connection connection : this.connections) {
+            if (connection.register(exchange)) {
+                return connection;
+            }
+        }
+        synchronized (this) {
+            // another thread might have opened one meanwhile
+            for (Connection connection : this.connections) {
+                if (connection.register(exchange)) {
+                    return connection;
+                }
+            }
+            try {
+                Connection connection = new Connection(this.server, exchange.timeout);
+                connection.register(exchange);
+                this.connections.add(connection);
+                this.readers.newThread(connection::read).start();
+
+                return connection;
+            } catch (IOException ioe) {
+                exchange.result.completeExceptionally(ioe);
+                return null;
+            }
+        }
+    }
+
+    private void expire(Exchange exchange)
+    {
+        Connection connection = exchange.connection;
+        if (connection != null) {
+            connection.inFlight.remove(exchange.id, exchange);
+        }
+        exchange.result.completeExceptionally(new SocketTimeoutException(
+                String.format("Timed out waiting for %s after %d ms", this.server, exchange.timeout)));
+        if (connection != null) {
+            connection.closeIfRetired();
+        }
+    }
+
+    /**
+     * An open connection and the queries in flight over it.
+     */
+    private final class Connection
+    {
+        private final Socket socket;
+        private final DataOutputStream out;
+        private final DataInputStream in;
+        /** Queries in flight, by ID. */
+        private final Map<Integer, Exchange> inFlight = new ConcurrentHashMap<>();
+        /** Source of the query IDs; guarded by this connection. */
+        private final Random random = new SecureRandom();
+        /** Closed connections take no more queries; guarded by this connection. */
+        private boolean closed;
+        /** Last time a query has been registered, in nanoseconds; guarded by this connection. */
+        private long lastUsed;
+
+        private Connection(InetSocketAddress server, long connectTimeout) throws IOException
+        {
+            this.socket = new Socket();
+            try {
+                this.socket.setTcpNoDelay(true);
+                this.socket.connect(server, (int) Math.min(Integer.MAX_VALUE, connectTimeout));
+                this.socket.setSoTimeout((int) Math.min(Integer.MAX_VALUE, TcpPipeline.this.idleTimeout));
+                this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+                this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+            } catch (IOException ioe) {
+                this.socket.close();
+                throw ioe;
+            }
+            this.lastUsed = System.nanoTime();
+        }
+
+        private synchronized boolean register(Exchange exchange)
+        {
+            if (this.closed || this.inFlight.size() >= TcpPipeline.this.maxInFlight) {
+                return false;
+            }
+            int id;
+            do {
+                id = this.random.nextInt(0x10000);
+            } while (this.inFlight.containsKey(id));
+            exchange.id = id;
+            exchange.connection = this;
+            this.inFlight.put(id, exchange);
+            this.lastUsed = System.nanoTime();
+
+            return true;
+        }
+
+        private void write(Exchange exchange) throws IOException
+        {
+            exchange.query.getHeader().setID(exchange.id);
+            if (exchange.tsig != null) {
+                exchange.query.setTSIG(exchange.tsig, 0, null);
+            }
+            byte[] wire = exchange.query.toWire(Message.MAXLENGTH);
+            synchronized (this.out) {
+                this.out.writeShort(wire.length);
+                this.out.write(wire);
+                this.out.flush();
+            }
+        }
+
+        private void read()
+        {
+            try {
+                byte[] prefix = new byte[2];
+                while (readFully(prefix)) {
+                    byte[] wire = new byte[((prefix[0] & 0xFF) << 8) | (prefix[1] & 0xFF)];
+                    if (!readFully(wire)) {
+                        return;
+                    }
+                    accept(wire);
+                }
+            } catch (IOException ioe) {
+                close(ioe instanceof EOFException ? new EOFException("Connection closed by " + TcpPipeline.this.server)
+                                                  : ioe, true);
+            }
+        }
+
+        /**
+         * Fill the buffer up, across the read timeouts: the bytes read before a timeout are kept, so
+         * that the framing stays in sync however the server splits its responses.
+         *
+         * @return <code>false</code> if the connection has been closed meanwhile, being idle
+         */
+        private boolean readFully(byte[] buffer) throws IOException
+        {
+            int read = 0;
+            while (read < buffer.length) {
+                int count;
+                try {
+                    count = this.in.read(buffer, read, buffer.length - read);
+                } catch (SocketTimeoutException idle) {
+                    if (closeIfIdle()) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (count < 0) {
+                    throw new EOFException();
+                }
+                read += count;
+            }
+
+            return true;
+        }
+
+        /**
+         * Close the connection if the pipeline is retired and no query is in flight.
+         */
+        private void closeIfRetired()
+        {
+            synchronized (this) {
+                if (!TcpPipeline.this.retired || this.closed || !this.inFlight.isEmpty()) {
+                    return;
+                }
+                this.closed = true;
+            }
+            close(new IOException("Retired connection closed"), false);
+        }
+
+        private boolean closeIfIdle()
+        {
+            synchronized (this) {
+                long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.lastUsed);
+                if (!this.inFlight.isEmpty() || idle < TcpPipeline.this.idleTimeout) {
+                    return false;
+                }
+                this.closed = true;
+            }
+            close(new IOException("Idle connection closed"), false);
+
+            return true;
+        }
+
+        private void accept(byte[] wire)
+        {
+            Message response;
+            try {
+                response = new Message(wire);
+            } catch (IOException malformed) {
+                return;
+            }
+            Exchange exchange = this.inFlight.get(response.getHeader().getID());
+            if (exchange == null) {
+                return;
+            }
+            Record question = response.getQuestion();
+            if (question != null && !question.equals(exchange.query.getQuestion())) {
+                return;
+            }
+            if (exchange.tsig != null) {
+                exchange.tsig.verify(response, wire, exchange.query.getTSIG());
+            }
+            if (this.inFlight.remove(exchange.id, exchange)) {
+                response.getHeader().setID(exchange.originalId);
+                exchange.result.complete(response);
+                closeIfRetired();
+            }
+        }
+
+        /**
+         * Close the connection, failing its queries in flight or, if <i>retry</i>, sending them
+         * again over another connection, once at most.
+         */
+        private void close(IOException cause, boolean retry)
+        {
+            synchronized (this) {
+                this.closed = true;
+            }
+            TcpPipeline.this.connections.remove(this);
+            try {
+                this.socket.close();
+            } catch (IOException ignored) {
+                // nothing left to do
+            }
+            List<Exchange> orphans = new ArrayList<>(this.inFlight.values());
+            this.inFlight.clear();
+            for (Exchange exchange : orphans) {
+                if (retry && !TcpPipeline.this.closed && exchange.retry()) {
+                    dispatch(exchange);
+                } else {
+                    exchange.result.completeExceptionally(cause);
+                }
+            }
+        }
+    }
+
+    /**
+     * A query and its outcome.
+     */
+    private static final class Exchange
+    {
+        private final Message query;
+        private final TSIG tsig;
+        private final int originalId;
+        /** Time the response is waited for, in milliseconds. */
+        private final long timeout;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+        private volatile Connection connection;
+        private volatile int id;
+        private volatile ScheduledFuture<?> expiry;
+        private boolean retried;
+
+        private Exchange(Message query, TSIG tsig, long timeout)
+        {
+            this.query = query;
+            this.tsig = tsig;
+            this.timeout = timeout;
+            this.originalId = query.getHeader().getID();
+        }
+
+        private synchronized boolean retry()
+        {
+            if (this.retried) {
+                return false;
+            }
+            this.retried = true;
+
+            return true;
+        }
+    }
+
+    /**
+     * Thread tracking the timeouts of the queries of all the pipelines, created on first use.
+     */
+    private static final class Timeouts
+    {
+        private static final ScheduledThreadPoolExecutor SCHEDULER = scheduler();
+
+        private static ScheduledThreadPoolExecutor scheduler()
+        {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                    new DaemonThreadFactory("tiaki-tcp-timeouts"));
+            scheduler.setRemoveOnCancelPolicy(true);
+
+            return scheduler;
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel: timeouts are bucketed by the tick they expire at, so that scheduling and
+ * cancelling take constant time whatever the number of pending timeouts, and advancing the wheel
+ * only visits the buckets of the elapsed ticks. Timeouts expire at the first tick following their
+ * deadline, hence up to one tick late.
+ *
+ * Not thread-safe: it is meant to be driven by a single thread.
+ *
+ * @param <T> The type of the tasks expiring
+ */
+final class TimerWheel<T>
+{
+
+    /** Duration of a tick, in nanoseconds. */
+    private final long tick;
+    /** Time the ticks are counted from, in nanoseconds. */
+    private final long origin;
+    /** Buckets of timeouts, by tick modulo their number. */
+    private final List<List<Timeout<T>>> buckets;
+    /** Last tick expired. */
+    private long current;
+    /** Number of timeouts scheduled and not swept yet. */
+    private int size;
+
+    TimerWheel(int buckets, long tick, TimeUnit unit, long now)
+    {
+        this.tick = unit.toNanos(tick);
+        this.origin = now;
+        this.buckets = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            this.buckets.add(new ArrayList<Timeout<T>>());
+        }
+        this.current = 0L;
+    }
+
+    /**
+     * Schedule a task to expire at the given deadline.
+     *
+     * @param task The task expiring
+     * @param deadline The deadline, in nanoseconds on the clock the wheel is advanced with
+     *
+     * @return The <code>Timeout</code>, to be cancelled if the task completes before expiring
+     */
+    Timeout<T> schedule(T task, long deadline)
+    {
+        long due = Math.max(this.current + 1, -Math.floorDiv(this.origin - deadline, this.tick));
+        Timeout<T> timeout = new Timeout<>(task, due);
+        bucket(due).add(timeout);
+        this.size++;
+
+        return timeout;
+    }
+
+    /**
+     * Advance the wheel up to the given time, expiring the tasks whose deadline has passed.
+     *
+     * @param now The current time, in nanoseconds
+     * @param expired Called back with every expired task, in deadline order
+     */
+    void advance(long now, Consumer<T> expired)
+    {
+        long target = Math.floorDiv(now - this.origin, this.tick);
+        List<T> tasks = new ArrayList<>();
+        while (this.current < target) {
+            this.current++;
+            List<Timeout<T>> bucket = bucket(this.current);
+            if (bucket.isEmpty()) {
+                continue;
+            }
+            List<Timeout<T>> kept = new ArrayList<>();
+            for (Timeout<T> timeout : bucket) {
+                if (timeout.cancelled) {
+                    this.size--;
+                } else if (timeout.due <= this.current) {
+                    this.size--;
+                    tasks.add(timeout.task);
+                } else {
+                    kept.add(timeout);
+                }
+            }
+            bucket.clear();
+            bucket.addAll(kept);
+        }
+        // called back once the buckets are consistent, as tasks might schedule further timeouts
+        for (T task : tasks) {
+            expired.accept(task);
+        }
+    }
+
+    /**
+     * Retrieve the number of timeouts scheduled, the cancelled ones included until swept.
+     *
+     * @return The number of timeouts
+     */
+    int size()
+    {
+        return this.size;
+    }
+
+    private List<Timeout<T>> bucket(long due)
+    {
+        return this.buckets.get((int) (due % this.buckets.size()));
+    }
+
+    /**
+     * Handle of a scheduled task.
+     *
+     * @param <T> The type of the task
+     */
+    static final class Timeout<T>
+    {
+        private final T task;
+        private final long due;
+        private boolean cancelled;
+
+        private Timeout(T task, long due)
+        {
+            this.task = task;
+            this.due = due;
+        }
+
+        /**
+         * Cancel the timeout, the task will not expire.
+         */
+        void cancel()
+        {
+            this.cancelled = true;
+        }
+    }
+
+}
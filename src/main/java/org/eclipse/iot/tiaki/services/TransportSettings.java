@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import org.eclipse.iot.tiaki.commons.Constants;
+import org.eclipse.iot.tiaki.commons.Transport;
+
+/**
+ * Immutable settings of the resolvers a <code>ResolversRegistry</code> is built up with: the
+ * transport the queries are sent with, the reuse of the TCP connections and the EDNS negotiation,
+ * along with the statistics the transport events are counted in.
+ *
+ */
+final class TransportSettings
+{
+
+    private final Transport transport;
+    /** Time an idle TCP connection is kept open, in milliseconds. */
+    private final long tcpIdleTimeout;
+    /** Maximum number of queries pipelined over a TCP connection. */
+    private final int tcpMaxInFlight;
+    /** EDNS payload size advertised, 0 to keep the dnsjava defaults. */
+    private final int ednsPayloadSize;
+    /** Set the DO bit on the plain queries too. */
+    private final boolean dnssecOk;
+    private final LookupStatistics statistics;
+
+    TransportSettings(Transport transport)
+    {
+        this(transport, Constants.TCP_IDLE_TIMEOUT, Constants.TCP_MAX_IN_FLIGHT, 0, false, new LookupStatistics());
+    }
+
+    TransportSettings(Transport transport, long tcpIdleTimeout, int tcpMaxInFlight, int ednsPayloadSize,
+                      boolean dnssecOk, LookupStatistics statistics)
+    {
+        this.transport = transport;
+        this.tcpIdleTimeout = tcpIdleTimeout;
+        this.tcpMaxInFlight = tcpMaxInFlight;
+        this.ednsPayloadSize = ednsPayloadSize;
+        this.dnssecOk = dnssecOk;
+        this.statistics = statistics;
+    }
+
+    Transport transport() { return this.transport; }
+
+    long tcpIdleTimeout() { return this.tcpIdleTimeout; }
+
+    int tcpMaxInFlight() { return this.tcpMaxInFlight; }
+
+    int ednsPayloadSize() { return this.ednsPayloadSize; }
+
+    boolean dnssecOk() { return this.dnssecOk; }
+
+    LookupStatistics statistics() { return this.statistics; }
+
+    /**
+     * Check whether the EDNS payload size is negotiated, rather than left to dnsjava.
+     *
+     * @return <code>true</code> iff a payload size has been configured
+     */
+    boolean negotiatesEdns()
+    {
+        return this.ednsPayloadSize > 0;
+    }
+
+}
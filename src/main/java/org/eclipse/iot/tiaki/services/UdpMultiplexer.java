@@ -0,0 +1,478 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.TSIG;
+
+/**
+ * Non-blocking UDP transport shared by any number of resolvers: queries are sent over a few
+ * <code>DatagramChannel</code>s, all served by a single selector thread, so that thousands of
+ * outstanding queries take neither a thread nor a socket each.
+ *
+ * Every query is given a fresh random ID; a response is matched by the channel it is received on,
+ * its ID and its source, which must be the queried server, and it is accepted only if it echoes the
+ * question. Anything else is dropped, the query being still outstanding. Timeouts are tracked by a
+ * <code>TimerWheel</code> driven by the selector thread.
+ *
+ * Channels are bound to random ports, and each one is replaced by a freshly bound one once it has
+ * carried <code>PORT_QUERIES</code> queries, so that the source port of the queries stays hard to
+ * guess; a replaced channel is closed once its outstanding queries are over.
+ *
+ * Thread-safe: queries can be submitted by any thread, everything else takes place on the selector
+ * thread, where the returned futures are completed too.
+ */
+final class UdpMultiplexer implements Closeable
+{
+
+    /** Number of channels of the shared transport. */
+    private static final int CHANNELS = 4;
+    /** Duration of a tick of the timeouts, in milliseconds. */
+    private static final long TICK = 10L;
+    /** Number of buckets of the timeouts wheel. */
+    private static final int BUCKETS = 512;
+    /** Largest datagram received. */
+    private static final int MAX_DATAGRAM = 65535;
+    /** Receive buffer of each channel, sized for bursts of responses. */
+    private static final int RECEIVE_BUFFER = 1 << 20;
+    /** Number of queries a channel carries before being replaced. */
+    private static final int PORT_QUERIES = 128;
+    /** Lowest port a channel is bound to, the ones below being privileged or well-known. */
+    private static final int MIN_PORT = 1024;
+    /** Attempts to bind a channel to a random port, before leaving the choice to the system. */
+    private static final int BIND_ATTEMPTS = 8;
+
+    /** Transport shared by the resolvers, <code>null</code> until needed. */
+    private static UdpMultiplexer shared;
+
+    private final Selector selector;
+    /** Channels the queries are sent over; selector thread only, once started. */
+    private final Port[] ports;
+    /** Queries submitted, to be sent by the selector thread. */
+    private final Queue<Exchange> submitted = new ConcurrentLinkedQueue<>();
+    /** Outstanding queries, by channel, ID and server; selector thread only. */
+    private final Map<Key, Exchange> outstanding = new HashMap<>();
+    /** Timeouts of the outstanding queries; selector thread only. */
+    private final TimerWheel<Exchange> timeouts;
+    /** Reception buffer; selector thread only. */
+    private final ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM);
+    /** Source of the query IDs and ports; selector thread only, once started. */
+    private final SecureRandom random = new SecureRandom();
+    /** Channel the next query is sent over. */
+    private final AtomicInteger next = new AtomicInteger();
+    /** Number of queries submitted and not completed yet. */
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Thread loop;
+    private volatile boolean closed;
+
+    UdpMultiplexer(int channels) throws IOException
+    {
+        this.selector = Selector.open();
+        this.ports = new Port[channels];
+        try {
+            for (int i = 0; i < channels; i++) {
+                this.ports[i] = open();
+            }
+        } catch (IOException ioe) {
+            release();
+            throw ioe;
+        }
+        this.timeouts = new TimerWheel<>(BUCKETS, TICK, TimeUnit.MILLISECONDS, System.nanoTime());
+        this.loop = new DaemonThreadFactory("tiaki-udp").newThread(this::run);
+        this.loop.start();
+    }
+
+    /**
+     * Retrieve the transport shared by the resolvers, opening it if needed.
+     *
+     * @return The shared <code>UdpMultiplexer</code>
+     *
+     * @throws IOException In case the channels cannot be opened
+     */
+    static synchronized UdpMultiplexer shared() throws IOException
+    {
+        if (shared == null || shared.closed) {
+            shared = new UdpMultiplexer(CHANNELS);
+        }
+
+        return shared;
+    }
+
+    /**
+     * Send a query, asynchronously. The query is changed, as it is given a fresh ID; the ID of the
+     * response is set back to the original one.
+     *
+     * @param query The query, not shared with other threads
+     * @param server The server to be queried
+     * @param tsig The key the query is signed with and the response verified with, if any
+     * @param timeout The time the response is waited for, in milliseconds
+     *
+     * @return The response, or an <code>IOException</code> in case of failure or timeout
+     */
+    CompletableFuture<Message> send(Message query, InetSocketAddress server, TSIG tsig, long timeout)
+    {
+        Exchange exchange = new Exchange(query, server, tsig, timeout);
+        if (this.closed) {
+            exchange.result.completeExceptionally(new IOException("Transport closed"));
+            return exchange.result;
+        }
+        this.pending.incrementAndGet();
+        this.submitted.add(exchange);
+        // closed meanwhile, the selector thread might be done with the submitted queries already
+        if (this.closed && this.submitted.remove(exchange)) {
+            complete(exchange, null, new IOException("Transport closed"));
+            return exchange.result;
+        }
+        this.selector.wakeup();
+
+        return exchange.result;
+    }
+
+    /**
+     * Retrieve the number of queries submitted and not completed yet.
+     *
+     * @return The number of outstanding queries
+     */
+    int outstanding()
+    {
+        return this.pending.get();
+    }
+
+    @Override
+    public void close()
+    {
+        this.closed = true;
+        this.selector.wakeup();
+    }
+
+    private void run()
+    {
+        try {
+            while (!this.closed) {
+                this.selector.select(TICK);
+                Exchange exchange;
+                while ((exchange = this.submitted.poll()) != null) {
+                    dispatch(exchange);
+                }
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        receive((Port) key.attachment());
+                    }
+                }
+                this.timeouts.advance(System.nanoTime(), this::expire);
+            }
+        } catch (IOException | RuntimeException e) {
+            this.closed = true;
+        } finally {
+            release();
+            IOException failure = new IOException("Transport closed");
+            for (Exchange exchange : this.outstanding.values()) {
+                complete(exchange, null, failure);
+            }
+            this.outstanding.clear();
+            Exchange exchange;
+            while ((exchange = this.submitted.poll()) != null) {
+                complete(exchange, null, failure);
+            }
+        }
+    }
+
+    private void dispatch(Exchange exchange)
+    {
+        if (exchange.result.isDone()) {
+            // cancelled by the caller meanwhile
+            this.pending.decrementAndGet();
+            return;
+        }
+        int index = Math.floorMod(this.next.getAndIncrement(), this.ports.length);
+        Port port = this.ports[index];
+        Key key;
+        do {
+            key = new Key(port, this.random.nextInt(0x10000), exchange.server);
+        } while (this.outstanding.containsKey(key));
+
+        exchange.query.getHeader().setID(key.id);
+        if (exchange.tsig != null) {
+            exchange.query.setTSIG(exchange.tsig, 0, null);
+        }
+        try {
+            ByteBuffer datagram = ByteBuffer.wrap(exchange.query.toWire(Message.MAXLENGTH));
+            if (port.channel.send(datagram, exchange.server) == 0) {
+                throw new IOException("No room to send the query");
+            }
+        } catch (IOException | RuntimeException e) {
+            complete(exchange, null, e instanceof IOException ? e : new IOException(e));
+            return;
+        }
+        exchange.key = key;
+        exchange.timeout = this.timeouts.schedule(exchange,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(exchange.millis));
+        this.outstanding.put(key, exchange);
+        port.outstanding++;
+        if (++port.sent >= PORT_QUERIES) {
+            rotate(index);
+        }
+    }
+
+    /**
+     * Replace a channel by a freshly bound one, the former being closed once its outstanding
+     * queries are over. Should no channel be opened, the former one is kept for another round.
+     */
+    private void rotate(int index)
+    {
+        Port former = this.ports[index];
+        try {
+            this.ports[index] = open();
+        } catch (IOException ioe) {
+            former.sent = 0;
+            return;
+        }
+        former.retired = true;
+        if (former.outstanding == 0) {
+            closeQuietly(former.channel);
+        }
+    }
+
+    /**
+     * Account for a query being over, closing its channel if replaced and idle.
+     */
+    private void released(Port port)
+    {
+        if (--port.outstanding == 0 && port.retired) {
+            closeQuietly(port.channel);
+        }
+    }
+
+    /**
+     * Open a non-blocking channel bound to a random port, and register it with the selector.
+     */
+    private Port open() throws IOException
+    {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER);
+            bind(channel);
+            Port port = new Port(channel);
+            channel.register(this.selector, SelectionKey.OP_READ, port);
+
+            return port;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    private void bind(DatagramChannel channel) throws IOException
+    {
+        for (int attempt = 0; attempt < BIND_ATTEMPTS; attempt++) {
+            try {
+                channel.bind(new InetSocketAddress(MIN_PORT + this.random.nextInt(0x10000 - MIN_PORT)));
+                return;
+            } catch (BindException inUse) {
+                // another one is drawn
+            }
+        }
+        channel.bind(null);
+    }
+
+    private void receive(Port port)
+    {
+        while (true) {
+            this.buffer.clear();
+            SocketAddress source;
+            try {
+                source = port.channel.receive(this.buffer);
+            } catch (IOException ioe) {
+                // e.g. an ICMP error surfacing, the outstanding queries are left to their timeout
+                return;
+            }
+            if (source == null) {
+                return;
+            }
+            this.buffer.flip();
+            if (this.buffer.remaining() < 12 || !(source instanceof InetSocketAddress)) {
+                continue;
+            }
+            int id = this.buffer.getShort(0) & 0xFFFF;
+            Exchange exchange = this.outstanding.get(new Key(port, id, (InetSocketAddress) source));
+            if (exchange != null) {
+                accept(exchange, Arrays.copyOf(this.buffer.array(), this.buffer.remaining()));
+            }
+        }
+    }
+
+    private void accept(Exchange exchange, byte[] datagram)
+    {
+        Message response;
+        try {
+            response = new Message(datagram);
+        } catch (IOException malformed) {
+            return;
+        }
+        Record question = response.getQuestion();
+        if (question != null && !question.equals(exchange.query.getQuestion())) {
+            return;
+        }
+        if (exchange.tsig != null) {
+            exchange.tsig.verify(response, datagram, exchange.query.getTSIG());
+        }
+
+        this.outstanding.remove(exchange.key);
+        released(exchange.key.port);
+        exchange.timeout.cancel();
+        response.getHeader().setID(exchange.id);
+        complete(exchange, response, null);
+    }
+
+    private void expire(Exchange exchange)
+    {
+        this.outstanding.remove(exchange.key);
+        released(exchange.key.port);
+        complete(exchange, null, new SocketTimeoutException("Timed out waiting for " + exchange.server));
+    }
+
+    private void complete(Exchange exchange, Message response, Throwable failure)
+    {
+        // accounted before completing, since completion runs the callers' continuations
+        this.pending.decrementAndGet();
+        if (failure == null) {
+            exchange.result.complete(response);
+        } else {
+            exchange.result.completeExceptionally(failure);
+        }
+    }
+
+    private void release()
+    {
+        // the replaced channels still open are registered as well
+        for (SelectionKey key : this.selector.keys()) {
+            closeQuietly(key.channel());
+        }
+        closeQuietly(this.selector);
+    }
+
+    private static void closeQuietly(Closeable closeable)
+    {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+            // nothing left to do
+        }
+    }
+
+    /**
+     * A channel and the queries it carries; selector thread only.
+     */
+    private static final class Port
+    {
+        private final DatagramChannel channel;
+        /** Number of queries sent over the channel. */
+        private int sent;
+        /** Number of queries outstanding over the channel. */
+        private int outstanding;
+        /** Whether the channel has been replaced, to be closed once idle. */
+        private boolean retired;
+
+        private Port(DatagramChannel channel)
+        {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * A query, from submission to completion.
+     */
+    private static final class Exchange
+    {
+        private final Message query;
+        private final InetSocketAddress server;
+        private final TSIG tsig;
+        private final long millis;
+        /** ID the query has been submitted with. */
+        private final int id;
+        private final CompletableFuture<Message> result = new CompletableFuture<>();
+        private Key key;
+        private TimerWheel.Timeout<Exchange> timeout;
+
+        private Exchange(Message query, InetSocketAddress server, TSIG tsig, long millis)
+        {
+            this.query = query;
+            this.server = server;
+            this.tsig = tsig;
+            this.millis = millis;
+            this.id = query.getHeader().getID();
+        }
+    }
+
+    /**
+     * Key matching a response to its query: channel, ID and server.
+     */
+    private static final class Key
+    {
+        private final Port port;
+        private final int id;
+        private final InetSocketAddress server;
+
+        private Key(Port port, int id, InetSocketAddress server)
+        {
+            this.port = port;
+            this.id = id;
+            this.server = server;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return Objects.hash(this.port, this.id, this.server);
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == null) {
+                return false;
+            }
+            if (getClass() != obj.getClass()) {
+                return false;
+            }
+            final Key other = (Key) obj;
+
+            return this.port == other.port && this.id == other.id && Objects.equals(this.server, other.server);
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.jitsi.dnssec.SecurityStatus;
+import org.jitsi.dnssec.validator.DnsSecVerifier;
+import org.jitsi.dnssec.validator.ValUtils;
+import org.jitsi.dnssec.validator.ValidatingResolver;
+import org.xbill.DNS.DNSKEYRecord;
+import org.xbill.DNS.DNSSEC;
+import org.xbill.DNS.RRSIGRecord;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Record;
+
+/**
+ * A <code>DnsSecVerifier</code> remembering the RRsets it has found secure, so that verifying them
+ * again costs no public-key operation. Outcomes are keyed by a digest of the RRset signed data, in
+ * canonical wire form, of its RRSIGs and of the DNSKEYs they are checked against; they expire with
+ * the first RRSIG or with the RRset TTL, whichever comes first, the least recently used ones being
+ * dropped beyond the cache capacity. Insecure and bogus outcomes are never kept.
+ *
+ * A single instance is shared by all the <code>ValidatingResolver</code> instances, swapped in
+ * reflectively, as their verifier cannot be provided otherwise. Should that not be possible, e.g.
+ * with another release of the validator, their own verifier is kept.
+ *
+ * Thread-safe.
+ *
+ */
+final class CachingVerifier extends DnsSecVerifier
+{
+
+    /** Number of outcomes kept by the shared instance. */
+    private static final int CAPACITY = 10000;
+    /** The verifier shared by all the validating resolvers. */
+    private static final CachingVerifier SHARED = new CachingVerifier(new DnsSecVerifier(), CAPACITY,
+                                                                      System::currentTimeMillis);
+    /** The utilities of a <code>ValidatingResolver</code>, <code>null</code> if inaccessible. */
+    private static final Field VAL_UTILS = field(ValidatingResolver.class, "valUtils", ValUtils.class);
+    /** The verifier of a <code>ValUtils</code>, <code>null</code> if inaccessible. */
+    private static final Field VERIFIER = field(ValUtils.class, "verifier", DnsSecVerifier.class);
+
+    private final DnsSecVerifier delegate;
+    /** Wall clock, in milliseconds, as the RRSIG expirations are. */
+    private final LongSupplier clock;
+    /** Expiration of the secure outcomes, in milliseconds, by digest, in access order. */
+    private final Map<ByteBuffer, Long> secure;
+
+    CachingVerifier(DnsSecVerifier delegate, final int capacity, LongSupplier clock)
+    {
+        this.delegate = delegate;
+        this.clock = clock;
+        this.secure = new LinkedHashMap<ByteBuffer, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 4139875064712205412L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Have a validating resolver use the shared verifier.
+     *
+     * @param validating A <code>ValidatingResolver</code>
+     *
+     * @return <code>true</code> iff the shared verifier is in use
+     */
+    static boolean install(ValidatingResolver validating)
+    {
+        if (VAL_UTILS == null || VERIFIER == null) {
+            return false;
+        }
+        try {
+            VERIFIER.set(VAL_UTILS.get(validating), SHARED);
+        } catch (IllegalAccessException | RuntimeException e) {
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Retrieve the verifier a validating resolver uses.
+     *
+     * @param validating A <code>ValidatingResolver</code>
+     *
+     * @return Its <code>DnsSecVerifier</code>, <code>null</code> if inaccessible
+     */
+    static DnsSecVerifier of(ValidatingResolver validating)
+    {
+        try {
+            return (VAL_UTILS == null || VERIFIER == null ? null
+                                                          : (DnsSecVerifier) VERIFIER.get(VAL_UTILS.get(validating)));
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public SecurityStatus verify(RRset rrset, RRset keys)
+    {
+        ByteBuffer digest = digest(rrset, keys.rrs());
+        if (isSecure(digest)) {
+            return SecurityStatus.SECURE;
+        }
+
+        return remember(digest, rrset, this.delegate.verify(rrset, keys));
+    }
+
+    @Override
+    public SecurityStatus verify(RRset rrset, DNSKEYRecord key)
+    {
+        ByteBuffer digest = digest(rrset, Collections.singletonList(key).iterator());
+        if (isSecure(digest)) {
+            return SecurityStatus.SECURE;
+        }
+
+        return remember(digest, rrset, this.delegate.verify(rrset, key));
+    }
+
+    private boolean isSecure(ByteBuffer digest)
+    {
+        if (digest == null) {
+            return false;
+        }
+        synchronized (this.secure) {
+            Long expiration = this.secure.get(digest);
+            if (expiration == null) {
+                return false;
+            }
+            if (expiration - this.clock.getAsLong() <= 0) {
+                this.secure.remove(digest);
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    private SecurityStatus remember(ByteBuffer digest, RRset rrset, SecurityStatus outcome)
+    {
+        if (digest == null || outcome != SecurityStatus.SECURE) {
+            return outcome;
+        }
+        long now = this.clock.getAsLong();
+        long expiration = now + TimeUnit.SECONDS.toMillis(rrset.getTTL());
+        Iterator<?> sigs = rrset.sigs();
+        while (sigs.hasNext()) {
+            expiration = Math.min(expiration, ((RRSIGRecord) sigs.next()).getExpire().getTime());
+        }
+        if (expiration - now > 0) {
+            synchronized (this.secure) {
+                this.secure.put(digest, expiration);
+            }
+        }
+
+        return outcome;
+    }
+
+    /**
+     * Digest the signed data of every RRSIG of the RRset, the RRSIGs themselves and the keys.
+     *
+     * @return The digest, <code>null</code> if the RRset is not signed
+     */
+    private static ByteBuffer digest(RRset rrset, Iterator<?> keys)
+    {
+        Iterator<?> sigs = rrset.sigs();
+        if (!sigs.hasNext()) {
+            return null;
+        }
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        while (sigs.hasNext()) {
+            RRSIGRecord sig = (RRSIGRecord) sigs.next();
+            sha256.update(DNSSEC.digestRRset(sig, rrset));
+            sha256.update(sig.getSignature());
+        }
+        while (keys.hasNext()) {
+            sha256.update(((Record) keys.next()).toWireCanonical());
+        }
+
+        return ByteBuffer.wrap(sha256.digest());
+    }
+
+    private static Field field(Class<?> owner, String name, Class<?> type)
+    {
+        try {
+            Field field = owner.getDeclaredField(name);
+            if (!type.equals(field.getType())) {
+                return null;
+            }
+            field.setAccessible(true);
+
+            return field;
+        } catch (NoSuchFieldException | RuntimeException e) {
+            return null;
+        }
+    }
+
+}
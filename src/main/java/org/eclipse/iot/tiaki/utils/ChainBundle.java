@@ -0,0 +1,444 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.eclipse.iot.tiaki.commons.StatusCode;
+import org.eclipse.iot.tiaki.domain.Fqdn;
+import org.eclipse.iot.tiaki.exceptions.ConfigurationException;
+import org.eclipse.iot.tiaki.exceptions.LookupException;
+import org.jitsi.dnssec.validator.ValidatingResolver;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TSIG;
+
+/**
+ * A self-validating DNSSEC chain, in the spirit of RFC 9102: the responses to a few queries, the
+ * answers, along with every response their validation takes, i.e. the DNSKEY and DS RRsets and
+ * their RRSIGs from the trust anchor down, and the denials of existence proving where the zone cuts
+ * are not. A bundle is collected once by a well connected node, and then validated by any other one
+ * against the same trust anchor with no network I/O, as long as its clock is within the validity
+ * period of the signatures.
+ *
+ * Its wire form is the version, the number of answers and the responses, answers first, each
+ * prefixed by its length as over TCP, without their Additional section:
+ * <pre>
+ *   bundle   = version answers *response
+ *   version  = 1 octet, currently 1
+ *   answers  = 2 octets
+ *   response = 2 octets length, DNS message
+ * </pre>
+ *
+ * @see <a href="https://tools.ietf.org/html/rfc9102">RFC 9102, TLS DNSSEC Chain Extension</a>
+ */
+public final class ChainBundle
+{
+
+    /** Version of the wire form. */
+    public static final int VERSION = 1;
+
+    /** The answers, by question. */
+    private final Map<Record, Message> answers;
+    /** The responses the validation of the answers takes, by question. */
+    private final Map<Record, Message> chain;
+
+    private ChainBundle(Map<Record, Message> answers, Map<Record, Message> chain)
+    {
+        this.answers = answers;
+        this.chain = chain;
+    }
+
+    /**
+     * Collect the chain of the given RRsets: they are resolved and validated through the given
+     * resolver, and every response the validation has taken is kept.
+     *
+     * @param head The <code>Resolver</code> sending the queries to the Server
+     * @param trustAnchor Public cryptographic to validate against
+     * @param name The owner name of the RRsets
+     * @param rrTypes The Resource Record types of the RRsets, at least one
+     *
+     * @return The <code>ChainBundle</code> of the validated RRsets
+     *
+     * @throws LookupException
+     *      In case no Resource Record type is given, or an RRset cannot be resolved or validated.
+     * @throws ConfigurationException
+     *      In case the trust anchor cannot be loaded.
+     */
+    public static ChainBundle collect(Resolver head, String trustAnchor, Fqdn name, int... rrTypes)
+                            throws LookupException, ConfigurationException
+    {
+        requireTypes(rrTypes);
+        Recorder recorder = new Recorder(head);
+        ValidatingResolver validating = validating(recorder, trustAnchor);
+        Set<Record> questions = new LinkedHashSet<>();
+        for (int rrType : rrTypes) {
+            Record question = question(name, rrType);
+            Message response;
+            try {
+                response = validating.send(Message.newQuery(question));
+            } catch (IOException e) {
+                throw new LookupException(StatusCode.NETWORK_ERROR, FormattingUtil.unableToResolve(name.fqdn()), e);
+            }
+            check(response, rrType);
+            questions.add(question);
+        }
+
+        Map<Record, Message> answers = new LinkedHashMap<>();
+        Map<Record, Message> chain = new LinkedHashMap<>(recorder.responses);
+        for (Record question : questions) {
+            answers.put(question, chain.remove(question));
+        }
+
+        return new ChainBundle(answers, chain);
+    }
+
+    /**
+     * Parse a bundle from its wire form.
+     *
+     * @param wire The wire form of a bundle
+     *
+     * @return The <code>ChainBundle</code>
+     *
+     * @throws LookupException
+     *      In case the bundle is malformed, of an unknown version, or has two responses to a question.
+     */
+    public static ChainBundle parse(byte[] wire) throws LookupException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(wire);
+        Map<Record, Message> answers = new LinkedHashMap<>();
+        Map<Record, Message> chain = new LinkedHashMap<>();
+        try {
+            if ((buffer.get() & 0xFF) != VERSION) {
+                throw new LookupException(StatusCode.DNSSEC_STATUS_ERROR, "Unknown DNSSEC chain bundle version");
+            }
+            int count = buffer.getShort() & 0xFFFF;
+            while (buffer.hasRemaining()) {
+                byte[] message = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(message);
+                Message response = new Message(message);
+                Record question = response.getQuestion();
+                if (question == null) {
+                    throw new IOException("Response without question");
+                }
+                if (answers.containsKey(question) || chain.containsKey(question)) {
+                    throw new IOException(String.format("Duplicate response to [%s]", question));
+                }
+                (answers.size() < count ? answers : chain).put(question, response);
+            }
+            if (answers.size() < count) {
+                throw new IOException("Missing answers");
+            }
+        } catch (IOException | BufferUnderflowException e) {
+            throw new LookupException(StatusCode.DNSSEC_STATUS_ERROR, "Malformed DNSSEC chain bundle", e);
+        }
+
+        return new ChainBundle(answers, chain);
+    }
+
+    /**
+     * Build the wire form of this bundle.
+     *
+     * @return The wire form
+     */
+    public byte[] toWire()
+    {
+        List<byte[]> messages = new ArrayList<>();
+        int length = 3;
+        for (Message response : this.answers.values()) {
+            messages.add(response.toWire());
+        }
+        for (Message response : this.chain.values()) {
+            messages.add(response.toWire());
+        }
+        for (byte[] message : messages) {
+            length += 2 + message.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.put((byte) VERSION);
+        buffer.putShort((short) this.answers.size());
+        for (byte[] message : messages) {
+            buffer.putShort((short) message.length);
+            buffer.put(message);
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Validate the answers of this bundle against the given trust anchor, with no network I/O: the
+     * queries of the validation are answered by the bundle only. The bundle has to answer exactly
+     * the expected RRsets, so that a chain validating other RRsets is never taken for theirs.
+     *
+     * @param trustAnchor Public cryptographic to validate against
+     * @param name The expected owner name of the RRsets
+     * @param rrTypes The expected Resource Record types of the RRsets, at least one
+     *
+     * @return The validated answer <code>Record</code>s, following any alias, in the order of <i>rrTypes</i>
+     *
+     * @throws LookupException
+     *      In case no Resource Record type is given, the bundle answers other RRsets, or an answer
+     *      cannot be validated; the <code>StatusCode</code> is returned as part of this error.
+     * @throws ConfigurationException
+     *      In case the trust anchor cannot be loaded.
+     */
+    public Record[] verify(String trustAnchor, Fqdn name, int... rrTypes) throws LookupException, ConfigurationException
+    {
+        requireTypes(rrTypes);
+        Set<Record> questions = new LinkedHashSet<>();
+        for (int rrType : rrTypes) {
+            questions.add(question(name, rrType));
+        }
+        if (!questions.equals(this.answers.keySet())) {
+            throw new LookupException(StatusCode.DNSSEC_STATUS_ERROR,
+                                      String.format("DNSSEC chain bundle not answering %s", questions));
+        }
+
+        ValidatingResolver validating = validating(new Replay(this), trustAnchor);
+        List<Record> validated = new ArrayList<>();
+        for (Record question : questions) {
+            Message response;
+            try {
+                response = validating.send(Message.newQuery(question));
+            } catch (IOException e) {
+                throw new LookupException(StatusCode.DNSSEC_STATUS_ERROR, "DNSSEC Validation Failed", e);
+            }
+            check(response, question.getType());
+            Collections.addAll(validated, DnsUtil.answers(response, question.getType()));
+        }
+
+        return validated.toArray(new Record[validated.size()]);
+    }
+
+    /**
+     * Retrieve the number of responses this bundle is made of.
+     *
+     * @return The number of answers and chain responses
+     */
+    public int size()
+    {
+        return this.answers.size() + this.chain.size();
+    }
+
+    /**
+     * Raise the outcome of a validated response, unless it is a positive one.
+     */
+    private static void check(Message response, int rrType) throws LookupException
+    {
+        StatusCode outcome = DnsUtil.checkValidationStatus(response);
+        if (outcome == StatusCode.SUCCESSFUL_OPERATION) {
+            outcome = DnsUtil.checkResponseStatus(response, rrType);
+        }
+        if (outcome != StatusCode.SUCCESSFUL_OPERATION) {
+            throw ExceptionsUtil.build(outcome, "DNSSEC Validation Failed", new LinkedHashMap<String, StatusCode>());
+        }
+    }
+
+    /**
+     * Build a validator of its own, so that no key validated so far spares a query of the chain.
+     */
+    private static ValidatingResolver validating(Resolver head, String trustAnchor) throws ConfigurationException
+    {
+        ValidatingResolver validating = new ValidatingResolver(head);
+        try {
+            validating.loadTrustAnchors(new ByteArrayInputStream(trustAnchor.getBytes(StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new ConfigurationException("Unable to load the Trust Anchor", e);
+        }
+
+        return validating;
+    }
+
+    private static void requireTypes(int... rrTypes) throws LookupException
+    {
+        if (rrTypes == null || rrTypes.length == 0) {
+            throw new LookupException(StatusCode.RESOURCE_UNEXPECTED, "No Resource Record type given");
+        }
+    }
+
+    private static Record question(Fqdn name, int rrType) throws LookupException
+    {
+        if (name.name() == null) {
+            throw new LookupException(StatusCode.ILLEGAL_FQDN, name.fqdn());
+        }
+
+        return Record.newRecord(name.name(), rrType, DClass.IN);
+    }
+
+    /**
+     * A <code>Resolver</code> keeping the responses it forwards, the last one of each question.
+     */
+    private static final class Recorder extends Forwarding
+    {
+
+        private final Map<Record, Message> responses = Collections.synchronizedMap(new LinkedHashMap<>());
+
+        private Recorder(Resolver head)
+        {
+            super(head);
+        }
+
+        @Override
+        public Message send(Message query) throws IOException
+        {
+            Message response = this.head.send(query);
+            if (response.getQuestion() != null) {
+                Message kept = (Message) response.clone();
+                kept.removeAllRecords(Section.ADDITIONAL);
+                this.responses.put(kept.getQuestion(), kept);
+            }
+
+            return response;
+        }
+
+    }
+
+    /**
+     * A <code>Resolver</code> answering with the responses of a bundle only.
+     */
+    private static final class Replay extends Forwarding
+    {
+
+        private final ChainBundle bundle;
+
+        private Replay(ChainBundle bundle)
+        {
+            super(null);
+            this.bundle = bundle;
+        }
+
+        @Override
+        public Message send(Message query) throws IOException
+        {
+            Record question = query.getQuestion();
+            Message response = this.bundle.answers.get(question);
+            if (response == null) {
+                response = this.bundle.chain.get(question);
+            }
+            if (response == null) {
+                throw new IOException(String.format("No response to [%s] in the bundle", question));
+            }
+            response = (Message) response.clone();
+            response.getHeader().setID(query.getHeader().getID());
+
+            return response;
+        }
+
+    }
+
+    /**
+     * A <code>Resolver</code> passing its settings on to the head one, if any.
+     */
+    private abstract static class Forwarding implements Resolver
+    {
+
+        protected final Resolver head;
+
+        private Forwarding(Resolver head)
+        {
+            this.head = head;
+        }
+
+        @Override
+        public Object sendAsync(Message query, ResolverListener listener)
+        {
+            Object id = new Object();
+            try {
+                listener.receiveMessage(id, send(query));
+            } catch (IOException e) {
+                listener.handleException(id, e);
+            }
+
+            return id;
+        }
+
+        @Override
+        public void setPort(int port)
+        {
+            if (this.head != null) {
+                this.head.setPort(port);
+            }
+        }
+
+        @Override
+        public void setTCP(boolean flag)
+        {
+            if (this.head != null) {
+                this.head.setTCP(flag);
+            }
+        }
+
+        @Override
+        public void setIgnoreTruncation(boolean flag)
+        {
+            if (this.head != null) {
+                this.head.setIgnoreTruncation(flag);
+            }
+        }
+
+        @Override
+        public void setEDNS(int level)
+        {
+            if (this.head != null) {
+                this.head.setEDNS(level);
+            }
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes")
+        public void setEDNS(int level, int payloadSize, int flags, List options)
+        {
+            if (this.head != null) {
+                this.head.setEDNS(level, payloadSize, flags, options);
+            }
+        }
+
+        @Override
+        public void setTSIGKey(TSIG key)
+        {
+            if (this.head != null) {
+                this.head.setTSIGKey(key);
+            }
+        }
+
+        @Override
+        public void setTimeout(int secs, int msecs)
+        {
+            if (this.head != null) {
+                this.head.setTimeout(secs, msecs);
+            }
+        }
+
+        @Override
+        public void setTimeout(int secs)
+        {
+            if (this.head != null) {
+                this.head.setTimeout(secs);
+            }
+        }
+
+    }
+
+}
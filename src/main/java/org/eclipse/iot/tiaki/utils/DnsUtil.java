@@ -12,13 +12,15 @@ package org.eclipse.iot.tiaki.utils;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import org.eclipse.iot.tiaki.commons.LookupContext;
+import org.eclipse.iot.tiaki.commons.ResolverEndpoint;
 import org.eclipse.iot.tiaki.commons.StatusCode;
 import org.eclipse.iot.tiaki.domain.Fqdn;
 import org.eclipse.iot.tiaki.domain.TextRecord;
@@ -37,6 +39,7 @@ import org.xbill.DNS.Record;
 import org.xbill.DNS.Resolver;
 import org.xbill.DNS.ResolverConfig;
 import org.xbill.DNS.Section;
+import org.xbill.DNS.SOARecord;
 import org.xbill.DNS.SimpleResolver;
 import org.xbill.DNS.TXTRecord;
 import org.xbill.DNS.TextParseException;
@@ -61,55 +64,8 @@ public final class DnsUtil
     /** DNSSEC response NSEC3 related text string. */
     private static final String NSEC3_NO_DS = "nsec3s proved no ds";
 
-    /** Regex to extract the description from a DNS-SD QName */
-    private static final String DNS_SD_DESC_EXT_PATTERN = ".(_[a-z-]+.){2}.+";
-
-    /** Translation table for double bytes UTF-8 characters */
-    private static final Map<String, String> decodingTable;
-
-    // TODO comprehensive escaping procedure
-    // static fill up: UTF-8 double bytes (decimal) sequences to Unicode characters
-    static {
-        decodingTable = new HashMap<>();
-        decodingTable.put("195160", "à");
-        decodingTable.put("195161", "á");
-        decodingTable.put("195162", "â");
-        decodingTable.put("195163", "ã");
-        decodingTable.put("195164", "ä");
-
-        decodingTable.put("195166", "æ");
-        decodingTable.put("195167", "ç");
-
-        decodingTable.put("195168", "è");
-        decodingTable.put("195169", "é");
-        decodingTable.put("195170", "ê");
-        decodingTable.put("195171", "ë");
-        decodingTable.put("195172", "ì");
-        decodingTable.put("195173", "í");
-        decodingTable.put("195174", "î");
-        decodingTable.put("195175", "ï");
-        decodingTable.put("195177", "ñ");
-        decodingTable.put("195178", "ò");
-        decodingTable.put("195179", "ó");
-        decodingTable.put("195180", "ô");
-        decodingTable.put("195181", "õ");
-        decodingTable.put("195182", "ö");
-        decodingTable.put("195184", "ø");
-        decodingTable.put("195185", "œ");
-        decodingTable.put("195186", "ù");
-        decodingTable.put("195187", "ú");
-        decodingTable.put("195188", "û");
-        decodingTable.put("195188", "ü");
-
-        decodingTable.put("195132", "Ä");
-        decodingTable.put("195150", "Ö");
-        decodingTable.put("195156", "Ü");
-        decodingTable.put("195159", "ß");
-
-        decodingTable.put("226128153", "'");
-
-        decodingTable.put("032", " ");
-    }
+    /** Buffer the descriptions are decoded into, per thread. */
+    private static final ThreadLocal<byte[]> DESCRIPTION_BUFFER = ThreadLocal.withInitial(() -> new byte[256]);
 
     /**
      * Instantiate a DNS <code>Resolver</code> by the provided Server. In case of DNSSEC validation
@@ -135,6 +91,55 @@ public final class DnsUtil
         return resolver;
     }
 
+    /**
+     * Instantiate a DNS <code>Resolver</code> by the provided Server descriptor, with no name
+     * resolution involved. In case of DNSSEC validation is needed, a <code>ValidatingResolver</code>
+     * is instantiated.
+     *
+     * @param dnsSec <code>true</code> iff DNSSEC is enabled
+     * @param trustAnchor Public cryptographic to validate against
+     * @param server Resolved descriptor of the Server to use as DNS resolver
+     *
+     * @return An instance of <code>Resolver</code>
+     *
+     * @throws ConfigurationException
+     *      Exceptional circumstances in which <code>Resolver</code> cannot be created.
+     */
+    public static Resolver getResolver(boolean dnsSec, String trustAnchor, ResolverEndpoint server)
+                            throws ConfigurationException
+    {
+        Resolver resolver = instantiateResolver(dnsSec, trustAnchor, server);
+        if (resolver == null) {
+            throw new ConfigurationException(String.format("Unable to retrieve a Resolver from [%s]", server));
+        }
+
+        return resolver;
+    }
+
+    /**
+     * Instantiate a DNS <code>Resolver</code> on top of the provided one, which carries the queries
+     * to the Server. In case of DNSSEC validation is needed, a <code>ValidatingResolver</code> is
+     * instantiated.
+     *
+     * @param dnsSec <code>true</code> iff DNSSEC is enabled
+     * @param trustAnchor Public cryptographic to validate against
+     * @param head The <code>Resolver</code> sending the queries to the Server
+     *
+     * @return An instance of <code>Resolver</code>
+     *
+     * @throws ConfigurationException
+     *      Exceptional circumstances in which <code>Resolver</code> cannot be created.
+     */
+    public static Resolver getResolver(boolean dnsSec, String trustAnchor, Resolver head)
+                            throws ConfigurationException
+    {
+        try {
+            return (dnsSec ? validating(head, trustAnchor) : head);
+        } catch (IOException e) {
+            throw new ConfigurationException(String.format("Unable to retrieve a Resolver from [%s]", head));
+        }
+    }
+
     /**
      * Instantiate a set of default DNS <code>Resolver</code> by the provided Server. In case of
      * DNSSEC validation is needed, <code>ValidatingResolver</code> will be instantiated.
@@ -183,38 +188,10 @@ public final class DnsUtil
     {
         try {
             ValidatingResolver validating = (ValidatingResolver) resolver;
-            Record toValidate = Record.newRecord(Name.fromConstantString(name.fqdn()), rType, DClass.IN);
+            Name qname = (name.name() != null ? name.name() : Name.fromConstantString(name.fqdn()));
+            Record toValidate = Record.newRecord(qname, rType, DClass.IN);
             Message dnsResponse = validating.send(Message.newQuery(toValidate));
-            RRset[] rrSets = dnsResponse.getSectionRRsets(Section.ADDITIONAL);
-            StringBuilder reason = new StringBuilder("");
-            for (RRset rrset : rrSets) {
-                if (rrset.getName().equals(Name.root) && rrset.getType() == Type.TXT
-                        && rrset.getDClass() == ValidatingResolver.VALIDATION_REASON_QCLASS) {
-                    reason.append(TextRecord.build((TXTRecord) rrset.first()).getRData());
-                }
-            }
-            StatusCode outcome = StatusCode.SUCCESSFUL_OPERATION;
-            if (dnsResponse.getRcode() == Rcode.SERVFAIL) {
-                if (reason.toString().toLowerCase().contains(CHAIN_OF_TRUST)
-                        || reason.toString().toLowerCase().contains(INSECURE)) {
-                    outcome = StatusCode.RESOURCE_INSECURE_ERROR;
-                } else if (reason.toString().toLowerCase().contains(NO_DATA)) {
-                    outcome = StatusCode.NETWORK_ERROR;
-                } else if (reason.toString().toLowerCase().contains(NO_SIGNATURE)
-                        || reason.toString().toLowerCase().contains(MISSING_KEY)) {
-                    outcome = StatusCode.RESOLUTION_NAME_ERROR;
-                }
-            } else if (dnsResponse.getRcode() == Rcode.NXDOMAIN) {
-                if (reason.toString().toLowerCase().contains(NSEC3_NO_DS)) {
-                    outcome = StatusCode.RESOURCE_INSECURE_ERROR;
-                } else {
-                    outcome = StatusCode.RESOLUTION_NAME_ERROR;
-                }
-            } else if (dnsResponse.getRcode() == Rcode.NOERROR
-                    && !dnsResponse.getHeader().getFlag(Flags.AD)) {
-                outcome = StatusCode.RESOURCE_INSECURE_ERROR;
-            }
-
+            StatusCode outcome = checkValidationStatus(dnsResponse);
             if (outcome != StatusCode.SUCCESSFUL_OPERATION) {
                 throw ExceptionsUtil.build(outcome,
                         "DNSSEC Validation Failed",
@@ -228,6 +205,152 @@ public final class DnsUtil
         return true;
     }
 
+    /**
+     * Map the response of a <code>ValidatingResolver</code> to the outcome of the DNSSEC validation,
+     * according to its response code, its <i>AD</i> flag and the validation reason it carries.
+     *
+     * @param dnsResponse A <code>Message</code> returned by a <code>ValidatingResolver</code>
+     *
+     * @return A <code>StatusCode</code> with the validation outcome
+     */
+    public static StatusCode checkValidationStatus(Message dnsResponse)
+    {
+        RRset[] rrSets = dnsResponse.getSectionRRsets(Section.ADDITIONAL);
+        StringBuilder reason = new StringBuilder("");
+        for (RRset rrset : rrSets) {
+            if (rrset.getName().equals(Name.root) && rrset.getType() == Type.TXT
+                    && rrset.getDClass() == ValidatingResolver.VALIDATION_REASON_QCLASS) {
+                reason.append(TextRecord.build((TXTRecord) rrset.first()).getRData());
+            }
+        }
+        StatusCode outcome = StatusCode.SUCCESSFUL_OPERATION;
+        if (dnsResponse.getRcode() == Rcode.SERVFAIL) {
+            if (reason.toString().toLowerCase().contains(CHAIN_OF_TRUST)
+                    || reason.toString().toLowerCase().contains(INSECURE)) {
+                outcome = StatusCode.RESOURCE_INSECURE_ERROR;
+            } else if (reason.toString().toLowerCase().contains(NO_DATA)) {
+                outcome = StatusCode.NETWORK_ERROR;
+            } else if (reason.toString().toLowerCase().contains(NO_SIGNATURE)
+                    || reason.toString().toLowerCase().contains(MISSING_KEY)) {
+                outcome = StatusCode.RESOLUTION_NAME_ERROR;
+            }
+        } else if (dnsResponse.getRcode() == Rcode.NXDOMAIN) {
+            if (reason.toString().toLowerCase().contains(NSEC3_NO_DS)) {
+                outcome = StatusCode.RESOURCE_INSECURE_ERROR;
+            } else {
+                outcome = StatusCode.RESOLUTION_NAME_ERROR;
+            }
+        } else if (dnsResponse.getRcode() == Rcode.NOERROR
+                && !dnsResponse.getHeader().getFlag(Flags.AD)) {
+            outcome = StatusCode.RESOURCE_INSECURE_ERROR;
+        }
+
+        return outcome;
+    }
+
+    /**
+     * Send a single query for the provided domain name, as opposed to a <code>Lookup</code> which
+     * might issue further ones. Meant to resolve and validate in one exchange by means of a
+     * <code>ValidatingResolver</code>.
+     *
+     * @param domainName A domain name to query
+     * @param resolver A <code>Resolver</code> to be used for the query
+     * @param rrType The Resource Record <code>Type</code>
+     *
+     * @return The response <code>Message</code>, <code>null</code> in case of transient network error
+     *
+     * @throws LookupException
+     *      Containing the specific <code>StatusCode</code> defining the error that has been raised.
+     */
+    public static Message query(String domainName, Resolver resolver, int rrType)
+                    throws LookupException
+    {
+        Record question = null;
+        try {
+            question = Record.newRecord(Name.fromString(domainName, Name.root), rrType, DClass.IN);
+        } catch (TextParseException ex) {
+            throw new LookupException(StatusCode.RESOURCE_LOOKUP_ERROR, String.format("Unable to crea a Lookup for [%s]",
+                    domainName));
+        }
+        try {
+            return resolver.send(Message.newQuery(question));
+        } catch (IOException e) {
+            // it might be a transient error network: retry with next Resolver
+            return null;
+        }
+    }
+
+    /**
+     * Validate the response to a single query, the same way a <code>Lookup</code> is checked by
+     * {@link #checkLookupStatus(Lookup)}.
+     *
+     * @param dnsResponse The response <code>Message</code>, <code>null</code> if none was received
+     * @param rrType The Resource Record <code>Type</code> which was queried
+     *
+     * @return A <code>StatusCode</code> with the check outcome
+     */
+    public static StatusCode checkResponseStatus(Message dnsResponse, int rrType)
+    {
+        StatusCode outcome = null;
+        if (dnsResponse == null) {
+            outcome = StatusCode.NETWORK_ERROR;
+        } else if (dnsResponse.getRcode() == Rcode.NXDOMAIN) {
+            // Domain Name not found
+            outcome = StatusCode.RESOLUTION_NAME_ERROR;
+        } else if (dnsResponse.getRcode() != Rcode.NOERROR) {
+            outcome = StatusCode.NETWORK_ERROR;
+        } else if (answers(dnsResponse, rrType).length == 0) {
+            // RR set not found
+            outcome = StatusCode.RESOLUTION_RR_TYPE_ERROR;
+        } else {
+            outcome = StatusCode.SUCCESSFUL_OPERATION;
+        }
+
+        return outcome;
+    }
+
+    /**
+     * Retrieve the TTL a negative answer can be cached for, i.e. the lowest between the TTL of the
+     * SOA record in its authority section and the SOA minimum field.
+     *
+     * @param dnsResponse The negative response <code>Message</code>
+     *
+     * @return The negative TTL in seconds, <code>-1</code> if the response carries no SOA record
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc2308#section-5">RFC 2308, Caching Negative Answers</a>
+     */
+    public static long negativeTtl(Message dnsResponse)
+    {
+        for (Record record : dnsResponse.getSectionArray(Section.AUTHORITY)) {
+            if (record.getType() == Type.SOA) {
+                SOARecord soa = (SOARecord) record;
+                return Math.min(soa.getTTL(), soa.getMinimum());
+            }
+        }
+
+        return -1L;
+    }
+
+    /**
+     * Extract the answers of the requested type from a response, following any alias.
+     *
+     * @param dnsResponse The response <code>Message</code>
+     * @param rrType The Resource Record <code>Type</code> which was queried
+     *
+     * @return The answer <code>Record</code>s of type <i>rrType</i>, possibly none
+     */
+    public static Record[] answers(Message dnsResponse, int rrType)
+    {
+        List<Record> answers = new ArrayList<>();
+        for (Record record : dnsResponse.getSectionArray(Section.ANSWER)) {
+            if (record.getType() == rrType) {
+                answers.add(record);
+            }
+        }
+
+        return answers.toArray(new Record[answers.size()]);
+    }
+
     /**
      * Validate the DNS <code>Lookup</code>, catching any transient or blocking issue.
      *
@@ -301,19 +424,57 @@ public final class DnsUtil
     {
         try {
             Resolver resolver = new SimpleResolver(server);
-            if (!dnsSec) {
-                return resolver;
-            }
 
-            ValidatingResolver validating = new ValidatingResolver(resolver);
-            validating.loadTrustAnchors(new ByteArrayInputStream(trustAnchor.getBytes(StandardCharsets.UTF_8)));
+            return (dnsSec ? validating(resolver, trustAnchor) : resolver);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Private helper to instantiate a DNS <code>Resolver</code> by the provided Server descriptor.
+     *
+     * @param dnsSec <code>true</code> iff DNSSEC is enabled
+     * @param trustAnchor Public cryptographic to validate against
+     * @param server Resolved descriptor of the Server to use as DNS resolver
+     *
+     * @return <code>null</code> in case the <code>Resolver</code> cannot be instantiated
+     */
+    private static Resolver instantiateResolver(boolean dnsSec, String trustAnchor, ResolverEndpoint server)
+    {
+        try {
+            // a literal address is parsed, not resolved
+            SimpleResolver resolver = new SimpleResolver(server.getAddress().getHostAddress());
+            resolver.setAddress(server.socketAddress());
 
-            return validating;
+            return (dnsSec ? validating(resolver, trustAnchor) : resolver);
         } catch (IOException e) {
             return null;
         }
     }
 
+    /**
+     * Private helper to wrap a <code>Resolver</code> into a <code>ValidatingResolver</code>, sharing
+     * the keys validated so far with the ones loaded with the same trust anchor, and the signatures
+     * verified so far with all of them.
+     *
+     * @param resolver The head <code>Resolver</code>
+     * @param trustAnchor Public cryptographic to validate against
+     *
+     * @return A <code>ValidatingResolver</code> loaded with the trust anchor
+     *
+     * @throws IOException In case the trust anchor cannot be loaded
+     */
+    private static Resolver validating(Resolver resolver, String trustAnchor) throws IOException
+    {
+        ValidatingResolver validating = new ValidatingResolver(resolver);
+        validating.loadTrustAnchors(new ByteArrayInputStream(trustAnchor.getBytes(StandardCharsets.UTF_8)));
+        KeyCaches.share(validating, trustAnchor);
+        CachingVerifier.install(validating);
+
+        return validating;
+    }
+
     /**
      * Extract service names from input pointer records.
      *
@@ -379,20 +540,99 @@ public final class DnsUtil
     }
 
     /**
-     * Extracts an unescaped description from a DNS-SD QName
+     * Extracts an unescaped description from a DNS-SD QName, i.e. its Instance label, decoding the
+     * <code>\DDD</code> and <code>\X</code> escapes and the UTF-8 octets they stand for in a
+     * single pass.
      *
      * @param qname     Domain name to be used for this extraction process
      * @return      Unescaped DNS-SD description
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc1035#section-5.1">RFC 1035, Master files format</a>
+     * @see <a href="https://tools.ietf.org/html/rfc6763#section-4.3">RFC 6763, Internal Handling of Names</a>
      */
     public static String extractDnsSdDescription(String qname)
     {
-        String escaped = qname.replaceAll(DNS_SD_DESC_EXT_PATTERN, "").
-                                replaceAll("\\\\", "").
-                                replaceAll("032", " ");
-        for(String key: decodingTable.keySet())
-            escaped = escaped.replaceAll(key, decodingTable.get(key));
+        int end = descriptionEnd(qname);
+        // an octet per escape, at most three per UTF-16 unit otherwise
+        byte[] buffer = DESCRIPTION_BUFFER.get();
+        if (buffer.length < 3 * end) {
+            buffer = new byte[3 * end];
+            DESCRIPTION_BUFFER.set(buffer);
+        }
+
+        int length = 0;
+        for (int i = 0; i < end; i++) {
+            char c = qname.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                if (i + 3 < end && isDigit(qname.charAt(i + 1)) && isDigit(qname.charAt(i + 2))
+                        && isDigit(qname.charAt(i + 3))) {
+                    buffer[length++] = (byte) ((qname.charAt(i + 1) - '0') * 100 + (qname.charAt(i + 2) - '0') * 10
+                                                + (qname.charAt(i + 3) - '0'));
+                    i += 3;
+                    continue;
+                }
+                c = qname.charAt(++i);
+            }
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(qname.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, qname.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        return new String(buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Find where the description of a DNS-SD QName ends: at the first unescaped dot, provided the
+     * Service labels follow it, i.e. two labels starting with an underscore.
+     *
+     * @param qname A domain name, possibly DNS-SD specific
+     * @return The length of its description, the whole name if not DNS-SD specific
+     */
+    private static int descriptionEnd(String qname)
+    {
+        int dot = 0;
+        while (dot < qname.length() && qname.charAt(dot) != '.') {
+            dot += (qname.charAt(dot) == '\\' ? 2 : 1);
+        }
+        int next = serviceLabelEnd(qname, dot + 1);
+
+        return (next > 0 && serviceLabelEnd(qname, next + 1) > 0 && dot > 0 ? dot : qname.length());
+    }
+
+    /**
+     * Check whether a Service label, e.g. <code>_ipp</code>, starts at the given position.
+     *
+     * @return The position of the dot ending it, <code>-1</code> if no Service label starts there
+     */
+    private static int serviceLabelEnd(String qname, int start)
+    {
+        if (start >= qname.length() || qname.charAt(start) != '_') {
+            return -1;
+        }
+        int i = start + 1;
+        while (i < qname.length() && ((qname.charAt(i) >= 'a' && qname.charAt(i) <= 'z') || qname.charAt(i) == '-')) {
+            i++;
+        }
 
-        return escaped;
+        return (i > start + 1 && i < qname.length() && qname.charAt(i) == '.' ? i : -1);
+    }
+
+    private static boolean isDigit(char c)
+    {
+        return c >= '0' && c <= '9';
     }
 
     private DnsUtil()
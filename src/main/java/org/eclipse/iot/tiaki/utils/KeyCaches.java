@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import java.lang.reflect.Field;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.jitsi.dnssec.validator.KeyCache;
+import org.jitsi.dnssec.validator.ValidatingResolver;
+
+/**
+ * Key caches shared by all the <code>ValidatingResolver</code> instances loaded with the same trust
+ * anchor: the DNSKEY and DS RRsets validated along a chain of trust are kept, each until its TTL
+ * expires (15 minutes at most), across lookups, servers and configuration reloads, so that only the
+ * leaf RRSIG is verified once the zone's keys are trusted.
+ *
+ * A <code>ValidatingResolver</code> builds a private <code>KeyCache</code> of its own, with no way
+ * to provide another one: the shared cache is swapped in reflectively. Should that not be possible,
+ * e.g. with another release of the validator, the private cache is kept.
+ *
+ */
+final class KeyCaches
+{
+
+    /** Shared caches, by trust anchor. */
+    private static final Map<String, KeyCache> SHARED = new ConcurrentHashMap<>();
+    /** The key cache of a <code>ValidatingResolver</code>, <code>null</code> if inaccessible. */
+    private static final Field KEY_CACHE = keyCacheField();
+
+    private KeyCaches()
+    {
+        throw new AssertionError(String.format("No instances of %s for you!", this.getClass().getName()));
+    }
+
+    /**
+     * Have a validating resolver use the cache shared by the ones with the same trust anchor.
+     *
+     * @param validating A <code>ValidatingResolver</code> loaded with <i>trustAnchor</i>
+     * @param trustAnchor The trust anchor the resolver has been loaded with
+     *
+     * @return The <code>KeyCache</code> the resolver uses from now on
+     */
+    static KeyCache share(ValidatingResolver validating, String trustAnchor)
+    {
+        KeyCache shared = SHARED.computeIfAbsent(trustAnchor, anchor -> new KeyCache());
+        if (KEY_CACHE == null) {
+            return of(validating);
+        }
+        try {
+            KEY_CACHE.set(validating, shared);
+        } catch (IllegalAccessException | RuntimeException e) {
+            return of(validating);
+        }
+
+        return shared;
+    }
+
+    /**
+     * Retrieve the cache a validating resolver uses.
+     *
+     * @param validating A <code>ValidatingResolver</code>
+     *
+     * @return Its <code>KeyCache</code>, <code>null</code> if inaccessible
+     */
+    static KeyCache of(ValidatingResolver validating)
+    {
+        try {
+            return (KEY_CACHE == null ? null : (KeyCache) KEY_CACHE.get(validating));
+        } catch (IllegalAccessException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Field keyCacheField()
+    {
+        try {
+            Field field = ValidatingResolver.class.getDeclaredField("keyCache");
+            if (!KeyCache.class.equals(field.getType())) {
+                return null;
+            }
+            field.setAccessible(true);
+
+            return field;
+        } catch (NoSuchFieldException | RuntimeException e) {
+            return null;
+        }
+    }
+
+}
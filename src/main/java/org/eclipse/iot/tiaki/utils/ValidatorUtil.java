@@ -19,9 +19,14 @@ import org.eclipse.iot.tiaki.domain.Fqdn;
 public final class ValidatorUtil
 {
 
+	/**
+	 * The Domain Names accepted, as a regular expression: {@link #isValidDomainName(String)} scans
+	 * them by hand, bounding the length of their labels as well.
+	 */
 	public static final String FQDN_PATTERN = "^([(\\\\ )|(\\\\0-9)0-9a-zA-Z_-]+\\.){1,}$";
 	public static final String DNS_SD_FQDN_PATTERN = "\\";
 	public static final int FQDN_LENGTH = 255;
+	public static final int LABEL_LENGTH = 63;
 
 
 	/**
@@ -81,17 +86,13 @@ public final class ValidatorUtil
 		if ( name == null ) {
 			throw new IllegalArgumentException( "null/blank Fully Qualified Domain Name" );
 		}
-		else if ( name.fqdn() == null || name.fqdn().isEmpty() ) {
-			throw new IllegalArgumentException( "null/blank name" );
-		}
-		else if ( !isDnsSdDomainName(name.fqdn()) && (!name.fqdn().matches( FQDN_PATTERN )
-                    || name.fqdn().length() > FQDN_LENGTH )) {
-			throw new IllegalArgumentException( String.format( "invalid FQDN [%s]", name ) );
-		}
+		// validated once and for all when built
+		name.fqdn();
 	}
 
 	/**
-	 * Validate the Domain Name in Input.
+	 * Validate the Domain Name in Input. Its labels may not exceed 63 octets, the escapes of a DNS-SD
+	 * specific one counting for an octet each.
 	 *
 	 * @param name A <code>String</code> containing a Domain Name
 	 * @throws IllegalArgumentException In case the argument cannot be validated
@@ -103,8 +104,7 @@ public final class ValidatorUtil
 		if ( name == null || name.isEmpty() ) {
 			throw new IllegalArgumentException( "null/blank name" );
 		}
-		else if ( !isDnsSdDomainName(name) && (!name.matches(FQDN_PATTERN )
-                    || name.length() > FQDN_LENGTH) ) {
+		else if ( !(isDnsSdDomainName(name) ? hasValidDnsSdLabels( name ) : hasValidLabels( name )) ) {
 			throw new IllegalArgumentException( String.format( "invalid FQDN [%s]", name ) );
 		}
 	}
@@ -121,6 +121,89 @@ public final class ValidatorUtil
 		return name.contains( DNS_SD_FQDN_PATTERN );
 	}
 
+	/**
+	 * Scan the labels of a Domain Name in a single pass, accepting what {@link #FQDN_PATTERN} does.
+	 *
+	 * @param name A <code>String</code> containing a Domain Name, not empty
+	 * @return <code>true</code> iff every label is made of the allowed characters, up to 63 of them
+	 */
+	private static boolean hasValidLabels ( String name )
+    {
+		if ( name.length() > FQDN_LENGTH || name.charAt( name.length() - 1 ) != '.' ) {
+			return false;
+		}
+		int labelLength = 0;
+		for ( int i = 0; i < name.length(); i++ ) {
+			char c = name.charAt( i );
+			if ( c == '.' ) {
+				if ( labelLength == 0 ) {
+					return false;
+				}
+				labelLength = 0;
+			} else if ( !isLabelCharacter( c ) || ++labelLength > LABEL_LENGTH ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Scan the labels of a DNS-SD specific Domain Name in a single pass: they may bear any character,
+	 * escaped or not, up to 63 octets once encoded.
+	 *
+	 * @param name A <code>String</code> containing a DNS-SD specific Domain Name
+	 * @return <code>true</code> iff no label exceeds 63 octets
+	 */
+	private static boolean hasValidDnsSdLabels ( String name )
+    {
+		int octets = 0;
+		for ( int i = 0; i < name.length(); i++ ) {
+			char c = name.charAt( i );
+			if ( c == '.' ) {
+				octets = 0;
+				continue;
+			}
+			if ( c == '\\' && i + 1 < name.length() ) {
+				// either \DDD or \X stands for a single octet
+				i += (isDecimalEscape( name, i ) ? 3 : 1);
+				octets++;
+			} else if ( c < 0x80 ) {
+				octets++;
+			} else if ( c < 0x800 ) {
+				octets += 2;
+			} else if ( Character.isHighSurrogate( c ) && i + 1 < name.length()
+						&& Character.isLowSurrogate( name.charAt( i + 1 ) ) ) {
+				i++;
+				octets += 4;
+			} else {
+				octets += 3;
+			}
+			if ( octets > LABEL_LENGTH ) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	private static boolean isLabelCharacter ( char c )
+    {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit( c )
+				|| c == '_' || c == '-' || c == ' ' || c == '\\' || c == '(' || c == ')' || c == '|';
+	}
+
+	private static boolean isDecimalEscape ( String name, int backslash )
+    {
+		return backslash + 3 < name.length() && isDigit( name.charAt( backslash + 1 ) )
+				&& isDigit( name.charAt( backslash + 2 ) ) && isDigit( name.charAt( backslash + 3 ) );
+	}
+
+	private static boolean isDigit ( char c )
+    {
+		return c >= '0' && c <= '9';
+	}
+
     public static boolean isValidPort(String portString)
     {
 		try{
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.commons;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.Type;
+
+public class ConfigurableTest {
+
+    private final AtomicInteger built = new AtomicInteger();
+
+    @Test
+    public void eventNotBuiltUnlessIntrospected() {
+        Introspectable configurable = new Introspectable();
+        configurable.observer((observable, event) -> Assert.fail("Unexpected event " + event));
+
+        configurable.statusChange(this::event);
+        Assert.assertEquals(0, this.built.get());
+    }
+
+    @Test
+    public void eventNotBuiltWithoutObservers() {
+        Introspectable configurable = new Introspectable();
+        configurable.introspected(true);
+
+        configurable.statusChange(this::event);
+        Assert.assertEquals(0, this.built.get());
+    }
+
+    @Test
+    public void eventDeliveredWhenListened() {
+        List<Object> events = new ArrayList<>();
+        Introspectable configurable = new Introspectable();
+        configurable.introspected(true).observer((observable, event) -> events.add(event));
+
+        configurable.statusChange(this::event);
+        configurable.statusChange(() -> "Secure Resolving mode");
+        Assert.assertEquals(1, this.built.get());
+        Assert.assertEquals(StatusChangeEvent.build("example.com.", "PTR", Collections.singletonList("a")),
+                            events.get(0));
+        Assert.assertEquals("Secure Resolving mode", events.get(1));
+    }
+
+    @Test
+    public void listenersNotifiedWithoutIntrospection() {
+        List<QueryEvent> events = new ArrayList<>();
+        Introspectable configurable = new Introspectable();
+        configurable.queryEvent(() -> {
+            throw new AssertionError("Query event built without listeners");
+        });
+        configurable.listener(new DiscoveryListener() {
+            @Override
+            public void queryStarted(QueryEvent event) {
+                events.add(event);
+            }
+        });
+
+        configurable.queryEvent(() -> QueryEvent.started("127.0.0.1", "example.com.", Type.PTR, false));
+        Assert.assertTrue(configurable.listened());
+        Assert.assertEquals(1, events.size());
+    }
+
+    @Test
+    public void listeningKeepsConfigurationChecked() {
+        Introspectable configurable = new Introspectable();
+        configurable.checked = true;
+
+        configurable.listener(new DiscoveryListener() { })
+                    .observer((observable, event) -> { })
+                    .asyncDispatch(16);
+        Assert.assertTrue(configurable.checked);
+        configurable.asyncDispatch(0);
+    }
+
+    @Test
+    public void serversAddedBySubclassesUseStandardPort() throws Exception {
+        Introspectable configurable = new Introspectable();
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        configurable.dnsServers.add(loopback);
+        configurable.dnsServer(loopback, 5353);
+        configurable.checkConfiguration(true);
+
+        Assert.assertEquals(2, configurable.dnsEndpoints.size());
+        Assert.assertEquals(ResolverEndpoint.DNS_PORT, configurable.dnsEndpoints.get(0).getPort());
+        Assert.assertEquals(5353, configurable.dnsEndpoints.get(1).getPort());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeEventsBuffer() {
+        new Introspectable().asyncDispatch(-1);
+    }
+
+    private StatusChangeEvent event() {
+        this.built.incrementAndGet();
+        return StatusChangeEvent.build("example.com.", "PTR", Collections.singletonList("a"));
+    }
+
+    private static final class Introspectable extends Configurable {
+    }
+
+}
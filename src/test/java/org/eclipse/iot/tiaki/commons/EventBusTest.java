@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.commons;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.Type;
+
+public class EventBusTest {
+
+    private static final QueryEvent STARTED = QueryEvent.started("127.0.0.1", "_ipp._tcp.example.com.",
+                                                                  Type.PTR, false);
+
+    @Test
+    public void dispatchedByPhase() {
+        Recording listener = new Recording();
+        EventBus bus = new EventBus();
+        Assert.assertFalse(bus.hasListeners());
+        bus.register(listener);
+        bus.register(listener);
+
+        bus.publish(STARTED);
+        bus.publish(QueryEvent.answered(STARTED, StatusCode.SUCCESSFUL_OPERATION, null, 3L));
+        bus.publish(QueryEvent.failed(STARTED, StatusCode.NETWORK_ERROR, 5000L));
+
+        Assert.assertTrue(bus.hasListeners());
+        Assert.assertEquals(3, listener.events.size());
+        Assert.assertEquals(QueryEvent.Phase.STARTED, listener.events.get(0).getPhase());
+        Assert.assertEquals(QueryEvent.Phase.ANSWERED, listener.events.get(1).getPhase());
+        Assert.assertEquals(QueryEvent.Phase.FAILED, listener.events.get(2).getPhase());
+        Assert.assertEquals(StatusCode.NETWORK_ERROR, listener.events.get(2).getOutcome());
+        Assert.assertEquals("_ipp._tcp.example.com.", listener.events.get(2).getName());
+        Assert.assertEquals(Thread.currentThread().getName(), listener.threads.get(0));
+    }
+
+    @Test
+    public void asyncDispatchKeepsOrder() throws Exception {
+        Recording listener = new Recording();
+        EventBus bus = new EventBus();
+        bus.register(listener);
+        bus.dispatchMode(64);
+
+        CountDownLatch delivered = new CountDownLatch(1);
+        for (int i = 0; i < 50; i++) {
+            bus.publish(QueryEvent.answered(STARTED, StatusCode.SUCCESSFUL_OPERATION, null, i));
+        }
+        bus.deliver(delivered::countDown);
+
+        Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(50, listener.events.size());
+        for (int i = 0; i < 50; i++) {
+            Assert.assertEquals(i, listener.events.get(i).getElapsed());
+            Assert.assertEquals(EventBus.DISPATCHER_NAME, listener.threads.get(i));
+        }
+        Assert.assertEquals(0, bus.dropped());
+    }
+
+    @Test
+    public void fullBufferDropsEvents() throws Exception {
+        EventBus bus = new EventBus();
+        bus.dispatchMode(2);
+
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        bus.deliver(() -> {
+            entered.countDown();
+            await(released);
+        });
+        Assert.assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch delivered = new CountDownLatch(2);
+        AtomicBoolean dropped = new AtomicBoolean();
+        bus.deliver(delivered::countDown);
+        bus.deliver(delivered::countDown);
+        bus.deliver(() -> dropped.set(true));
+        Assert.assertEquals(1, bus.dropped());
+
+        released.countDown();
+        Assert.assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        CountDownLatch drained = new CountDownLatch(1);
+        bus.deliver(drained::countDown);
+        Assert.assertTrue(drained.await(5, TimeUnit.SECONDS));
+        Assert.assertFalse(dropped.get());
+    }
+
+    @Test
+    public void backToSynchronousDispatch() throws Exception {
+        Recording listener = new Recording();
+        EventBus bus = new EventBus();
+        bus.register(listener);
+        bus.dispatchMode(8);
+        bus.dispatchMode(0);
+
+        bus.publish(STARTED);
+        Assert.assertEquals(1, listener.events.size());
+        Assert.assertEquals(Thread.currentThread().getName(), listener.threads.get(0));
+    }
+
+    @Test
+    public void faultyListenerIsIsolated() {
+        Recording listener = new Recording();
+        EventBus bus = new EventBus();
+        bus.register(new DiscoveryListener() {
+            @Override
+            public void queryStarted(QueryEvent event) {
+                throw new IllegalStateException("Faulty listener");
+            }
+        });
+        bus.register(listener);
+
+        bus.publish(STARTED);
+        Assert.assertEquals(1, listener.events.size());
+    }
+
+    @Test
+    public void switchingModesLosesNoEvent() throws Exception {
+        final int events = 20000;
+        AtomicInteger delivered = new AtomicInteger();
+        EventBus bus = new EventBus();
+        bus.register(new DiscoveryListener() {
+            @Override
+            public void queryStarted(QueryEvent event) {
+                delivered.incrementAndGet();
+            }
+        });
+        Thread publisher = new Thread(() -> {
+            for (int i = 0; i < events; i++) {
+                bus.publish(STARTED);
+            }
+        });
+        publisher.start();
+        for (int i = 0; publisher.isAlive(); i++) {
+            bus.dispatchMode(4 << (i % 3));
+        }
+        bus.dispatchMode(0);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.get() + bus.dropped() < events && System.nanoTime() < deadline) {
+            Thread.sleep(10L);
+        }
+        Assert.assertEquals(events, delivered.get() + bus.dropped());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Recording implements DiscoveryListener {
+
+        private final List<QueryEvent> events = new CopyOnWriteArrayList<>();
+        private final List<String> threads = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void queryStarted(QueryEvent event) {
+            record(event);
+        }
+
+        @Override
+        public void queryAnswered(QueryEvent event) {
+            record(event);
+        }
+
+        @Override
+        public void queryFailed(QueryEvent event) {
+            record(event);
+        }
+
+        private void record(QueryEvent event) {
+            this.events.add(event);
+            this.threads.add(Thread.currentThread().getName());
+        }
+
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.commons;
+
+import java.net.InetAddress;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class ResolverEndpointTest {
+
+    @Test
+    public void keyIsTheLiteralAddress() throws Exception {
+        // an address built with an explicit host name must not be reverse resolved
+        InetAddress address = InetAddress.getByAddress("resolver.invalid", new byte[] { 10, 0, 0, 53 });
+        ResolverEndpoint endpoint = ResolverEndpoint.of(address);
+
+        Assert.assertEquals("10.0.0.53", endpoint.getKey());
+        Assert.assertEquals(ResolverEndpoint.DNS_PORT, endpoint.getPort());
+        Assert.assertEquals(ResolverEndpoint.DNS_PORT, endpoint.socketAddress().getPort());
+        Assert.assertFalse(endpoint.socketAddress().isUnresolved());
+    }
+
+    @Test
+    public void keyCarriesNonStandardPort() throws Exception {
+        ResolverEndpoint endpoint = ResolverEndpoint.of(InetAddress.getByName("127.0.0.1"), 5353);
+
+        Assert.assertEquals("127.0.0.1#5353", endpoint.getKey());
+        Assert.assertEquals(endpoint.getKey(), endpoint.toString());
+    }
+
+    @Test
+    public void equality() throws Exception {
+        InetAddress address = InetAddress.getByName("127.0.0.1");
+
+        Assert.assertEquals(ResolverEndpoint.of(address), ResolverEndpoint.of(address, 53));
+        Assert.assertEquals(ResolverEndpoint.of(address).hashCode(), ResolverEndpoint.of(address, 53).hashCode());
+        Assert.assertNotEquals(ResolverEndpoint.of(address), ResolverEndpoint.of(address, 5353));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullAddress() {
+        ResolverEndpoint.of(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPort() throws Exception {
+        ResolverEndpoint.of(InetAddress.getByName("127.0.0.1"), 0);
+    }
+
+}
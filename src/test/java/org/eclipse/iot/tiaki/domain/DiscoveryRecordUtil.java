@@ -12,6 +12,7 @@ package org.eclipse.iot.tiaki.domain;
 import org.xbill.DNS.DClass;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.TLSARecord;
 import org.xbill.DNS.TXTRecord;
 import org.xbill.DNS.TextParseException;
 
@@ -26,4 +27,11 @@ public class DiscoveryRecordUtil {
 	public static TXTRecord createTxtRecord ( String rdata, long ttl ) throws TextParseException {
 		return new TXTRecord( Name.fromString( "example.com." ), DClass.IN, ttl, rdata );
 	}
+
+
+	public static TLSARecord createTlsaRecord ( byte[] data, long ttl ) throws TextParseException {
+		return new TLSARecord( Name.fromString( "_443._tcp.example.com." ), DClass.IN, ttl,
+				TLSARecord.CertificateUsage.DOMAIN_ISSUED_CERTIFICATE, TLSARecord.Selector.SUBJECT_PUBLIC_KEY_INFO,
+				TLSARecord.MatchingType.SHA256, data );
+	}
 }
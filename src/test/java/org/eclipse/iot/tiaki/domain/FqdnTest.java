@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.domain;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.Name;
+
+public class FqdnTest
+{
+
+    @Test
+    public void builtOnce() throws Exception
+    {
+        Fqdn name = new Fqdn("printer", "example.com");
+
+        Assert.assertEquals("printer.example.com.", name.fqdn());
+        Assert.assertSame(name.fqdn(), name.fqdn());
+        Assert.assertSame(name.fqdn(), name.toString());
+        Assert.assertEquals(Name.fromString("printer.example.com."), name.name());
+    }
+
+    @Test
+    public void prefixedBuiltOnce()
+    {
+        Fqdn name = new Fqdn("example.com.");
+
+        Assert.assertEquals("_ipp._tcp.example.com.", name.fqdnWithPrefix("_ipp._tcp"));
+        Assert.assertSame(name.fqdnWithPrefix("_ipp._tcp"), name.fqdnWithPrefix("_ipp._tcp"));
+        Assert.assertSame(name.fqdn(), name.fqdnWithPrefix(""));
+    }
+
+    @Test
+    public void dnsSdNameQuoted() throws Exception
+    {
+        Fqdn name = new Fqdn("My\\ Printer._ipp._tcp.example.com.");
+
+        Assert.assertEquals("\"My\\ Printer._ipp._tcp.example.com.\"", name.fqdn());
+        Assert.assertEquals(Name.fromString("My\\ Printer._ipp._tcp.example.com."), name.name());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidLabelRaisedOnUse()
+    {
+        Fqdn name = new Fqdn("in/valid", "example.com");
+
+        Assert.assertNull(name.name());
+        name.fqdn();
+    }
+
+}
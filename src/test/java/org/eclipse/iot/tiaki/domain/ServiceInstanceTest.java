@@ -12,6 +12,7 @@ package org.eclipse.iot.tiaki.domain;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -116,4 +117,97 @@ public class ServiceInstanceTest {
 		Assert.assertTrue( "Second element in the list should be svcInst2", list.get( 1 ).equals( svcInst2 ) );
 		Assert.assertTrue( "Third element in the list should be svcInst3", list.get( 2 ).equals( svcInst3 ) );
 	}
+
+
+	@Test
+	public void testLazyTextRecord () throws TextParseException {
+		ServiceRecord svc = ServiceRecord.build( DiscoveryRecordUtil.createSrvRecord( "host.com.", 1800, 0, 10, 3600 ) );
+		final TextRecord txt = TextRecord.build( DiscoveryRecordUtil.createTxtRecord( "txt1", 3600 ) );
+		final AtomicInteger loads = new AtomicInteger();
+		ServiceInstance svcInst = ServiceInstance.build( serviceTypeCoap, svc, () -> {
+			loads.incrementAndGet();
+			return txt;
+		} );
+		Assert.assertFalse( "TXT should not be resolved upon creation", svcInst.isTextRecordResolved() );
+		Assert.assertEquals( 0, loads.get() );
+		Assert.assertEquals( svc, svcInst.getServiceRecord() );
+		Assert.assertEquals( 0, loads.get() );
+
+		Assert.assertSame( txt, svcInst.getTextRecord() );
+		Assert.assertSame( txt, svcInst.getTextRecord() );
+		Assert.assertTrue( svcInst.isTextRecordResolved() );
+		Assert.assertEquals( "TXT should be resolved once", 1, loads.get() );
+		Assert.assertTrue( svcInst.equals( new ServiceInstance( serviceTypeCoap, svc, txt ) ) );
+	}
+
+
+	@Test
+	public void testLazyTextRecordMissing () throws TextParseException {
+		ServiceRecord svc = ServiceRecord.build( DiscoveryRecordUtil.createSrvRecord( "host.com.", 1800, 0, 10, 3600 ) );
+		ServiceInstance svcInst = ServiceInstance.build( serviceTypeCoap, svc, () -> null );
+		Assert.assertNull( svcInst.getTextRecord() );
+		Assert.assertTrue( svcInst.isTextRecordResolved() );
+		Assert.assertTrue( svcInst.getCertRecords().isEmpty() );
+	}
+
+
+	@Test
+	public void testEqualsDoesNotResolveTextRecord () throws TextParseException {
+		ServiceRecord svc = ServiceRecord.build( DiscoveryRecordUtil.createSrvRecord( "host.com.", 1800, 0, 10, 3600 ) );
+		TextRecord txt = TextRecord.build( DiscoveryRecordUtil.createTxtRecord( "txt1", 3600 ) );
+		final AtomicInteger loads = new AtomicInteger();
+		ServiceInstance lazy = ServiceInstance.build( serviceTypeCoap, svc, () -> {
+			loads.incrementAndGet();
+			return txt;
+		} );
+		ServiceInstance resolved = new ServiceInstance( serviceTypeCoap, svc, txt );
+		Assert.assertTrue( lazy.equals( resolved ) );
+		Assert.assertTrue( resolved.equals( lazy ) );
+		Assert.assertEquals( lazy.hashCode(), resolved.hashCode() );
+		Assert.assertEquals( "TXT should not be resolved by equals", 0, loads.get() );
+
+		// the textRecord is never part of the identity, whether resolved or not
+		TextRecord other = TextRecord.build( DiscoveryRecordUtil.createTxtRecord( "txt2", 3600 ) );
+		Assert.assertTrue( resolved.equals( new ServiceInstance( serviceTypeCoap, svc, other ) ) );
+	}
+
+
+	@Test
+	public void testLazyTextRecordFailureNotKept () throws TextParseException {
+		ServiceRecord svc = ServiceRecord.build( DiscoveryRecordUtil.createSrvRecord( "host.com.", 1800, 0, 10, 3600 ) );
+		final TextRecord txt = TextRecord.build( DiscoveryRecordUtil.createTxtRecord( "txt1", 3600 ) );
+		final AtomicInteger loads = new AtomicInteger();
+		ServiceInstance svcInst = ServiceInstance.build( serviceTypeCoap, svc, () -> {
+			if ( loads.incrementAndGet() == 1 ) {
+				throw new IllegalStateException( "Unavailable" );
+			}
+			return txt;
+		} );
+		try {
+			svcInst.getTextRecord();
+			Assert.fail( "The loader failure should be raised" );
+		} catch ( IllegalStateException expected ) {
+			Assert.assertFalse( "A failed TXT should not be kept", svcInst.isTextRecordResolved() );
+		}
+
+		Assert.assertSame( txt, svcInst.getTextRecord() );
+		Assert.assertEquals( 2, loads.get() );
+	}
+
+
+	@Test
+	public void testCertRecordsInIdentity () throws TextParseException {
+		ServiceRecord svc = ServiceRecord.build( DiscoveryRecordUtil.createSrvRecord( "host.com.", 1800, 0, 10, 3600 ) );
+		TextRecord txt = TextRecord.build( DiscoveryRecordUtil.createTxtRecord( "txt1", 3600 ) );
+		CertRecord cert = new CertRecord( DiscoveryRecordUtil.createTlsaRecord( new byte[32], 3600 ) );
+		ServiceInstance withCert = new ServiceInstance( serviceTypeCoap, svc, txt, Collections.singleton( cert ) );
+		ServiceInstance sameCert = new ServiceInstance( serviceTypeCoap, svc, txt,
+				Collections.singleton( new CertRecord( DiscoveryRecordUtil.createTlsaRecord( new byte[32], 3600 ) ) ) );
+		ServiceInstance withoutCert = new ServiceInstance( serviceTypeCoap, svc, txt );
+
+		Assert.assertTrue( withCert.equals( sameCert ) );
+		Assert.assertEquals( withCert.hashCode(), sameCert.hashCode() );
+		Assert.assertFalse( withCert.equals( withoutCert ) );
+		Assert.assertTrue( withCert.toString().contains( cert.toString() ) );
+	}
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.net.InetAddress;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.Type;
+
+public class AdditionalRecordsTest
+{
+
+    private static final String INSTANCE = "Lamp._coap._udp.example.com.";
+
+    @Test
+    public void harvestsServiceRecordsByName() throws Exception
+    {
+        Name owner = Name.fromString(INSTANCE);
+        Name target = Name.fromString("lamp.example.com.");
+        AdditionalRecords additional = new AdditionalRecords();
+        additional.harvest(new Record[] {
+            new SRVRecord(owner, DClass.IN, 120L, 0, 0, 5683, target),
+            new TXTRecord(owner, DClass.IN, 120L, "path=/lamp"),
+            new TXTRecord(owner, DClass.IN, 120L, "path=/lamp"),
+            new ARecord(target, DClass.IN, 120L, InetAddress.getByName("192.0.2.1"))
+        });
+
+        Assert.assertEquals(1, additional.get(INSTANCE, Type.SRV).length);
+        Assert.assertEquals(1, additional.get(INSTANCE.toLowerCase(), Type.TXT).length);
+        Assert.assertEquals(1, additional.get("lamp._coap._udp.example.com", Type.TXT).length);
+        Assert.assertNull(additional.get("lamp.example.com.", Type.A));
+        Assert.assertNull(additional.get("Fan._coap._udp.example.com.", Type.SRV));
+    }
+
+    @Test
+    public void harvestsNothing()
+    {
+        AdditionalRecords additional = new AdditionalRecords();
+        additional.harvest(null);
+        additional.harvest(new Record[0]);
+
+        Assert.assertNull(additional.get(INSTANCE, Type.SRV));
+    }
+
+}
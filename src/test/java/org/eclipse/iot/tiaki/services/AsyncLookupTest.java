@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.eclipse.iot.tiaki.commons.StatusCode;
+import org.eclipse.iot.tiaki.exceptions.LookupException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AsyncLookupTest
+{
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() { this.executor = Executors.newCachedThreadPool(); }
+
+    @After
+    public void tearDown() { this.executor.shutdownNow(); }
+
+    @Test
+    public void completesWithResult() throws Exception
+    {
+        CompletableFuture<String> future = AsyncLookup.submit(() -> "done", this.executor, 0L, TimeUnit.SECONDS);
+        Assert.assertEquals("done", future.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void propagatesLookupException() throws Exception
+    {
+        CompletableFuture<String> future = AsyncLookup.submit(() -> {
+            throw new LookupException(StatusCode.NETWORK_ERROR, "unreachable");
+        }, this.executor, 0L, TimeUnit.SECONDS);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected a LookupException");
+        } catch (ExecutionException ee) {
+            Assert.assertTrue(ee.getCause() instanceof LookupException);
+            Assert.assertEquals(StatusCode.NETWORK_ERROR, ((LookupException) ee.getCause()).dnsError());
+        }
+    }
+
+    @Test
+    public void cancellationInterruptsLookup() throws Exception
+    {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<String> future = AsyncLookup.submit(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException ie) {
+                interrupted.countDown();
+            }
+            return "late";
+        }, this.executor, 0L, TimeUnit.SECONDS);
+
+        Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(future.cancel(true));
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(future.isCancelled());
+    }
+
+    @Test
+    public void executorInterruptIsKept() throws Exception
+    {
+        // as an executor being shut down while the lookup runs
+        CompletableFuture<String> future = AsyncLookup.submit(() -> {
+            Thread.currentThread().interrupt();
+            return "done";
+        }, Runnable::run, 0L, TimeUnit.SECONDS);
+
+        Assert.assertEquals("done", future.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(Thread.interrupted());
+    }
+
+    @Test
+    public void deadlineExpires() throws Exception
+    {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<String> future = AsyncLookup.submit(() -> {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (InterruptedException ie) {
+                interrupted.countDown();
+            }
+            return "late";
+        }, this.executor, 50L, TimeUnit.MILLISECONDS);
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            Assert.fail("Expected the deadline to expire");
+        } catch (ExecutionException ee) {
+            Assert.assertTrue(ee.getCause() instanceof TimeoutException);
+        }
+        Assert.assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+}
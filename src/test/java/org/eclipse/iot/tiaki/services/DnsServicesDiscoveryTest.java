@@ -17,6 +17,7 @@ import java.util.Set;
 import org.eclipse.iot.tiaki.commons.Constants;
 import org.eclipse.iot.tiaki.domain.CompoundLabel;
 import org.eclipse.iot.tiaki.domain.Fqdn;
+import org.eclipse.iot.tiaki.domain.InstanceProjection;
 import org.eclipse.iot.tiaki.domain.ServiceInstance;
 import org.eclipse.iot.tiaki.domain.TextRecord;
 import org.eclipse.iot.tiaki.exceptions.ConfigurationException;
@@ -95,6 +96,72 @@ public class DnsServicesDiscoveryTest implements Observer
 
     }
 
+    @Test
+    public void listServiceInstancesSecureSinglePass()
+    {
+        try {
+            this.discovery = new DnsServicesDiscovery();
+            this.discovery.dnsSecDomain(Constants.DEFAULT_DNSSEC_DOMAIN)
+                          .dnsServer(InetAddress.getByName(DNS_RESOVLER))
+                          .trustAnchorDefault(Constants.DEFAULT_TRUST_ANCHOR)
+                          .introspected(true)
+                          .observer(this)
+                          .checkConfiguration(true);
+        } catch (UnknownHostException ex) {
+            Assert.fail("Expected correct initialization, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+        Fqdn name = new Fqdn(SERVICE_DOMAIN);
+        try {
+            CompoundLabel type = new CompoundLabel(SERVICE_TYPE, "", "udp");
+            Set<ServiceInstance> inst = this.discovery.listServiceInstances(name, type, true);
+            Assert.assertTrue(inst.size() > 0);
+            // one validated exchange per lookup, no separate plain resolution
+            LookupStatistics statistics = this.discovery.statistics();
+            Assert.assertTrue(statistics.getSecureLookups() > 0);
+            Assert.assertEquals(statistics.getSecureLookups(), statistics.getSecureQueries());
+            Assert.assertEquals(0L, statistics.getQueries());
+        } catch (LookupException ex) {
+            Assert.fail("Expected successful lookup, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+
+    }
+
+    @Test
+    public void listServiceInstancesSecureInParallel()
+    {
+        try {
+            this.discovery = new DnsServicesDiscovery();
+            this.discovery.dnsSecDomain(Constants.DEFAULT_DNSSEC_DOMAIN)
+                          .dnsServer(InetAddress.getByName(DNS_RESOVLER))
+                          .trustAnchorDefault(Constants.DEFAULT_TRUST_ANCHOR)
+                          .validationParallelism(4)
+                          .introspected(true)
+                          .observer(this)
+                          .checkConfiguration(true);
+        } catch (UnknownHostException ex) {
+            Assert.fail("Expected correct initialization, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+        Fqdn name = new Fqdn(SERVICE_DOMAIN);
+        try {
+            CompoundLabel type = new CompoundLabel(SERVICE_TYPE, "", "");
+            Set<ServiceInstance> inst = this.discovery.listServiceInstances(name, type, true);
+            Assert.assertTrue(inst.size() > 0);
+            LookupStatistics statistics = this.discovery.statistics();
+            Assert.assertEquals(statistics.getSecureLookups(), statistics.getSecureQueries());
+        } catch (LookupException ex) {
+            Assert.fail("Expected successful lookup, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+
+    }
+
     @Test
     public void listServiceMultipleTxts()
     {
@@ -124,6 +191,99 @@ public class DnsServicesDiscoveryTest implements Observer
 
     }
 
+    @Test
+    public void listServiceInstancesConcurrently()
+    {
+        try {
+            this.discovery = new DnsServicesDiscovery();
+            this.discovery.dnsSecDomain(Constants.DEFAULT_DNSSEC_DOMAIN)
+                          .dnsServer(InetAddress.getByName(DNS_RESOVLER))
+                          .trustAnchorDefault(Constants.DEFAULT_TRUST_ANCHOR)
+                          .lookupConcurrency(8)
+                          .introspected(true)
+                          .observer(this)
+                          .checkConfiguration(true);
+        } catch (UnknownHostException ex) {
+            Assert.fail("Expected correct initialization, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+        Fqdn name = new Fqdn(SERVICE_DOMAIN_3);
+        try {
+            CompoundLabel type = new CompoundLabel(SERVICE_TYPE_7, "", "tcp");
+            Set<ServiceInstance> inst = this.discovery.listServiceInstances(name, type, false);
+            Assert.assertTrue(inst.size() > 0);
+        } catch (LookupException ex) {
+            Assert.fail("Expected successful lookup, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+
+    }
+
+    @Test
+    public void listServiceInstancesFromAdditionalRecords()
+    {
+        try {
+            this.discovery = new DnsServicesDiscovery();
+            this.discovery.dnsSecDomain(Constants.DEFAULT_DNSSEC_DOMAIN)
+                          .dnsServer(InetAddress.getByName(DNS_RESOVLER))
+                          .trustAnchorDefault(Constants.DEFAULT_TRUST_ANCHOR)
+                          .additionalRecords(true)
+                          .introspected(true)
+                          .observer(this)
+                          .checkConfiguration(true);
+        } catch (UnknownHostException ex) {
+            Assert.fail("Expected correct initialization, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+        Fqdn name = new Fqdn(SERVICE_DOMAIN_3);
+        try {
+            CompoundLabel type = new CompoundLabel(SERVICE_TYPE_7, "", "tcp");
+            Set<ServiceInstance> inst = this.discovery.listServiceInstances(name, type, false);
+            Assert.assertTrue(inst.size() > 0);
+        } catch (LookupException ex) {
+            Assert.fail("Expected successful lookup, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+
+    }
+
+    @Test
+    public void listServiceInstancesSrvOnly()
+    {
+        try {
+            this.discovery = new DnsServicesDiscovery();
+            this.discovery.dnsSecDomain(Constants.DEFAULT_DNSSEC_DOMAIN)
+                          .dnsServer(InetAddress.getByName(DNS_RESOVLER))
+                          .trustAnchorDefault(Constants.DEFAULT_TRUST_ANCHOR)
+                          .introspected(true)
+                          .observer(this)
+                          .checkConfiguration(true);
+        } catch (UnknownHostException ex) {
+            Assert.fail("Expected correct initialization, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+        Fqdn name = new Fqdn(SERVICE_DOMAIN_3);
+        try {
+            CompoundLabel type = new CompoundLabel(SERVICE_TYPE_7, "", "tcp");
+            Set<ServiceInstance> inst = this.discovery.listServiceInstances(name, type, InstanceProjection.SRV, false);
+            Assert.assertTrue(inst.size() > 0);
+            ServiceInstance first = inst.iterator().next();
+            Assert.assertFalse(first.isTextRecordResolved());
+            first.getTextRecord();
+            Assert.assertTrue(first.isTextRecordResolved());
+        } catch (LookupException ex) {
+            Assert.fail("Expected successful lookup, not " + ex.toString());
+        } catch (ConfigurationException ex) {
+            Assert.fail("Expected correct configuration, not " + ex.toString());
+        }
+
+    }
+
     @Test
     public void listServiceInstancesBySubType()
     {
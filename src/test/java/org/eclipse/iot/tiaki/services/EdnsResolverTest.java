@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.iot.tiaki.utils.LoopbackUdpServer;
+import org.eclipse.iot.tiaki.utils.StubResolver;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.ExtendedFlags;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+public class EdnsResolverTest
+{
+
+    private final AtomicLong now = new AtomicLong();
+    private LookupStatistics statistics;
+    private List<Integer> payloadSizes;
+    private StubResolver tcp;
+
+    @Before
+    public void setUp()
+    {
+        this.statistics = new LookupStatistics();
+        this.payloadSizes = new ArrayList<>();
+        this.tcp = new StubResolver(LoopbackUdpServer::answer);
+    }
+
+    @Test
+    public void advertisesPayloadSizeAndDo() throws Exception
+    {
+        List<Integer> flags = new ArrayList<>();
+        EdnsResolver resolver = resolver(new StubResolver(query -> {
+            flags.add(query.getOPT().getFlags());
+            return LoopbackUdpServer.answer(query);
+        }), 4096, true);
+
+        Message query = query();
+        Assert.assertEquals(query.getHeader().getID(), resolver.send(query).getHeader().getID());
+        Assert.assertEquals(Integer.valueOf(4096), this.payloadSizes.get(0));
+        Assert.assertEquals(ExtendedFlags.DO, flags.get(0) & ExtendedFlags.DO);
+        Assert.assertNull(query.getOPT());
+    }
+
+    @Test
+    public void validatorFlagsKeepPayloadSize() throws Exception
+    {
+        List<Integer> flags = new ArrayList<>();
+        EdnsResolver resolver = resolver(new StubResolver(query -> {
+            flags.add(query.getOPT().getFlags());
+            return LoopbackUdpServer.answer(query);
+        }), 4096, false);
+        // as a ValidatingResolver does
+        resolver.setEDNS(0, 0, ExtendedFlags.DO, null);
+
+        resolver.send(query());
+        Assert.assertEquals(Integer.valueOf(4096), this.payloadSizes.get(0));
+        Assert.assertEquals(ExtendedFlags.DO, flags.get(0) & ExtendedFlags.DO);
+    }
+
+    @Test
+    public void validatorFlagsReplacedButConfiguredDoKept() throws Exception
+    {
+        List<Integer> flags = new ArrayList<>();
+        EdnsResolver resolver = resolver(new StubResolver(query -> {
+            flags.add(query.getOPT().getFlags());
+            return LoopbackUdpServer.answer(query);
+        }), 4096, true);
+
+        resolver.setEDNS(0, 0, ExtendedFlags.DO | 0x4000, null);
+        resolver.send(query());
+        Assert.assertEquals(0x4000, flags.get(0) & 0x4000);
+
+        resolver.setEDNS(0, 0, 0, null);
+        resolver.send(query());
+        Assert.assertEquals(0, flags.get(1) & 0x4000);
+        Assert.assertEquals(ExtendedFlags.DO, flags.get(1) & ExtendedFlags.DO);
+    }
+
+    @Test
+    public void smallerPayloadSizeOnTimeout() throws Exception
+    {
+        AtomicInteger limit = new AtomicInteger(Integer.MAX_VALUE);
+        EdnsResolver resolver = resolver(droppingAbove(limit), 4096, false);
+        resolver.send(query());
+
+        limit.set(EdnsResolver.SAFE_PAYLOAD_SIZE);
+        resolver.send(query());
+        Assert.assertEquals(1, this.statistics.getEdnsFallbacks());
+
+        // the reduced size is kept for the next queries
+        resolver.send(query());
+        Assert.assertEquals(1, this.statistics.getEdnsFallbacks());
+        Assert.assertEquals(4, this.payloadSizes.size());
+        Assert.assertEquals(Integer.valueOf(EdnsResolver.SAFE_PAYLOAD_SIZE), this.payloadSizes.get(3));
+
+        // and eventually given up
+        this.now.addAndGet(TimeUnit.MINUTES.toNanos(11));
+        resolver.send(query());
+        Assert.assertEquals(Integer.valueOf(4096), this.payloadSizes.get(4));
+    }
+
+    @Test
+    public void smallerPayloadSizeTriedOncePerQuery() throws Exception
+    {
+        AtomicInteger limit = new AtomicInteger(Integer.MAX_VALUE);
+        EdnsResolver resolver = resolver(droppingAbove(limit), 4096, false);
+        resolver.send(query());
+
+        limit.set(0);
+        try {
+            resolver.send(query());
+            Assert.fail("Timeout expected");
+        } catch (SocketTimeoutException expected) {
+            Assert.assertEquals(3, this.payloadSizes.size());
+            Assert.assertEquals(Integer.valueOf(EdnsResolver.SAFE_PAYLOAD_SIZE), this.payloadSizes.get(2));
+            Assert.assertEquals(0, this.statistics.getEdnsFallbacks());
+        }
+        // a failed retry does not reduce the size
+        limit.set(Integer.MAX_VALUE);
+        resolver.send(query());
+        Assert.assertEquals(Integer.valueOf(4096), this.payloadSizes.get(3));
+    }
+
+    @Test
+    public void noSmallerPayloadSizeBeforeFirstResponse() throws Exception
+    {
+        EdnsResolver resolver = resolver(droppingAbove(new AtomicInteger()), 4096, false);
+
+        try {
+            resolver.send(query());
+            Assert.fail("Timeout expected");
+        } catch (SocketTimeoutException expected) {
+            Assert.assertEquals(1, this.payloadSizes.size());
+            Assert.assertEquals(0, this.statistics.getEdnsFallbacks());
+        }
+    }
+
+    @Test
+    public void noSmallerPayloadSizeOnceInterrupted() throws Exception
+    {
+        AtomicInteger limit = new AtomicInteger(Integer.MAX_VALUE);
+        EdnsResolver resolver = resolver(droppingAbove(limit), 4096, false);
+        resolver.send(query());
+
+        limit.set(0);
+        Thread.currentThread().interrupt();
+        try {
+            resolver.send(query());
+            Assert.fail("Timeout expected");
+        } catch (SocketTimeoutException expected) {
+            Assert.assertTrue(Thread.interrupted());
+            Assert.assertEquals(2, this.payloadSizes.size());
+            Assert.assertEquals(0, this.statistics.getEdnsFallbacks());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    @Test
+    public void truncatedRetriedOverTcp() throws Exception
+    {
+        EdnsResolver resolver = resolver(new StubResolver(query -> {
+            Message response = LoopbackUdpServer.answer(query);
+            response.getHeader().setFlag(Flags.TC);
+            return response;
+        }), 1232, false);
+
+        Message response = resolver.send(query());
+        Assert.assertFalse(response.getHeader().getFlag(Flags.TC));
+        Assert.assertEquals(1, this.tcp.sent());
+        Assert.assertEquals(1, this.statistics.getTruncations());
+    }
+
+    private EdnsResolver resolver(final StubResolver udp, int payloadSize, boolean dnssecOk)
+    {
+        StubResolver recording = new StubResolver(null) {
+            @Override
+            public Message send(Message query) throws IOException
+            {
+                EdnsResolverTest.this.payloadSizes.add(query.getOPT().getPayloadSize());
+                return udp.send(query);
+            }
+        };
+
+        return new EdnsResolver(recording, this.tcp, payloadSize, dnssecOk, this.statistics, this.now::get);
+    }
+
+    /**
+     * A resolver dropping the responses above the given payload size, as a path dropping fragments.
+     */
+    private static StubResolver droppingAbove(final AtomicInteger payloadSize)
+    {
+        return new StubResolver(LoopbackUdpServer::answer) {
+            @Override
+            public Message send(Message query) throws IOException
+            {
+                if (query.getOPT().getPayloadSize() > payloadSize.get()) {
+                    throw new SocketTimeoutException("Dropped");
+                }
+                return super.send(query);
+            }
+        };
+    }
+
+    private static Message query() throws Exception
+    {
+        return Message.newQuery(Record.newRecord(Name.fromString("host.example.com."), Type.TXT, DClass.IN));
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HedgingPolicyTest
+{
+
+    @Test
+    public void delayFollowsPercentile()
+    {
+        HedgingPolicy policy = new HedgingPolicy(95.0, 0.1);
+        Assert.assertEquals(500L, policy.delay());
+
+        for (long millis = 1; millis <= 100; millis++) {
+            policy.record(millis);
+        }
+        Assert.assertEquals(95L, policy.delay());
+    }
+
+    @Test
+    public void delayHasFloor()
+    {
+        HedgingPolicy policy = new HedgingPolicy(50.0, 0.1);
+        for (int i = 0; i < 32; i++) {
+            policy.record(0L);
+        }
+        Assert.assertEquals(5L, policy.delay());
+    }
+
+    @Test
+    public void delayTracksRecentSamples()
+    {
+        HedgingPolicy policy = new HedgingPolicy(50.0, 0.1);
+        for (int i = 0; i < 128; i++) {
+            policy.record(400L);
+        }
+        for (int i = 0; i < 128; i++) {
+            policy.record(20L);
+        }
+        Assert.assertEquals(20L, policy.delay());
+    }
+
+    @Test
+    public void extraLoadIsCapped()
+    {
+        HedgingPolicy policy = new HedgingPolicy(95.0, 0.1);
+        Assert.assertFalse(policy.tryHedge());
+
+        int hedges = 0;
+        for (int i = 0; i < 1000; i++) {
+            policy.lookup();
+            if (policy.tryHedge()) {
+                hedges++;
+            }
+        }
+        Assert.assertTrue(hedges <= 100);
+        Assert.assertTrue(hedges >= 99);
+    }
+
+    @Test
+    public void noHedgesWithoutBudget()
+    {
+        HedgingPolicy policy = new HedgingPolicy(95.0, 0.0);
+        for (int i = 0; i < 1000; i++) {
+            policy.lookup();
+            Assert.assertFalse(policy.tryHedge());
+        }
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.iot.tiaki.commons.StatusCode;
+import org.eclipse.iot.tiaki.exceptions.LookupException;
+import org.eclipse.iot.tiaki.utils.DnsUtil;
+import org.eclipse.iot.tiaki.utils.StubResolver;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class LookupCoalescerTest
+{
+
+    private static final String NAME = "_coap._udp.example.com.";
+    private static final int CALLERS = 64;
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() { this.executor = Executors.newFixedThreadPool(CALLERS); }
+
+    @After
+    public void tearDown() { this.executor.shutdownNow(); }
+
+    @Test
+    public void concurrentCallersShareOneQuery() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final StubResolver resolver = new StubResolver(query -> {
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                return null;
+            }
+            Message response = new Message(query.getHeader().getID());
+            response.getHeader().setFlag(Flags.QR);
+            response.addRecord(query.getQuestion(), Section.QUESTION);
+            return response;
+        });
+        final LookupCoalescer<String, Message> coalescer = new LookupCoalescer<>();
+        final CountDownLatch arrived = new CountDownLatch(CALLERS);
+
+        List<Future<Message>> callers = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            callers.add(this.executor.submit(() -> {
+                arrived.countDown();
+                return coalescer.run(NAME, () -> DnsUtil.query(NAME, resolver, Type.PTR));
+            }));
+        }
+        Assert.assertTrue(arrived.await(5, TimeUnit.SECONDS));
+        // let the callers join the outstanding lookup
+        Thread.sleep(200L);
+        release.countDown();
+
+        Message shared = callers.get(0).get(5, TimeUnit.SECONDS);
+        for (Future<Message> caller : callers) {
+            Assert.assertSame(shared, caller.get(5, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, resolver.sent());
+        Assert.assertEquals(0, coalescer.outstanding());
+
+        // once completed, the key is released
+        coalescer.run(NAME, () -> DnsUtil.query(NAME, resolver, Type.PTR));
+        Assert.assertEquals(2, resolver.sent());
+    }
+
+    @Test
+    public void failureIsShared() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final LookupCoalescer<String, Message> coalescer = new LookupCoalescer<>();
+        Future<Message> leader = this.executor.submit(() -> coalescer.run(NAME, () -> {
+            release.await();
+            throw new LookupException(StatusCode.SERVER_ERROR, NAME);
+        }));
+        while (coalescer.outstanding() == 0) {
+            Thread.sleep(5L);
+        }
+        Future<Message> follower = this.executor.submit(() -> coalescer.run(NAME, () -> {
+            throw new AssertionError("Expected the outstanding lookup to be shared");
+        }));
+        Thread.sleep(100L);
+        release.countDown();
+
+        for (Future<Message> caller : Arrays.asList(leader, follower)) {
+            try {
+                caller.get(5, TimeUnit.SECONDS);
+                Assert.fail("Expected a LookupException");
+            } catch (ExecutionException ee) {
+                Assert.assertTrue(ee.getCause() instanceof LookupException);
+                Assert.assertEquals(StatusCode.SERVER_ERROR, ((LookupException) ee.getCause()).dnsError());
+            }
+        }
+    }
+
+    @Test
+    public void interruptedLeaderHandsOver() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final LookupCoalescer<String, String> coalescer = new LookupCoalescer<>();
+        Future<String> leader = this.executor.submit(() -> coalescer.run(NAME, () -> {
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                // as dnsjava does, reporting the interrupt as a failure but keeping the flag
+                Thread.currentThread().interrupt();
+                throw new LookupException(StatusCode.NETWORK_ERROR, NAME);
+            }
+            return "leader";
+        }));
+        while (coalescer.outstanding() == 0) {
+            Thread.sleep(5L);
+        }
+        Future<String> follower = this.executor.submit(() -> coalescer.run(NAME, () -> "follower"));
+        Thread.sleep(100L);
+        leader.cancel(true);
+
+        Assert.assertEquals("follower", follower.get(5, TimeUnit.SECONDS));
+        Assert.assertEquals(0, coalescer.outstanding());
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.iot.tiaki.utils.LoopbackUdpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.Type;
+
+public class MultiplexedUdpResolverTest
+{
+
+    private static final int QUERIES = 2000;
+
+    private UdpMultiplexer multiplexer;
+    private LoopbackUdpServer server;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.multiplexer = new UdpMultiplexer(2);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.multiplexer.close();
+        if (this.server != null) {
+            this.server.close();
+        }
+    }
+
+    @Test
+    public void sendMatchesResponse() throws Exception
+    {
+        this.server = new LoopbackUdpServer(LoopbackUdpServer::answer);
+        MultiplexedUdpResolver resolver = new MultiplexedUdpResolver(this.server.address(), this.multiplexer);
+
+        Message query = query("host.example.com.");
+        int id = query.getHeader().getID();
+        Message response = resolver.send(query);
+        Assert.assertEquals(id, response.getHeader().getID());
+        Assert.assertEquals(id, query.getHeader().getID());
+        Assert.assertEquals(query.getQuestion(), response.getQuestion());
+        Assert.assertEquals(1, response.getSectionArray(Section.ANSWER).length);
+        Assert.assertEquals(0, this.multiplexer.outstanding());
+    }
+
+    @Test
+    public void outstandingQueriesShareTheTransport() throws Exception
+    {
+        this.server = new LoopbackUdpServer(LoopbackUdpServer::answer);
+        MultiplexedUdpResolver resolver = new MultiplexedUdpResolver(this.server.address(), this.multiplexer);
+        resolver.setTimeout(10);
+
+        final CountDownLatch done = new CountDownLatch(QUERIES);
+        final AtomicInteger matched = new AtomicInteger();
+        for (int i = 0; i < QUERIES; i++) {
+            final Message query = query("host" + i + ".example.com.");
+            resolver.sendAsync(query, new ResolverListener() {
+                @Override
+                public void receiveMessage(Object id, Message response)
+                {
+                    if (query.getQuestion().equals(response.getQuestion())
+                            && query.getHeader().getID() == response.getHeader().getID()) {
+                        matched.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void handleException(Object id, Exception e)
+                {
+                    done.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+        // a datagram might be dropped by the loopback under load: a few timeouts are tolerated
+        Assert.assertTrue(matched.get() > QUERIES * 0.95);
+        Assert.assertEquals(0, this.multiplexer.outstanding());
+    }
+
+    @Test
+    public void sourcePortsChange() throws Exception
+    {
+        this.server = new LoopbackUdpServer(LoopbackUdpServer::answer);
+        MultiplexedUdpResolver resolver = new MultiplexedUdpResolver(this.server.address(), this.multiplexer);
+
+        for (int i = 0; i < 1000; i++) {
+            resolver.send(query("host" + i + ".example.com."));
+        }
+        // 2 channels, replaced every few hundred queries at most
+        Assert.assertTrue(this.server.sourcePorts().size() > 4);
+        Assert.assertEquals(0, this.multiplexer.outstanding());
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void unansweredTimesOut() throws Exception
+    {
+        this.server = new LoopbackUdpServer(query -> null);
+        MultiplexedUdpResolver resolver = new MultiplexedUdpResolver(this.server.address(), this.multiplexer);
+        resolver.setTimeout(0, 200);
+
+        long start = System.nanoTime();
+        try {
+            resolver.send(query("host.example.com."));
+        } finally {
+            Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+            Assert.assertEquals(0, this.multiplexer.outstanding());
+        }
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void spoofedSourceIgnored() throws Exception
+    {
+        this.server = new LoopbackUdpServer(LoopbackUdpServer::answer, true);
+        MultiplexedUdpResolver resolver = new MultiplexedUdpResolver(this.server.address(), this.multiplexer);
+        resolver.setTimeout(0, 300);
+
+        resolver.send(query("host.example.com."));
+    }
+
+    @Test(expected = SocketTimeoutException.class)
+    public void foreignQuestionIgnored() throws Exception
+    {
+        this.server = new LoopbackUdpServer(query -> {
+            try {
+                Message response = LoopbackUdpServer.answer(query(("other.example.com.")));
+                response.getHeader().setID(query.getHeader().getID());
+                return response;
+            } catch (Exception e) {
+                return null;
+            }
+        });
+        MultiplexedUdpResolver resolver = new MultiplexedUdpResolver(this.server.address(), this.multiplexer);
+        resolver.setTimeout(0, 300);
+
+        resolver.send(query("host.example.com."));
+    }
+
+    private static Message query(String name) throws Exception
+    {
+        return Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+    }
+
+}
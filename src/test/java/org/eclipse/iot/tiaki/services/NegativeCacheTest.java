@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.iot.tiaki.commons.StatusCode;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbill.DNS.Type;
+
+public class NegativeCacheTest
+{
+
+    private static final String NAME = "_coap._tcp.example.com.";
+
+    private AtomicLong now;
+    private NegativeCache cache;
+
+    @Before
+    public void setUp()
+    {
+        this.now = new AtomicLong();
+        this.cache = new NegativeCache(2, 300L, this.now::get);
+    }
+
+    @Test
+    public void honoursSoaMinimum()
+    {
+        this.cache.put(NAME, Type.PTR, StatusCode.RESOLUTION_NAME_ERROR, 60L);
+
+        Assert.assertEquals(StatusCode.RESOLUTION_NAME_ERROR, this.cache.get(NAME.toUpperCase(), Type.PTR));
+        Assert.assertNull(this.cache.get(NAME, Type.SRV));
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+        Assert.assertNull(this.cache.get(NAME, Type.PTR));
+    }
+
+    @Test
+    public void cappedByCeiling()
+    {
+        this.cache.put(NAME, Type.TXT, StatusCode.RESOLUTION_RR_TYPE_ERROR, 86400L);
+
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(299));
+        Assert.assertEquals(StatusCode.RESOLUTION_RR_TYPE_ERROR, this.cache.get(NAME, Type.TXT));
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertNull(this.cache.get(NAME, Type.TXT));
+    }
+
+    @Test
+    public void skipsAnswersWithoutSoa()
+    {
+        this.cache.put(NAME, Type.PTR, StatusCode.RESOLUTION_NAME_ERROR, -1L);
+
+        Assert.assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed()
+    {
+        this.cache.put("a." + NAME, Type.PTR, StatusCode.RESOLUTION_NAME_ERROR, 60L);
+        this.cache.put("b." + NAME, Type.PTR, StatusCode.RESOLUTION_NAME_ERROR, 60L);
+        this.cache.get("a." + NAME, Type.PTR);
+        this.cache.put("c." + NAME, Type.PTR, StatusCode.RESOLUTION_NAME_ERROR, 60L);
+
+        Assert.assertNotNull(this.cache.get("a." + NAME, Type.PTR));
+        Assert.assertNull(this.cache.get("b." + NAME, Type.PTR));
+        Assert.assertEquals(2, this.cache.size());
+    }
+
+}
@@ -0,0 +1,399 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.iot.tiaki.commons.DiscoveryListener;
+import org.eclipse.iot.tiaki.commons.StatusCode;
+import org.eclipse.iot.tiaki.commons.QueryEvent;
+import org.eclipse.iot.tiaki.domain.CompoundLabel;
+import org.eclipse.iot.tiaki.domain.Fqdn;
+import org.eclipse.iot.tiaki.domain.InstanceProjection;
+import org.eclipse.iot.tiaki.domain.ServiceInstance;
+import org.eclipse.iot.tiaki.exceptions.LookupException;
+import org.eclipse.iot.tiaki.exceptions.UncheckedLookupException;
+import org.eclipse.iot.tiaki.utils.LoopbackUdpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.PTRRecord;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.TextParseException;
+import org.xbill.DNS.Type;
+
+/**
+ * Discoveries against an in-memory zone served on the loopback interface.
+ */
+public class OfflineDiscoveryTest
+{
+
+    private static final String DOMAIN = "example.com.";
+    private static final String TYPE_INDEX = "_services._dns-sd._udp." + DOMAIN;
+    private static final Record SOA;
+
+    static {
+        try {
+            SOA = new SOARecord(Name.fromString(DOMAIN), DClass.IN, 60L, Name.fromString("ns." + DOMAIN),
+                                Name.fromString("admin." + DOMAIN), 1L, 3600L, 600L, 86400L, 60L);
+        } catch (TextParseException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /** The zone, by owner name and type. */
+    private final Map<String, Record[]> zone = new ConcurrentHashMap<>();
+    /** Queries received, by question. */
+    private final Map<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+    /** Questions answered with SERVFAIL, by owner name and type. */
+    private final Set<String> failing = ConcurrentHashMap.newKeySet();
+    /** Time taken to answer, in milliseconds. */
+    private final Set<String> slow = ConcurrentHashMap.newKeySet();
+    private volatile long delay;
+    private LoopbackUdpServer server;
+    private DnsServicesDiscovery discovery;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        add(new PTRRecord(name(TYPE_INDEX), DClass.IN, 60L, name("_ipp._tcp." + DOMAIN)));
+        add(new PTRRecord(name(TYPE_INDEX), DClass.IN, 60L, name("_ipp._udp." + DOMAIN)));
+        add(new PTRRecord(name(TYPE_INDEX), DClass.IN, 60L, name("_http._tcp." + DOMAIN)));
+        // listed, but with no instance
+        add(new PTRRecord(name(TYPE_INDEX), DClass.IN, 60L, name("_gone._tcp." + DOMAIN)));
+        instance("printer", "_ipp._tcp." + DOMAIN);
+        instance("scanner", "_ipp._udp." + DOMAIN);
+        instance("web", "_http._tcp." + DOMAIN);
+
+        this.server = new LoopbackUdpServer(this::answer);
+        InetSocketAddress address = this.server.address();
+        this.discovery = new DnsServicesDiscovery();
+        this.discovery.dnsServer(address.getAddress(), address.getPort()).checkConfiguration(true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.server.close();
+    }
+
+    @Test
+    public void typeWithoutProtocolEnumeratesIndexOnce() throws Exception
+    {
+        Set<ServiceInstance> instances = this.discovery.listServiceInstances(new Fqdn(DOMAIN),
+                                                                             new CompoundLabel("ipp"), false);
+
+        Set<String> hosts = new TreeSet<>();
+        for (ServiceInstance instance : instances) {
+            hosts.add(instance.getServiceRecord().getHost());
+        }
+        Assert.assertEquals(2, instances.size());
+        Assert.assertTrue(hosts.contains("printer." + DOMAIN));
+        Assert.assertTrue(hosts.contains("scanner." + DOMAIN));
+        Assert.assertEquals(1, sent(TYPE_INDEX, Type.PTR));
+        Assert.assertEquals(1, sent("_ipp._tcp." + DOMAIN, Type.PTR));
+        Assert.assertEquals(1, sent("_ipp._udp." + DOMAIN, Type.PTR));
+        Assert.assertEquals(0, sent("_http._tcp." + DOMAIN, Type.PTR));
+    }
+
+    @Test
+    public void additionalRecordsServedFromCache() throws Exception
+    {
+        this.discovery.additionalRecords(true).resultCacheSize(0).checkConfiguration(true);
+        Fqdn domain = new Fqdn(DOMAIN);
+        CompoundLabel type = new CompoundLabel("ipp", "", "tcp");
+
+        Set<ServiceInstance> instances = this.discovery.listServiceInstances(domain, type, false);
+        Assert.assertEquals(1, instances.size());
+        // the type index and the type, the SRV and TXT records come along
+        Assert.assertEquals(2, this.server.received());
+        Assert.assertEquals(instances, this.discovery.listServiceInstances(domain, type, false));
+        Assert.assertEquals("Expected the answers and their Additional sections to be cached",
+                            2, this.server.received());
+
+        // a denial is cached as well
+        CompoundLabel missing = new CompoundLabel("gone", "", "tcp");
+        for (int i = 0; i < 2; i++) {
+            try {
+                this.discovery.listServiceInstances(domain, missing, false);
+            } catch (LookupException expected) { /* no instance */ }
+        }
+        Assert.assertEquals(1, sent("_gone._tcp." + DOMAIN, Type.PTR));
+    }
+
+    @Test
+    public void instancesFromCachedRecordsNotKept() throws Exception
+    {
+        List<String> hits = new CopyOnWriteArrayList<>();
+        this.discovery.resultCacheSize(100).introspected(true).observer((observable, what) -> {
+            if (String.valueOf(what).contains("Cached Service Instances")) {
+                hits.add(String.valueOf(what));
+            }
+        }).checkConfiguration(true);
+        Fqdn domain = new Fqdn(DOMAIN);
+        CompoundLabel type = new CompoundLabel("http", "", "tcp");
+
+        this.discovery.listServiceInstances(domain, type, InstanceProjection.SRV, false);
+        this.discovery.listServiceInstances(domain, type, InstanceProjection.SRV, false);
+        Assert.assertEquals(1, hits.size());
+
+        // the PTR and SRV records now come from the records cache, of unknown age
+        this.discovery.listServiceInstances(domain, type, false);
+        this.discovery.listServiceInstances(domain, type, false);
+        Assert.assertEquals(1, hits.size());
+        Assert.assertEquals(1, sent("_http._tcp." + DOMAIN, Type.PTR));
+    }
+
+    @Test
+    public void asyncProjectionLeavesTextRecordOut() throws Exception
+    {
+        Set<ServiceInstance> instances = this.discovery.listServiceInstancesAsync(new Fqdn(DOMAIN),
+                new CompoundLabel("http", "", "tcp"), InstanceProjection.SRV, false, Runnable::run)
+                                                      .get(5, TimeUnit.SECONDS);
+
+        Assert.assertEquals(1, instances.size());
+        ServiceInstance instance = instances.iterator().next();
+        Assert.assertFalse(instance.isTextRecordResolved());
+        Assert.assertEquals(0, sent("web._http._tcp." + DOMAIN, Type.TXT));
+        Assert.assertNotNull(instance.getTextRecord());
+        Assert.assertEquals(1, sent("web._http._tcp." + DOMAIN, Type.TXT));
+    }
+
+    @Test
+    public void abandonedQueryNotReportedAsFailed() throws Exception
+    {
+        List<QueryEvent> failed = new CopyOnWriteArrayList<>();
+        this.discovery.listener(new DiscoveryListener() {
+            @Override
+            public void queryFailed(QueryEvent event)
+            {
+                failed.add(event);
+            }
+        });
+
+        // dnsjava swallows interrupts while seeding its source ports generator, on first use
+        this.discovery.listServiceTypes(new Fqdn(DOMAIN), false);
+        // as a hedge loser or a cancelled lookup is
+        Thread.currentThread().interrupt();
+        try {
+            this.discovery.listTextRecords(new Fqdn(DOMAIN), "silent", false);
+            Assert.fail("Unanswered query expected");
+        } catch (LookupException expected) {
+            Assert.assertTrue(Thread.interrupted());
+        }
+        Assert.assertEquals(1, sent("silent." + DOMAIN, Type.TXT));
+        Assert.assertTrue(failed.isEmpty());
+    }
+
+    @Test
+    public void failedTextRecordResolvedAgain() throws Exception
+    {
+        add(new PTRRecord(name(TYPE_INDEX), DClass.IN, 60L, name("_coap._udp." + DOMAIN)));
+        instance("flaky", "_coap._udp." + DOMAIN);
+        String name = "flaky._coap._udp." + DOMAIN;
+        this.failing.add(name + "/" + Type.TXT);
+        Set<ServiceInstance> instances = this.discovery.listServiceInstances(new Fqdn(DOMAIN),
+                new CompoundLabel("coap", "", "udp"), InstanceProjection.SRV, false);
+        ServiceInstance instance = instances.iterator().next();
+
+        try {
+            instance.getTextRecord();
+            Assert.fail("TXT failure expected");
+        } catch (UncheckedLookupException expected) {
+            Assert.assertEquals(StatusCode.NETWORK_ERROR, expected.getCause().dnsError());
+            Assert.assertFalse(instance.isTextRecordResolved());
+        }
+
+        this.failing.remove(name + "/" + Type.TXT);
+        Assert.assertNotNull(instance.getTextRecord());
+        Assert.assertEquals(2, sent(name, Type.TXT));
+    }
+
+    @Test
+    public void concurrentListingsShareQueries() throws Exception
+    {
+        this.discovery.resultCacheSize(0).checkConfiguration(true);
+        this.delay = 100L;
+        final int callers = 16;
+        final CyclicBarrier start = new CyclicBarrier(callers);
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            List<Future<Set<ServiceInstance>>> listings = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                listings.add(executor.submit(() -> {
+                    start.await();
+                    return this.discovery.listServiceInstances(new Fqdn(DOMAIN),
+                                                               new CompoundLabel("http", "", "tcp"), false);
+                }));
+            }
+            Set<ServiceInstance> shared = listings.get(0).get(10, TimeUnit.SECONDS);
+            Assert.assertEquals(1, shared.size());
+            for (Future<Set<ServiceInstance>> listing : listings) {
+                Assert.assertEquals(shared, listing.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assert.assertEquals(1, sent("_http._tcp." + DOMAIN, Type.PTR));
+        Assert.assertEquals(1, sent("web._http._tcp." + DOMAIN, Type.SRV));
+        Assert.assertEquals(1, sent("web._http._tcp." + DOMAIN, Type.TXT));
+    }
+
+    @Test
+    public void lookupPoolReplacedDuringListing() throws Exception
+    {
+        instance("www", "_http._tcp." + DOMAIN);
+        this.discovery.lookupConcurrency(2).resultCacheSize(0).checkConfiguration(true);
+        this.slow.add("web._http._tcp." + DOMAIN + "/" + Type.SRV);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Set<ServiceInstance>> listing = executor.submit(() -> this.discovery.listServiceInstances(
+                    new Fqdn(DOMAIN), new CompoundLabel("http", "", "tcp"), InstanceProjection.SRV_TXT_TLSA, false));
+            while (sent("web._http._tcp." + DOMAIN, Type.SRV) == 0) {
+                Thread.sleep(10L);
+            }
+
+            // the listing holds the former pool while waiting for the SRV records, then submits the TLSA lookups
+            this.discovery.lookupConcurrency(3);
+            this.discovery.listServiceInstances(new Fqdn(DOMAIN), new CompoundLabel("ipp", "", "tcp"), false);
+            Assert.assertEquals(2, listing.get(10, TimeUnit.SECONDS).size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cachedLookupsDoNotFundHedges() throws Exception
+    {
+        LoopbackUdpServer other = new LoopbackUdpServer(this::answer);
+        try {
+            InetSocketAddress first = this.server.address();
+            InetSocketAddress second = other.address();
+            this.discovery = new DnsServicesDiscovery();
+            this.discovery.dnsServer(first.getAddress(), first.getPort())
+                          .dnsServer(second.getAddress(), second.getPort())
+                          .hedging(50.0, 0.3).checkConfiguration(true);
+            Fqdn domain = new Fqdn(DOMAIN);
+            for (int i = 0; i < 20; i++) {
+                this.discovery.listTextRecords(domain, "web._http._tcp", false);
+            }
+            Assert.assertEquals(1, sent("web._http._tcp." + DOMAIN, Type.TXT));
+
+            // funded by the first lookup and its own only, the budget does not afford a hedge
+            this.delay = 800L;
+            this.discovery.listTextRecords(domain, "printer._ipp._tcp", false);
+            Assert.assertEquals(0, this.discovery.statistics().getHedges());
+        } finally {
+            other.close();
+        }
+    }
+
+    private void instance(String host, String type) throws Exception
+    {
+        String name = host + "." + type;
+        add(new PTRRecord(name(type), DClass.IN, 60L, name(name)));
+        add(new SRVRecord(name(name), DClass.IN, 60L, 0, 0, 631, name(host + "." + DOMAIN)));
+        add(new TXTRecord(name(name), DClass.IN, 60L, "txtvers=1"));
+    }
+
+    private void add(Record record)
+    {
+        this.zone.merge(record.getName() + "/" + record.getType(), new Record[] { record }, (one, other) -> {
+            Record[] merged = new Record[one.length + other.length];
+            System.arraycopy(one, 0, merged, 0, one.length);
+            System.arraycopy(other, 0, merged, one.length, other.length);
+            return merged;
+        });
+    }
+
+    private int sent(String name, int rrType)
+    {
+        AtomicInteger count = this.queries.get(name + "/" + rrType);
+
+        return (count == null ? 0 : count.get());
+    }
+
+    /**
+     * Answer from the zone, NXDOMAIN if nothing matches the question, SERVFAIL for the failing questions,
+     * nothing at all for the names starting with <code>silent</code>, half a second late for the slow questions.
+     */
+    private Message answer(Message query)
+    {
+        Record question = query.getQuestion();
+        String key = question.getName() + "/" + question.getType();
+        this.queries.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+        if (this.delay > 0 || this.slow.contains(key)) {
+            try {
+                Thread.sleep(this.slow.contains(key) ? 500L : this.delay);
+            } catch (InterruptedException ie) {
+                return null;
+            }
+        }
+
+        Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        response.getHeader().setFlag(Flags.RA);
+        response.addRecord(question, Section.QUESTION);
+        Record[] records = this.zone.get(key);
+        if (question.getName().toString().startsWith("silent.")) {
+            return null;
+        }
+        if (this.failing.contains(key)) {
+            response.getHeader().setRcode(Rcode.SERVFAIL);
+            return response;
+        }
+        if (records == null) {
+            response.getHeader().setRcode(Rcode.NXDOMAIN);
+            response.addRecord(SOA, Section.AUTHORITY);
+            return response;
+        }
+        for (Record record : records) {
+            response.addRecord(record, Section.ANSWER);
+            if (record instanceof PTRRecord && question.getName().toString().startsWith("_ipp.")) {
+                Name target = ((PTRRecord) record).getTarget();
+                for (int rrType : new int[] { Type.SRV, Type.TXT }) {
+                    for (Record extra : this.zone.get(target + "/" + rrType)) {
+                        response.addRecord(extra, Section.ADDITIONAL);
+                    }
+                }
+            }
+        }
+
+        return response;
+    }
+
+    private static Name name(String name) throws Exception
+    {
+        return Name.fromString(name);
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.iot.tiaki.utils.LoopbackTcpServer;
+import org.eclipse.iot.tiaki.utils.LoopbackUdpServer;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+
+public class PipelinedTcpResolverTest
+{
+
+    private LoopbackTcpServer server;
+    private TcpPipeline pipeline;
+
+    @After
+    public void tearDown() throws Exception
+    {
+        if (this.pipeline != null) {
+            this.pipeline.close();
+        }
+        if (this.server != null) {
+            this.server.close();
+        }
+    }
+
+    @Test
+    public void connectionIsReused() throws Exception
+    {
+        this.server = new LoopbackTcpServer(LoopbackUdpServer::answer);
+        PipelinedTcpResolver resolver = resolver(10000L, 8);
+
+        for (int i = 0; i < 5; i++) {
+            Message query = query("host" + i + ".example.com.");
+            Message response = resolver.send(query);
+            Assert.assertEquals(query.getHeader().getID(), response.getHeader().getID());
+            Assert.assertEquals(query.getQuestion(), response.getQuestion());
+        }
+        Assert.assertEquals(1, this.server.connections());
+        Assert.assertEquals(1, this.pipeline.connections());
+    }
+
+    @Test
+    public void responsesMatchedOutOfOrder() throws Exception
+    {
+        this.server = new LoopbackTcpServer(LoopbackUdpServer::answer, 4, false);
+        PipelinedTcpResolver resolver = resolver(10000L, 4);
+
+        assertAnswered(resolver, 4);
+        Assert.assertEquals(1, this.server.connections());
+    }
+
+    @Test
+    public void furtherConnectionOnceFull() throws Exception
+    {
+        // unanswered queries, so that none of them leaves room for another one
+        this.server = new LoopbackTcpServer(query -> null);
+        PipelinedTcpResolver resolver = resolver(10000L, 2);
+
+        for (int i = 0; i < 5; i++) {
+            resolver.exchange(query("host" + i + ".example.com."));
+        }
+        Assert.assertEquals(3, this.pipeline.connections());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (this.server.received() < 5 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(5, this.server.received());
+        Assert.assertEquals(3, this.server.connections());
+    }
+
+    @Test
+    public void idleConnectionIsClosed() throws Exception
+    {
+        this.server = new LoopbackTcpServer(LoopbackUdpServer::answer);
+        PipelinedTcpResolver resolver = resolver(100L, 8);
+
+        resolver.send(query("host.example.com."));
+        Assert.assertEquals(1, this.pipeline.connections());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (this.pipeline.connections() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(0, this.pipeline.connections());
+
+        resolver.send(query("host.example.com."));
+        Assert.assertEquals(2, this.server.connections());
+    }
+
+    @Test
+    public void responseSplitAcrossReadTimeouts() throws Exception
+    {
+        // the read timeout, i.e. the idle one, expires between the two bytes of the length
+        this.server = new LoopbackTcpServer(LoopbackUdpServer::answer, 1, false, 300L);
+        PipelinedTcpResolver resolver = resolver(50L, 8);
+
+        for (int i = 0; i < 2; i++) {
+            Message query = query("host" + i + ".example.com.");
+            Assert.assertEquals(query.getQuestion(), resolver.send(query).getQuestion());
+        }
+        Assert.assertEquals(1, this.server.connections());
+    }
+
+    @Test
+    public void connectionClosedByServerIsReopened() throws Exception
+    {
+        this.server = new LoopbackTcpServer(LoopbackUdpServer::answer, 1, true);
+        PipelinedTcpResolver resolver = resolver(10000L, 8);
+
+        for (int i = 0; i < 3; i++) {
+            Message query = query("host" + i + ".example.com.");
+            Assert.assertEquals(query.getQuestion(), resolver.send(query).getQuestion());
+        }
+        Assert.assertTrue(this.server.connections() >= 3);
+    }
+
+    @Test
+    public void unansweredTimesOut() throws Exception
+    {
+        this.server = new LoopbackTcpServer(query -> null);
+        PipelinedTcpResolver resolver = resolver(10000L, 8);
+        resolver.setTimeout(0, 200);
+
+        try {
+            resolver.send(query("host.example.com."));
+            Assert.fail("Timeout expected");
+        } catch (SocketTimeoutException expected) {
+            // the connection is kept for the next queries
+            Assert.assertEquals(1, this.pipeline.connections());
+        }
+    }
+
+    private PipelinedTcpResolver resolver(long idleTimeout, int maxInFlight)
+    {
+        this.pipeline = new TcpPipeline(this.server.address(), idleTimeout, maxInFlight);
+
+        return new PipelinedTcpResolver(this.pipeline);
+    }
+
+    private static void assertAnswered(PipelinedTcpResolver resolver, int queries) throws Exception
+    {
+        List<Message> sent = new ArrayList<>();
+        List<CompletableFuture<Message>> responses = new ArrayList<>();
+        for (int i = 0; i < queries; i++) {
+            Message query = query("host" + i + ".example.com.");
+            sent.add(query);
+            responses.add(resolver.exchange(query));
+        }
+        for (int i = 0; i < queries; i++) {
+            Message response = responses.get(i).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals(sent.get(i).getHeader().getID(), response.getHeader().getID());
+            Assert.assertEquals(sent.get(i).getQuestion(), response.getQuestion());
+        }
+    }
+
+    private static Message query(String name) throws Exception
+    {
+        return Message.newQuery(Record.newRecord(Name.fromString(name), Type.A, DClass.IN));
+    }
+
+}
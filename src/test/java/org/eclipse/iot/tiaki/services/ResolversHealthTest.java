@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.iot.tiaki.utils.StubResolver;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.xbill.DNS.Resolver;
+
+public class ResolversHealthTest
+{
+
+    private AtomicLong now;
+    private ResolversHealth health;
+    private Map<String, Resolver> resolvers;
+
+    @Before
+    public void setUp()
+    {
+        this.now = new AtomicLong();
+        this.health = new ResolversHealth(this.now::get);
+        this.resolvers = new LinkedHashMap<>();
+        for (String server : Arrays.asList("10.0.0.1", "10.0.0.2", "10.0.0.3")) {
+            this.resolvers.put(server, new StubResolver(query -> null));
+        }
+    }
+
+    @Test
+    public void unknownKeepConfigurationOrder()
+    {
+        assertRanking("10.0.0.1", "10.0.0.2", "10.0.0.3");
+    }
+
+    @Test
+    public void fasterFirst()
+    {
+        for (int i = 0; i < 10; i++) {
+            this.health.record("10.0.0.1", 300L, false);
+            this.health.record("10.0.0.2", 20L, false);
+            this.health.record("10.0.0.3", 80L, false);
+        }
+        assertRanking("10.0.0.2", "10.0.0.3", "10.0.0.1");
+    }
+
+    @Test
+    public void failuresPenalized()
+    {
+        for (int i = 0; i < 10; i++) {
+            this.health.record("10.0.0.1", 20L, i % 2 == 0);
+            this.health.record("10.0.0.2", 60L, false);
+            this.health.record("10.0.0.3", 60L, false);
+        }
+        assertRanking("10.0.0.2", "10.0.0.3", "10.0.0.1");
+    }
+
+    @Test
+    public void circuitOpensAndBacksOff()
+    {
+        this.health.record("10.0.0.2", 10L, false);
+        this.health.record("10.0.0.3", 10L, false);
+        for (int i = 0; i < 3; i++) {
+            this.health.record("10.0.0.1", 5000L, true);
+        }
+        Assert.assertTrue(this.health.isOpen("10.0.0.1"));
+        assertRanking("10.0.0.2", "10.0.0.3", "10.0.0.1");
+
+        // back-off expired: given another chance, then doubled upon a further failure
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertFalse(this.health.isOpen("10.0.0.1"));
+        this.health.record("10.0.0.1", 5000L, true);
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(1500));
+        Assert.assertTrue(this.health.isOpen("10.0.0.1"));
+        this.now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        Assert.assertFalse(this.health.isOpen("10.0.0.1"));
+
+        // a success closes it
+        this.health.record("10.0.0.1", 10L, false);
+        this.health.record("10.0.0.1", 10L, true);
+        Assert.assertFalse(this.health.isOpen("10.0.0.1"));
+    }
+
+    private void assertRanking(String... expected)
+    {
+        Iterator<String> ranked = this.health.rank(this.resolvers).keySet().iterator();
+        for (String server : expected) {
+            Assert.assertEquals(server, ranked.next());
+        }
+        Assert.assertFalse(ranked.hasNext());
+    }
+
+}
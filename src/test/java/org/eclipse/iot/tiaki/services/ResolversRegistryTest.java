@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.iot.tiaki.commons.Constants;
+import org.eclipse.iot.tiaki.commons.ResolverEndpoint;
+import org.eclipse.iot.tiaki.commons.Transport;
+import org.eclipse.iot.tiaki.utils.LoopbackTcpServer;
+import org.eclipse.iot.tiaki.utils.LoopbackUdpServer;
+import org.jitsi.dnssec.validator.ValidatingResolver;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.SimpleResolver;
+import org.xbill.DNS.Type;
+
+public class ResolversRegistryTest
+{
+
+    @Test
+    public void resolversByServerAndMode() throws Exception
+    {
+        ResolversRegistry registry = ResolversRegistry.build(
+                Arrays.asList(ResolverEndpoint.of(InetAddress.getByName("127.0.0.1")),
+                              ResolverEndpoint.of(InetAddress.getByName("127.0.0.2"), 5353)),
+                Constants.DEFAULT_TRUST_ANCHOR);
+
+        Map<String, Resolver> plain = registry.resolvers(false);
+        Map<String, Resolver> validating = registry.resolvers(true);
+        Iterator<String> servers = plain.keySet().iterator();
+        Assert.assertEquals("127.0.0.1", servers.next());
+        Assert.assertEquals("127.0.0.2#5353", servers.next());
+        Assert.assertEquals(plain.keySet(), validating.keySet());
+        for (String server : plain.keySet()) {
+            Assert.assertTrue(plain.get(server) instanceof SimpleResolver);
+            Assert.assertTrue(validating.get(server) instanceof ValidatingResolver);
+        }
+    }
+
+    @Test
+    public void resolversAreShared() throws Exception
+    {
+        ResolversRegistry registry = ResolversRegistry.build(
+                Arrays.asList(ResolverEndpoint.of(InetAddress.getByName("127.0.0.1"))), Constants.DEFAULT_TRUST_ANCHOR);
+
+        Assert.assertSame(registry.resolvers(false).get("127.0.0.1"), registry.resolvers(false).get("127.0.0.1"));
+        Assert.assertSame(registry.resolvers(true).get("127.0.0.1"), registry.resolvers(true).get("127.0.0.1"));
+    }
+
+    @Test
+    public void serverOfResolver() throws Exception
+    {
+        ResolversRegistry registry = ResolversRegistry.build(
+                Arrays.asList(ResolverEndpoint.of(InetAddress.getByName("127.0.0.2"), 5353)), Constants.DEFAULT_TRUST_ANCHOR);
+
+        Assert.assertEquals("127.0.0.2#5353", registry.serverOf(registry.resolvers(false).get("127.0.0.2#5353")));
+        Assert.assertEquals("127.0.0.2#5353", registry.serverOf(registry.resolvers(true).get("127.0.0.2#5353")));
+        Assert.assertNull(registry.serverOf(null));
+    }
+
+    @Test
+    public void closedRegistryReleasesConnections() throws Exception
+    {
+        try (LoopbackTcpServer server = new LoopbackTcpServer(LoopbackUdpServer::answer)) {
+            ResolversRegistry registry = ResolversRegistry.build(
+                    Arrays.asList(ResolverEndpoint.of(server.address().getAddress(), server.address().getPort())),
+                    Constants.DEFAULT_TRUST_ANCHOR, Transport.PIPELINED_TCP);
+            Resolver resolver = registry.resolvers(false).values().iterator().next();
+
+            resolver.send(Message.newQuery(Record.newRecord(Name.fromString("host.example.com."), Type.A, DClass.IN)));
+            registry.close();
+            try {
+                resolver.send(Message.newQuery(Record.newRecord(Name.fromString("host.example.com."), Type.A,
+                                                                DClass.IN)));
+                Assert.fail("Closed transport expected");
+            } catch (IOException expected) {
+                Assert.assertEquals(1, server.connections());
+            }
+        }
+    }
+
+    @Test
+    public void retiredRegistryAnswersInFlight() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        try (LoopbackTcpServer server = new LoopbackTcpServer(query -> {
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                return null;
+            }
+            return LoopbackUdpServer.answer(query);
+        })) {
+            ResolversRegistry registry = ResolversRegistry.build(
+                    Arrays.asList(ResolverEndpoint.of(server.address().getAddress(), server.address().getPort())),
+                    Constants.DEFAULT_TRUST_ANCHOR, Transport.PIPELINED_TCP);
+            final Resolver resolver = registry.resolvers(false).values().iterator().next();
+            final Message query = Message.newQuery(Record.newRecord(Name.fromString("host.example.com."), Type.A,
+                                                                    DClass.IN));
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Message> inFlight = executor.submit(() -> resolver.send(query));
+                while (server.received() == 0) {
+                    Thread.sleep(5L);
+                }
+                registry.retire();
+                release.countDown();
+                Assert.assertNotNull(inFlight.get(5, TimeUnit.SECONDS));
+            } finally {
+                executor.shutdownNow();
+            }
+
+            // the drained connection is closed, a further query opening a new one
+            Assert.assertNotNull(resolver.send(Message.newQuery(Record.newRecord(Name.fromString("host.example.com."),
+                                                                                 Type.A, DClass.IN))));
+            Assert.assertEquals(2, server.connections());
+        }
+    }
+
+    @Test
+    public void multiplexedTransport() throws Exception
+    {
+        ResolversRegistry registry = ResolversRegistry.build(
+                Arrays.asList(ResolverEndpoint.of(InetAddress.getByName("127.0.0.1"))), Constants.DEFAULT_TRUST_ANCHOR,
+                Transport.MULTIPLEXED_UDP);
+
+        Assert.assertTrue(registry.resolvers(false).get("127.0.0.1") instanceof MultiplexedUdpResolver);
+        Assert.assertEquals("127.0.0.1", registry.serverOf(registry.resolvers(true).get("127.0.0.1")));
+    }
+
+    @Test
+    public void pipelinedTransport() throws Exception
+    {
+        ResolversRegistry registry = ResolversRegistry.build(
+                Arrays.asList(ResolverEndpoint.of(InetAddress.getByName("127.0.0.1"))), Constants.DEFAULT_TRUST_ANCHOR,
+                new TransportSettings(Transport.PIPELINED_TCP, 1000L, 4, 0, false, new LookupStatistics()));
+
+        Assert.assertTrue(registry.resolvers(false).get("127.0.0.1") instanceof PipelinedTcpResolver);
+        Assert.assertEquals("127.0.0.1", registry.serverOf(registry.resolvers(true).get("127.0.0.1")));
+    }
+
+    @Test
+    public void newResolverWithRegistrySettings() throws Exception
+    {
+        ResolverEndpoint endpoint = ResolverEndpoint.of(InetAddress.getByName("127.0.0.1"));
+        ResolversRegistry registry = ResolversRegistry.build(Arrays.asList(endpoint), Constants.DEFAULT_TRUST_ANCHOR,
+                new TransportSettings(Transport.PIPELINED_TCP, 1000L, 4, 4096, false, new LookupStatistics()));
+
+        Resolver resolver = registry.newResolver(endpoint);
+        Assert.assertTrue(resolver instanceof EdnsResolver);
+        Assert.assertNotSame(registry.resolvers(false).get("127.0.0.1"), resolver);
+        Assert.assertNull(registry.serverOf(resolver));
+    }
+
+    @Test
+    public void ednsNegotiated() throws Exception
+    {
+        ResolversRegistry registry = ResolversRegistry.build(
+                Arrays.asList(ResolverEndpoint.of(InetAddress.getByName("127.0.0.1"))), Constants.DEFAULT_TRUST_ANCHOR,
+                new TransportSettings(Transport.SIMPLE, 1000L, 4, 4096, false, new LookupStatistics()));
+
+        Assert.assertTrue(registry.resolvers(false).get("127.0.0.1") instanceof EdnsResolver);
+        Assert.assertTrue(registry.resolvers(true).get("127.0.0.1") instanceof ValidatingResolver);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void resolversAreImmutable() throws Exception
+    {
+        ResolversRegistry registry = ResolversRegistry.build(
+                Arrays.asList(ResolverEndpoint.of(InetAddress.getByName("127.0.0.1"))), Constants.DEFAULT_TRUST_ANCHOR);
+        registry.resolvers(false).clear();
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.iot.tiaki.domain.CompoundLabel;
+import org.eclipse.iot.tiaki.domain.DiscoveryRecordUtil;
+import org.eclipse.iot.tiaki.domain.Fqdn;
+import org.eclipse.iot.tiaki.domain.ServiceInstance;
+import org.eclipse.iot.tiaki.domain.ServiceRecord;
+import org.eclipse.iot.tiaki.domain.TextRecord;
+import static org.eclipse.iot.tiaki.domain.InstanceProjection.SRV;
+import static org.eclipse.iot.tiaki.domain.InstanceProjection.SRV_TXT;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ServiceInstancesCacheTest
+{
+
+    private static final Fqdn DOMAIN = new Fqdn("example.com");
+    private static final CompoundLabel COAP_UDP = new CompoundLabel("coap", "", "udp");
+    private static final CompoundLabel COAP_TCP = new CompoundLabel("coap", "", "tcp");
+
+    private AtomicLong now;
+    private ServiceInstancesCache cache;
+
+    @Before
+    public void setUp()
+    {
+        this.now = new AtomicLong();
+        this.cache = new ServiceInstancesCache(3, 600L, this.now::get);
+    }
+
+    @Test
+    public void hitUntilShortestTtlExpires() throws Exception
+    {
+        this.cache.put(DOMAIN, COAP_UDP, SRV_TXT, false, instances(2, 300L, 60L));
+
+        Assert.assertEquals(2, this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, false).size());
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        Assert.assertNotNull(this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, false));
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertNull(this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, false));
+        Assert.assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    public void expiresAtCeiling() throws Exception
+    {
+        this.cache.put(DOMAIN, COAP_UDP, SRV_TXT, false, instances(1, 3600L, 3600L));
+
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(600));
+        Assert.assertNull(this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, false));
+    }
+
+    @Test
+    public void keyedByProtocolAndSecurity() throws Exception
+    {
+        this.cache.put(DOMAIN, COAP_UDP, SRV_TXT, true, instances(1, 60L, 60L));
+
+        Assert.assertNull(this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, false));
+        Assert.assertNull(this.cache.get(DOMAIN, COAP_TCP, SRV_TXT, true));
+        Assert.assertNotNull(this.cache.get(new Fqdn("EXAMPLE.com"), COAP_UDP, SRV_TXT, true));
+    }
+
+    @Test
+    public void returnsCopies() throws Exception
+    {
+        this.cache.put(DOMAIN, COAP_UDP, SRV_TXT, false, instances(2, 60L, 60L));
+
+        this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, false).clear();
+        Assert.assertEquals(2, this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, false).size());
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedBySize() throws Exception
+    {
+        this.cache.put(DOMAIN, COAP_UDP, SRV_TXT, false, instances(2, 60L, 60L));
+        this.cache.put(DOMAIN, COAP_UDP, SRV_TXT, true, instances(1, 60L, 60L));
+        Assert.assertNotNull(this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, false));
+        this.cache.put(DOMAIN, COAP_TCP, SRV_TXT, false, instances(1, 60L, 60L));
+
+        Assert.assertNull(this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, true));
+        Assert.assertNotNull(this.cache.get(DOMAIN, COAP_UDP, SRV_TXT, false));
+        Assert.assertNotNull(this.cache.get(DOMAIN, COAP_TCP, SRV_TXT, false));
+    }
+
+    @Test
+    public void skipsUncacheableResults() throws Exception
+    {
+        this.cache.put(DOMAIN, COAP_UDP, SRV_TXT, false, new TreeSet<ServiceInstance>());
+        this.cache.put(DOMAIN, COAP_TCP, SRV_TXT, false, instances(1, 0L, 60L));
+        this.cache.put(DOMAIN, COAP_UDP, SRV_TXT, true, instances(4, 60L, 60L));
+
+        Assert.assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    public void keyedByProjection() throws Exception
+    {
+        this.cache.put(DOMAIN, COAP_UDP, SRV_TXT, false, instances(1, 60L, 60L));
+        Assert.assertNull(this.cache.get(DOMAIN, COAP_UDP, SRV, false));
+    }
+
+    @Test
+    public void lazyTextsDoNotResolve() throws Exception
+    {
+        ServiceRecord srv = ServiceRecord.build(
+                DiscoveryRecordUtil.createSrvRecord("host.example.com.", 5683, 0, 0, 60L));
+        Set<ServiceInstance> instances = new TreeSet<>();
+        instances.add(ServiceInstance.build("coap", srv, () -> {
+            throw new AssertionError("Expected the TXT record not to be resolved");
+        }));
+        this.cache.put(DOMAIN, COAP_UDP, SRV, false, instances);
+
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        Assert.assertNotNull(this.cache.get(DOMAIN, COAP_UDP, SRV, false));
+        this.now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        Assert.assertNull(this.cache.get(DOMAIN, COAP_UDP, SRV, false));
+    }
+
+    private static Set<ServiceInstance> instances(int count, long srvTtl, long txtTtl) throws Exception
+    {
+        Set<ServiceInstance> instances = new TreeSet<>();
+        for (int i = 0; i < count; i++) {
+            ServiceRecord srv = ServiceRecord.build(
+                    DiscoveryRecordUtil.createSrvRecord("host" + i + ".example.com.", 5683, i, 0, srvTtl));
+            TextRecord txt = TextRecord.build(DiscoveryRecordUtil.createTxtRecord("txtvers=1", txtTtl));
+            instances.add(new ServiceInstance("coap", srv, txt));
+        }
+
+        return instances;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.services;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimerWheelTest
+{
+
+    private TimerWheel<String> wheel;
+    private List<String> expired;
+
+    @Before
+    public void setUp()
+    {
+        this.wheel = new TimerWheel<>(8, 10L, TimeUnit.MILLISECONDS, 0L);
+        this.expired = new ArrayList<>();
+    }
+
+    @Test
+    public void expiresOnceDeadlinePassed()
+    {
+        this.wheel.schedule("a", millis(25));
+        this.wheel.schedule("b", millis(12));
+        advance(20);
+        Assert.assertEquals(Arrays.asList("b"), this.expired);
+        advance(30);
+        Assert.assertEquals(Arrays.asList("b", "a"), this.expired);
+        Assert.assertEquals(0, this.wheel.size());
+    }
+
+    @Test
+    public void expiresBeyondOneRound()
+    {
+        this.wheel.schedule("a", millis(1000));
+        advance(500);
+        Assert.assertTrue(this.expired.isEmpty());
+        advance(990);
+        Assert.assertTrue(this.expired.isEmpty());
+        advance(1000);
+        Assert.assertEquals(Arrays.asList("a"), this.expired);
+    }
+
+    @Test
+    public void cancelledNeverExpire()
+    {
+        this.wheel.schedule("a", millis(15)).cancel();
+        this.wheel.schedule("b", millis(15));
+        advance(100);
+        Assert.assertEquals(Arrays.asList("b"), this.expired);
+        Assert.assertEquals(0, this.wheel.size());
+    }
+
+    @Test
+    public void pastDeadlineExpiresNextTick()
+    {
+        advance(100);
+        this.wheel.schedule("a", millis(50));
+        advance(105);
+        Assert.assertTrue(this.expired.isEmpty());
+        advance(110);
+        Assert.assertEquals(Arrays.asList("a"), this.expired);
+    }
+
+    private void advance(long millis)
+    {
+        this.wheel.advance(millis(millis), this.expired::add);
+    }
+
+    private static long millis(long millis)
+    {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import java.net.InetAddress;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.iot.tiaki.commons.Constants;
+import org.eclipse.iot.tiaki.commons.ResolverEndpoint;
+import org.jitsi.dnssec.SecurityStatus;
+import org.jitsi.dnssec.validator.DnsSecVerifier;
+import org.jitsi.dnssec.validator.ValidatingResolver;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.DNSKEYRecord;
+import org.xbill.DNS.DNSSEC;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.TXTRecord;
+
+public class CachingVerifierTest
+{
+
+    private static final long TTL = 60L;
+
+    private static KeyPair pair;
+    private static KeyPair otherPair;
+
+    private final AtomicLong now = new AtomicLong(System.currentTimeMillis());
+    private final AtomicInteger verified = new AtomicInteger();
+    private CachingVerifier verifier;
+
+    @BeforeClass
+    public static void generateKeys() throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        pair = generator.generateKeyPair();
+        otherPair = generator.generateKeyPair();
+    }
+
+    @Before
+    public void setUp()
+    {
+        this.verifier = new CachingVerifier(new DnsSecVerifier() {
+            @Override
+            public SecurityStatus verify(RRset rrset, RRset keys)
+            {
+                CachingVerifierTest.this.verified.incrementAndGet();
+                return super.verify(rrset, keys);
+            }
+        }, 16, this.now::get);
+    }
+
+    @Test
+    public void secureOutcomeIsReused() throws Exception
+    {
+        RRset keys = keys(pair);
+        RRset rrset = signed(TTL, TimeUnit.HOURS.toMillis(1));
+
+        Assert.assertEquals(SecurityStatus.SECURE, this.verifier.verify(rrset, keys));
+        Assert.assertEquals(SecurityStatus.SECURE, this.verifier.verify(copy(rrset), keys));
+        Assert.assertEquals(1, this.verified.get());
+    }
+
+    @Test
+    public void outcomeExpiresWithTtl() throws Exception
+    {
+        RRset keys = keys(pair);
+        RRset rrset = signed(TTL, TimeUnit.HOURS.toMillis(1));
+
+        this.verifier.verify(rrset, keys);
+        this.now.addAndGet(TimeUnit.SECONDS.toMillis(TTL + 1));
+        Assert.assertEquals(SecurityStatus.SECURE, this.verifier.verify(rrset, keys));
+        Assert.assertEquals(2, this.verified.get());
+    }
+
+    @Test
+    public void outcomeExpiresWithSignature() throws Exception
+    {
+        RRset keys = keys(pair);
+        RRset rrset = signed(TimeUnit.DAYS.toSeconds(1), TimeUnit.MINUTES.toMillis(5));
+
+        this.verifier.verify(rrset, keys);
+        this.now.addAndGet(TimeUnit.MINUTES.toMillis(10));
+        this.verifier.verify(rrset, keys);
+        Assert.assertEquals(2, this.verified.get());
+    }
+
+    @Test
+    public void bogusOutcomeIsNotKept() throws Exception
+    {
+        RRset keys = keys(otherPair);
+        RRset rrset = signed(TTL, TimeUnit.HOURS.toMillis(1));
+
+        Assert.assertNotEquals(SecurityStatus.SECURE, this.verifier.verify(rrset, keys));
+        Assert.assertNotEquals(SecurityStatus.SECURE, this.verifier.verify(rrset, keys));
+        Assert.assertEquals(2, this.verified.get());
+    }
+
+    @Test
+    public void otherKeysAreVerified() throws Exception
+    {
+        RRset rrset = signed(TTL, TimeUnit.HOURS.toMillis(1));
+
+        Assert.assertEquals(SecurityStatus.SECURE, this.verifier.verify(rrset, keys(pair)));
+        Assert.assertNotEquals(SecurityStatus.SECURE, this.verifier.verify(rrset, keys(otherPair)));
+        Assert.assertEquals(2, this.verified.get());
+    }
+
+    @Test
+    public void validatorsShareVerifier() throws Exception
+    {
+        ValidatingResolver one = (ValidatingResolver) DnsUtil.getResolver(true, Constants.DEFAULT_TRUST_ANCHOR,
+                ResolverEndpoint.of(InetAddress.getByName("127.0.0.1")));
+        ValidatingResolver other = (ValidatingResolver) DnsUtil.getResolver(true, Constants.DEFAULT_TRUST_ANCHOR,
+                ResolverEndpoint.of(InetAddress.getByName("127.0.0.2")));
+
+        Assert.assertTrue(CachingVerifier.of(one) instanceof CachingVerifier);
+        Assert.assertSame(CachingVerifier.of(one), CachingVerifier.of(other));
+    }
+
+    private static RRset keys(KeyPair keyPair) throws Exception
+    {
+        return new RRset(key(keyPair));
+    }
+
+    private static DNSKEYRecord key(KeyPair keyPair) throws Exception
+    {
+        return new DNSKEYRecord(Name.fromString("example.com."), DClass.IN, 3600L, DNSKEYRecord.Flags.ZONE_KEY,
+                                DNSKEYRecord.Protocol.DNSSEC, DNSSEC.Algorithm.RSASHA256, keyPair.getPublic());
+    }
+
+    private static RRset signed(long ttl, long validity) throws Exception
+    {
+        RRset rrset = new RRset(new TXTRecord(Name.fromString("device._printer._tcp.example.com."), DClass.IN, ttl,
+                                              "txtvers=1"));
+        long now = System.currentTimeMillis();
+        rrset.addRR(DNSSEC.sign(rrset, key(pair), pair.getPrivate(), new Date(now - TimeUnit.HOURS.toMillis(1)),
+                                new Date(now + validity)));
+
+        return rrset;
+    }
+
+    /**
+     * Copy an RRset, as a further response would carry it.
+     */
+    private static RRset copy(RRset rrset)
+    {
+        return new RRset(rrset);
+    }
+
+}
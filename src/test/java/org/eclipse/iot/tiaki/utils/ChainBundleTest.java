@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.iot.tiaki.commons.StatusCode;
+import org.eclipse.iot.tiaki.domain.Fqdn;
+import org.eclipse.iot.tiaki.exceptions.LookupException;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.DNSKEYRecord;
+import org.xbill.DNS.DNSSEC;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.RRset;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.SRVRecord;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.Type;
+
+public class ChainBundleTest
+{
+
+    private static final String SERVICE = "device._printer._tcp.example.";
+
+    private static String trustAnchor;
+    private static String otherTrustAnchor;
+    /** The signed zone, by owner name and type. */
+    private static Map<String, RRset> zone = new HashMap<>();
+
+    @BeforeClass
+    public static void signZone() throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(1024);
+        KeyPair pair = generator.generateKeyPair();
+        DNSKEYRecord key = key(pair);
+        trustAnchor = key.toString();
+        otherTrustAnchor = key(generator.generateKeyPair()).toString();
+
+        Name service = Name.fromString(SERVICE);
+        sign(new RRset(key), key, pair);
+        sign(new RRset(new TXTRecord(service, DClass.IN, 3600L, "txtvers=1")), key, pair);
+        sign(new RRset(new SRVRecord(service, DClass.IN, 3600L, 0, 0, 631, Name.fromString("printer.example."))),
+             key, pair);
+    }
+
+    @Test
+    public void verifiedOffline() throws Exception
+    {
+        StubResolver head = new StubResolver(ChainBundleTest::answer);
+        byte[] wire = ChainBundle.collect(head, trustAnchor, new Fqdn(SERVICE), Type.SRV, Type.TXT).toWire();
+        Assert.assertEquals(3, head.sent());
+
+        ChainBundle bundle = ChainBundle.parse(wire);
+        Assert.assertEquals(3, bundle.size());
+        Record[] records = bundle.verify(trustAnchor, new Fqdn(SERVICE), Type.SRV, Type.TXT);
+        Assert.assertEquals(2, records.length);
+        Assert.assertEquals(Type.SRV, records[0].getType());
+        Assert.assertEquals(Type.TXT, records[1].getType());
+    }
+
+    @Test
+    public void otherTrustAnchorFails() throws Exception
+    {
+        byte[] wire = ChainBundle.collect(new StubResolver(ChainBundleTest::answer), trustAnchor,
+                                          new Fqdn(SERVICE), Type.TXT).toWire();
+        try {
+            ChainBundle.parse(wire).verify(otherTrustAnchor, new Fqdn(SERVICE), Type.TXT);
+            Assert.fail("Validation failure expected");
+        } catch (LookupException expected) {
+            Assert.assertNotEquals(StatusCode.SUCCESSFUL_OPERATION, expected.dnsError());
+        }
+    }
+
+    @Test
+    public void tamperedBundleFails() throws Exception
+    {
+        byte[] wire = ChainBundle.collect(new StubResolver(ChainBundleTest::answer), trustAnchor,
+                                          new Fqdn(SERVICE), Type.TXT).toWire();
+        byte[] txtvers = "txtvers=1".getBytes("US-ASCII");
+        for (int i = 0; i <= wire.length - txtvers.length; i++) {
+            if (Arrays.equals(txtvers, Arrays.copyOfRange(wire, i, i + txtvers.length))) {
+                wire[i + txtvers.length - 1] = '2';
+                break;
+            }
+        }
+        try {
+            ChainBundle.parse(wire).verify(trustAnchor, new Fqdn(SERVICE), Type.TXT);
+            Assert.fail("Validation failure expected");
+        } catch (LookupException expected) {
+            Assert.assertNotEquals(StatusCode.SUCCESSFUL_OPERATION, expected.dnsError());
+        }
+    }
+
+    @Test
+    public void malformedBundleFails() throws Exception
+    {
+        byte[] wire = ChainBundle.collect(new StubResolver(ChainBundleTest::answer), trustAnchor,
+                                          new Fqdn(SERVICE), Type.TXT).toWire();
+        try {
+            ChainBundle.parse(Arrays.copyOf(wire, wire.length - 1));
+            Assert.fail("Malformed bundle expected");
+        } catch (LookupException expected) {
+            Assert.assertEquals(StatusCode.DNSSEC_STATUS_ERROR, expected.dnsError());
+        }
+    }
+
+    @Test
+    public void otherRRsetsFail() throws Exception
+    {
+        ChainBundle bundle = ChainBundle.parse(ChainBundle.collect(new StubResolver(ChainBundleTest::answer),
+                                                                   trustAnchor, new Fqdn(SERVICE), Type.TXT).toWire());
+        for (Fqdn name : new Fqdn[] { new Fqdn(SERVICE), new Fqdn("other._printer._tcp.example.") }) {
+            try {
+                bundle.verify(trustAnchor, name, Type.SRV);
+                Assert.fail("Mismatching bundle expected");
+            } catch (LookupException expected) {
+                Assert.assertEquals(StatusCode.DNSSEC_STATUS_ERROR, expected.dnsError());
+            }
+        }
+        try {
+            bundle.verify(trustAnchor, new Fqdn(SERVICE), Type.TXT, Type.SRV);
+            Assert.fail("Mismatching bundle expected");
+        } catch (LookupException expected) {
+            Assert.assertEquals(StatusCode.DNSSEC_STATUS_ERROR, expected.dnsError());
+        }
+    }
+
+    @Test
+    public void noRRsetTypeFails() throws Exception
+    {
+        StubResolver head = new StubResolver(ChainBundleTest::answer);
+        try {
+            ChainBundle.collect(head, trustAnchor, new Fqdn(SERVICE));
+            Assert.fail("Missing types expected");
+        } catch (LookupException expected) {
+            Assert.assertEquals(StatusCode.RESOURCE_UNEXPECTED, expected.dnsError());
+        }
+        Assert.assertEquals(0, head.sent());
+
+        ChainBundle bundle = ChainBundle.parse(ChainBundle.collect(head, trustAnchor,
+                                                                   new Fqdn(SERVICE), Type.TXT).toWire());
+        try {
+            bundle.verify(trustAnchor, new Fqdn(SERVICE));
+            Assert.fail("Missing types expected");
+        } catch (LookupException expected) {
+            Assert.assertEquals(StatusCode.RESOURCE_UNEXPECTED, expected.dnsError());
+        }
+    }
+
+    @Test
+    public void duplicateResponseFails() throws Exception
+    {
+        byte[] wire = ChainBundle.collect(new StubResolver(ChainBundleTest::answer), trustAnchor,
+                                          new Fqdn(SERVICE), Type.TXT).toWire();
+        // the answer once more, as a chain response
+        int length = 2 + (((wire[3] & 0xFF) << 8) | (wire[4] & 0xFF));
+        byte[] duplicated = Arrays.copyOf(wire, wire.length + length);
+        System.arraycopy(wire, 3, duplicated, wire.length, length);
+        try {
+            ChainBundle.parse(duplicated);
+            Assert.fail("Malformed bundle expected");
+        } catch (LookupException expected) {
+            Assert.assertEquals(StatusCode.DNSSEC_STATUS_ERROR, expected.dnsError());
+        }
+    }
+
+    private static DNSKEYRecord key(KeyPair pair) throws Exception
+    {
+        return new DNSKEYRecord(Name.fromString("example."), DClass.IN, 3600L,
+                                DNSKEYRecord.Flags.ZONE_KEY | DNSKEYRecord.Flags.SEP_KEY,
+                                DNSKEYRecord.Protocol.DNSSEC, DNSSEC.Algorithm.RSASHA256, pair.getPublic());
+    }
+
+    private static void sign(RRset rrset, DNSKEYRecord key, KeyPair pair) throws Exception
+    {
+        long now = System.currentTimeMillis();
+        rrset.addRR(DNSSEC.sign(rrset, key, pair.getPrivate(), new Date(now - TimeUnit.HOURS.toMillis(1)),
+                                new Date(now + TimeUnit.DAYS.toMillis(1))));
+        zone.put(rrset.getName() + "/" + rrset.getType(), rrset);
+    }
+
+    /**
+     * Answer from the signed zone, as a validating server would.
+     */
+    private static Message answer(Message query)
+    {
+        RRset rrset = zone.get(query.getQuestion().getName() + "/" + query.getQuestion().getType());
+        if (rrset == null) {
+            return null;
+        }
+        Message response = new Message(query.getHeader().getID());
+        response.getHeader().setFlag(Flags.QR);
+        response.addRecord(query.getQuestion(), Section.QUESTION);
+        for (Iterator<?> records = rrset.rrs(); records.hasNext();) {
+            response.addRecord((Record) records.next(), Section.ANSWER);
+        }
+        for (Iterator<?> sigs = rrset.sigs(); sigs.hasNext();) {
+            response.addRecord((Record) sigs.next(), Section.ANSWER);
+        }
+
+        return response;
+    }
+
+}
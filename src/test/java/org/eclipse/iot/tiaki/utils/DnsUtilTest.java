@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import org.eclipse.iot.tiaki.commons.StatusCode;
+import org.jitsi.dnssec.validator.ValidatingResolver;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.CNAMERecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Rcode;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.SOARecord;
+import org.xbill.DNS.Section;
+import org.xbill.DNS.TXTRecord;
+import org.xbill.DNS.Type;
+
+public class DnsUtilTest {
+
+	private static final String NAME = "_coap._udp.example.com.";
+
+
+	@Test
+	public void dnsSdDescription () {
+		Assert.assertEquals( "My Printer", DnsUtil.extractDnsSdDescription( "My\\032Printer._ipp._tcp.example.com." ) );
+		Assert.assertEquals( "Salle à manger 032",
+				DnsUtil.extractDnsSdDescription( "Salle\\032\\195\\160\\032manger\\032032._ipp._tcp.example.com." ) );
+		Assert.assertEquals( "Kid’s room (1.2)",
+				DnsUtil.extractDnsSdDescription( "Kid\\226\\128\\153s\\032room\\032\\(1\\.2\\)._coap._udp.example.com." ) );
+		Assert.assertEquals( "Ünïcode 日本 \uD83D\uDDA8", DnsUtil.extractDnsSdDescription( "Ünïcode\\ 日本\\ \uD83D\uDDA8._ipp._tcp.local." ) );
+		// no Service labels, nothing stripped
+		Assert.assertEquals( "printer.example.com.", DnsUtil.extractDnsSdDescription( "printer.example.com." ) );
+	}
+
+
+	@Test
+	public void singleQueryPerLookup () throws Exception {
+		StubResolver resolver = new StubResolver( query -> answer( query, Rcode.NOERROR, true ) );
+		Message response = DnsUtil.query( NAME, resolver, Type.TXT );
+
+		Assert.assertEquals( 1, resolver.sent() );
+		Assert.assertEquals( StatusCode.SUCCESSFUL_OPERATION, DnsUtil.checkResponseStatus( response, Type.TXT ) );
+		Assert.assertEquals( StatusCode.SUCCESSFUL_OPERATION, DnsUtil.checkValidationStatus( response ) );
+		Assert.assertEquals( 1, DnsUtil.answers( response, Type.TXT ).length );
+	}
+
+
+	@Test
+	public void networkError () throws Exception {
+		StubResolver resolver = new StubResolver( query -> null );
+		Message response = DnsUtil.query( NAME, resolver, Type.TXT );
+
+		Assert.assertNull( response );
+		Assert.assertEquals( StatusCode.NETWORK_ERROR, DnsUtil.checkResponseStatus( null, Type.TXT ) );
+	}
+
+
+	@Test
+	public void responseStatus () throws Exception {
+		Message query = Message.newQuery( Record.newRecord( Name.fromString( NAME ), Type.SRV, DClass.IN ) );
+
+		Assert.assertEquals( StatusCode.RESOLUTION_RR_TYPE_ERROR,
+				DnsUtil.checkResponseStatus( answer( query, Rcode.NOERROR, true ), Type.SRV ) );
+		Assert.assertEquals( StatusCode.RESOLUTION_NAME_ERROR,
+				DnsUtil.checkResponseStatus( answer( query, Rcode.NXDOMAIN, true ), Type.SRV ) );
+		Assert.assertEquals( StatusCode.NETWORK_ERROR,
+				DnsUtil.checkResponseStatus( answer( query, Rcode.SERVFAIL, false ), Type.SRV ) );
+	}
+
+
+	@Test
+	public void answersFollowAliases () throws Exception {
+		Message query = Message.newQuery( Record.newRecord( Name.fromString( NAME ), Type.TXT, DClass.IN ) );
+		Message response = answer( query, Rcode.NOERROR, true );
+		response.addRecord( new CNAMERecord( Name.fromString( NAME ), DClass.IN, 60L, Name.fromString( "alias.example.com." ) ),
+				Section.ANSWER );
+
+		Record[] answers = DnsUtil.answers( response, Type.TXT );
+		Assert.assertEquals( 1, answers.length );
+		Assert.assertEquals( Type.TXT, answers[0].getType() );
+	}
+
+
+	@Test
+	public void validationStatus () throws Exception {
+		Message query = Message.newQuery( Record.newRecord( Name.fromString( NAME ), Type.TXT, DClass.IN ) );
+
+		Assert.assertEquals( StatusCode.RESOURCE_INSECURE_ERROR,
+				DnsUtil.checkValidationStatus( answer( query, Rcode.NOERROR, false ) ) );
+
+		Message bogus = answer( query, Rcode.SERVFAIL, false );
+		bogus.addRecord( new TXTRecord( Name.root, ValidatingResolver.VALIDATION_REASON_QCLASS, 0L,
+				"validation failure <example.com.>: missing signature" ), Section.ADDITIONAL );
+		Assert.assertEquals( StatusCode.RESOLUTION_NAME_ERROR, DnsUtil.checkValidationStatus( bogus ) );
+
+		Message untrusted = answer( query, Rcode.SERVFAIL, false );
+		untrusted.addRecord( new TXTRecord( Name.root, ValidatingResolver.VALIDATION_REASON_QCLASS, 0L,
+				"insecure.ds.nsec3" ), Section.ADDITIONAL );
+		Assert.assertEquals( StatusCode.RESOURCE_INSECURE_ERROR, DnsUtil.checkValidationStatus( untrusted ) );
+	}
+
+
+	@Test
+	public void negativeTtl () throws Exception {
+		Message query = Message.newQuery( Record.newRecord( Name.fromString( NAME ), Type.PTR, DClass.IN ) );
+		Message response = answer( query, Rcode.NXDOMAIN, true );
+		Assert.assertEquals( -1L, DnsUtil.negativeTtl( response ) );
+
+		response.addRecord( new SOARecord( Name.fromString( "example.com." ), DClass.IN, 3600L,
+				Name.fromString( "ns.example.com." ), Name.fromString( "admin.example.com." ), 1L, 7200L, 900L,
+				1209600L, 300L ), Section.AUTHORITY );
+		Assert.assertEquals( 300L, DnsUtil.negativeTtl( response ) );
+	}
+
+
+	/**
+	 * Answer <i>query</i> with one TXT record in case of success, marking it as authenticated
+	 * if required.
+	 */
+	private static Message answer ( Message query, int rcode, boolean authenticated ) {
+		Message response = new Message( query.getHeader().getID() );
+		response.getHeader().setFlag( Flags.QR );
+		response.getHeader().setRcode( rcode );
+		if ( authenticated ) {
+			response.getHeader().setFlag( Flags.AD );
+		}
+		Record question = query.getQuestion();
+		response.addRecord( question, Section.QUESTION );
+		if ( rcode == Rcode.NOERROR && question.getType() == Type.TXT ) {
+			response.addRecord( new TXTRecord( question.getName(), DClass.IN, 60L, "txtvers=1" ), Section.ANSWER );
+		}
+		return response;
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import java.net.InetAddress;
+import org.eclipse.iot.tiaki.commons.Constants;
+import org.eclipse.iot.tiaki.commons.ResolverEndpoint;
+import org.jitsi.dnssec.validator.KeyCache;
+import org.jitsi.dnssec.validator.KeyEntry;
+import org.jitsi.dnssec.validator.ValidatingResolver;
+import org.junit.Assert;
+import org.junit.Test;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+
+public class KeyCachesTest
+{
+
+    private static final String OTHER_TRUST_ANCHOR = ". IN DS 20326 8 2 E06D44B80B8F1D39A95C0B0D7C65D0845"
+            + "8E880409BBC683457104237C7F8EC8D";
+
+    @Test
+    public void validatorsShareKeys() throws Exception
+    {
+        ValidatingResolver one = validating("127.0.0.1", Constants.DEFAULT_TRUST_ANCHOR);
+        ValidatingResolver other = validating("127.0.0.2", Constants.DEFAULT_TRUST_ANCHOR);
+
+        KeyCache cache = KeyCaches.of(one);
+        Assert.assertNotNull(cache);
+        Assert.assertSame(cache, KeyCaches.of(other));
+
+        Name zone = Name.fromString("example.com.");
+        cache.store(KeyEntry.newNullKeyEntry(zone, DClass.IN, 60L));
+        KeyEntry found = KeyCaches.of(other).find(zone, DClass.IN);
+        Assert.assertNotNull(found);
+        Assert.assertTrue(found.isNull());
+    }
+
+    @Test
+    public void keysOutliveValidators() throws Exception
+    {
+        KeyCache cache = KeyCaches.of(validating("127.0.0.1", Constants.DEFAULT_TRUST_ANCHOR));
+
+        Assert.assertSame(cache, KeyCaches.of(validating("127.0.0.1", Constants.DEFAULT_TRUST_ANCHOR)));
+    }
+
+    @Test
+    public void trustAnchorsDoNotShareKeys() throws Exception
+    {
+        ValidatingResolver one = validating("127.0.0.1", Constants.DEFAULT_TRUST_ANCHOR);
+        ValidatingResolver other = validating("127.0.0.1", OTHER_TRUST_ANCHOR);
+
+        Assert.assertNotSame(KeyCaches.of(one), KeyCaches.of(other));
+    }
+
+    private static ValidatingResolver validating(String server, String trustAnchor) throws Exception
+    {
+        return (ValidatingResolver) DnsUtil.getResolver(true, trustAnchor,
+                                                        ResolverEndpoint.of(InetAddress.getByName(server)));
+    }
+
+}
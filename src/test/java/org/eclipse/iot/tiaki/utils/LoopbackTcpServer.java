@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.xbill.DNS.Message;
+
+/**
+ * DNS server answering over TCP on the loopback interface by means of a function, a thread per
+ * connection. Queries are answered by batches, in reverse order, as a server answering out of order
+ * would; a <code>null</code> answer is not sent at all. Connections might be closed after every
+ * batch, as a server not keeping them open would, and answers might be sent in two pieces, the
+ * first byte then the rest after a pause, as a slow server would.
+ */
+public class LoopbackTcpServer implements Closeable {
+
+	private final Function<Message, Message> answers;
+	private final int batch;
+	private final boolean closing;
+	private final long pause;
+	private final ServerSocket socket;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final AtomicInteger received = new AtomicInteger();
+	private final List<Socket> accepted = Collections.synchronizedList( new ArrayList<Socket>() );
+
+
+	public LoopbackTcpServer ( Function<Message, Message> answers ) throws IOException {
+		this( answers, 1, false );
+	}
+
+
+	public LoopbackTcpServer ( Function<Message, Message> answers, int batch, boolean closing ) throws IOException {
+		this( answers, batch, closing, 0L );
+	}
+
+
+	public LoopbackTcpServer ( Function<Message, Message> answers, int batch, boolean closing, long pause )
+			throws IOException {
+		this.answers = answers;
+		this.batch = batch;
+		this.closing = closing;
+		this.pause = pause;
+		this.socket = new ServerSocket();
+		this.socket.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+		Thread loop = new Thread( this::serve, "loopback-tcp" );
+		loop.setDaemon( true );
+		loop.start();
+	}
+
+
+	public InetSocketAddress address () {
+		return (InetSocketAddress) this.socket.getLocalSocketAddress();
+	}
+
+
+	public int connections () {
+		return this.connections.get();
+	}
+
+
+	public int received () {
+		return this.received.get();
+	}
+
+
+	@Override
+	public void close () throws IOException {
+		this.socket.close();
+		synchronized ( this.accepted ) {
+			for ( Socket connection : this.accepted ) {
+				connection.close();
+			}
+		}
+	}
+
+
+	private void serve () {
+		while ( !this.socket.isClosed() ) {
+			try {
+				Socket connection = this.socket.accept();
+				this.connections.incrementAndGet();
+				this.accepted.add( connection );
+				Thread thread = new Thread( () -> answer( connection ), "loopback-tcp-connection" );
+				thread.setDaemon( true );
+				thread.start();
+			} catch ( IOException e ) {
+				// closed
+			}
+		}
+	}
+
+
+	private void answer ( Socket accepted ) {
+		try ( Socket connection = accepted ) {
+			DataInputStream in = new DataInputStream( connection.getInputStream() );
+			DataOutputStream out = new DataOutputStream( connection.getOutputStream() );
+			while ( true ) {
+				List<Message> queries = new ArrayList<>();
+				while ( queries.size() < this.batch ) {
+					byte[] wire = new byte[in.readUnsignedShort()];
+					in.readFully( wire );
+					this.received.incrementAndGet();
+					queries.add( new Message( wire ) );
+				}
+				Collections.reverse( queries );
+				for ( Message query : queries ) {
+					Message response = this.answers.apply( query );
+					if ( response != null ) {
+						byte[] wire = response.toWire();
+						out.write( wire.length >>> 8 );
+						if ( this.pause > 0 ) {
+							// the length prefix split across two segments
+							out.flush();
+							pause();
+						}
+						out.write( wire.length & 0xFF );
+						out.write( wire );
+					}
+				}
+				out.flush();
+				if ( this.closing ) {
+					return;
+				}
+			}
+		} catch ( IOException e ) {
+			// closed by the client
+		}
+	}
+
+
+	private void pause () {
+		try {
+			Thread.sleep( this.pause );
+		} catch ( InterruptedException e ) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
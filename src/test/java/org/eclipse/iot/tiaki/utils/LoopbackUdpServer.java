@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Flags;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Section;
+
+/**
+ * DNS server answering over UDP on the loopback interface by means of a function, on a thread of
+ * its own. A <code>null</code> answer is not sent at all; answers might be sent from another port,
+ * as a spoofer would.
+ */
+public class LoopbackUdpServer implements Closeable {
+
+	private final Function<Message, Message> answers;
+	private final DatagramSocket socket;
+	private final DatagramSocket replies;
+	private final AtomicInteger received = new AtomicInteger();
+	private final Set<Integer> sourcePorts = ConcurrentHashMap.newKeySet();
+	private final Thread loop;
+
+
+	public LoopbackUdpServer ( Function<Message, Message> answers ) throws IOException {
+		this( answers, false );
+	}
+
+
+	public LoopbackUdpServer ( Function<Message, Message> answers, boolean spoofed ) throws IOException {
+		this.answers = answers;
+		this.socket = new DatagramSocket( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+		// bursts of queries must not overflow the socket while the loop is busy answering
+		this.socket.setReceiveBufferSize( 4 << 20 );
+		this.replies = ( spoofed ? new DatagramSocket( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) )
+				: this.socket );
+		this.loop = new Thread( this::serve, "loopback-udp" );
+		this.loop.setDaemon( true );
+		this.loop.start();
+	}
+
+
+	/**
+	 * Build a positive answer to a query, with a single A record.
+	 *
+	 * @param query The query
+	 *
+	 * @return The answer
+	 */
+	public static Message answer ( Message query ) {
+		Message response = new Message( query.getHeader().getID() );
+		response.getHeader().setFlag( Flags.QR );
+		response.addRecord( query.getQuestion(), Section.QUESTION );
+		try {
+			response.addRecord( new ARecord( query.getQuestion().getName(), DClass.IN, 60L,
+					InetAddress.getByName( "192.0.2.1" ) ), Section.ANSWER );
+		} catch ( IOException e ) {
+			throw new IllegalStateException( e );
+		}
+		return response;
+	}
+
+
+	public InetSocketAddress address () {
+		return (InetSocketAddress) this.socket.getLocalSocketAddress();
+	}
+
+
+	public int received () {
+		return this.received.get();
+	}
+
+
+	/**
+	 * Retrieve the ports the queries have been received from.
+	 *
+	 * @return The source ports seen so far
+	 */
+	public Set<Integer> sourcePorts () {
+		return this.sourcePorts;
+	}
+
+
+	@Override
+	public void close () {
+		this.socket.close();
+		this.replies.close();
+	}
+
+
+	private void serve () {
+		byte[] buffer = new byte[65535];
+		while ( !this.socket.isClosed() ) {
+			try {
+				DatagramPacket packet = new DatagramPacket( buffer, buffer.length );
+				this.socket.receive( packet );
+				this.received.incrementAndGet();
+				this.sourcePorts.add( packet.getPort() );
+				Message response = this.answers.apply( new Message( Arrays.copyOf( packet.getData(),
+						packet.getLength() ) ) );
+				if ( response != null ) {
+					byte[] out = response.toWire();
+					this.replies.send( new DatagramPacket( out, out.length, packet.getSocketAddress() ) );
+				}
+			} catch ( IOException e ) {
+				// closed, or a malformed query
+			}
+		}
+	}
+}
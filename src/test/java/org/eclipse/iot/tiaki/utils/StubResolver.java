@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2015, Verisign, Inc.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ */
+
+package org.eclipse.iot.tiaki.utils;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Resolver;
+import org.xbill.DNS.ResolverListener;
+import org.xbill.DNS.TSIG;
+
+/**
+ * In-memory <code>Resolver</code> answering by means of a function and counting the queries it
+ * receives. A <code>null</code> answer is reported as a network error.
+ */
+public class StubResolver implements Resolver {
+
+	private final Function<Message, Message> answers;
+	private final AtomicInteger sent = new AtomicInteger();
+
+	public StubResolver ( Function<Message, Message> answers ) {
+		this.answers = answers;
+	}
+
+
+	public int sent () {
+		return this.sent.get();
+	}
+
+
+	@Override
+	public Message send ( Message query ) throws IOException {
+		this.sent.incrementAndGet();
+		Message response = this.answers.apply( query );
+		if ( response == null ) {
+			throw new IOException( "No answer for " + query.getQuestion() );
+		}
+		return response;
+	}
+
+
+	@Override
+	public Object sendAsync ( final Message query, final ResolverListener listener ) {
+		final Object id = new Object();
+		try {
+			listener.receiveMessage( id, send( query ) );
+		} catch ( IOException e ) {
+			listener.handleException( id, e );
+		}
+		return id;
+	}
+
+
+	@Override
+	public void setPort ( int port ) {}
+
+	@Override
+	public void setTCP ( boolean flag ) {}
+
+	@Override
+	public void setIgnoreTruncation ( boolean flag ) {}
+
+	@Override
+	public void setEDNS ( int level ) {}
+
+	@Override
+	@SuppressWarnings("rawtypes")
+	public void setEDNS ( int level, int payloadSize, int flags, List options ) {}
+
+	@Override
+	public void setTSIGKey ( TSIG key ) {}
+
+	@Override
+	public void setTimeout ( int secs, int msecs ) {}
+
+	@Override
+	public void setTimeout ( int secs ) {}
+}
@@ -17,6 +17,9 @@ import org.junit.Test;
 
 public class ValidatorUtilTest {
 
+	private static final String LABEL_63 = "abcdefghijklmnopqrstuvwxyzabcdefghijklmnopqrstuvwxyzabcdefghijk";
+
+
 	public ValidatorUtilTest () {
 	}
 
@@ -84,6 +87,51 @@ public class ValidatorUtilTest {
 		}
 	}
 
+	@Test
+	public void sameNamesAsPattern () {
+		String[] names = { "example.com.", "_coap._udp.example.com.", "a.", "x-y_z.example.", "(a)|b.example.",
+							"example.com", ".", "a..example.", ".example.", "exa$mple.com.", "exámple.com.",
+							"", "example .com." };
+		for ( String name : names ) {
+			Assert.assertEquals( name, name.matches( ValidatorUtil.FQDN_PATTERN ), isValid( name ) );
+		}
+	}
+
+
+	@Test
+	public void labelLengthBounded () {
+		Assert.assertTrue( isValid( LABEL_63 + ".example.com." ) );
+		Assert.assertFalse( isValid( LABEL_63 + "l.example.com." ) );
+	}
+
+
+	@Test
+	public void nameLengthBounded () {
+		StringBuilder name = new StringBuilder();
+		while ( name.length() + 4 <= ValidatorUtil.FQDN_LENGTH ) {
+			name.append( "abc." );
+		}
+		Assert.assertTrue( isValid( name.toString() ) );
+		Assert.assertFalse( isValid( name.append( "abcd." ).toString() ) );
+	}
+
+
+	@Test
+	public void dnsSdEscapesCountAsOctets () {
+		// 21 escaped octets, 63 characters
+		StringBuilder label = new StringBuilder();
+		for ( int i = 0; i < 21; i++ ) {
+			label.append( "\\032" );
+		}
+		Assert.assertTrue( isValid( label + "._ipp._tcp.example.com." ) );
+		Assert.assertTrue( isValid( LABEL_63.substring( 1 ) + "\\.._ipp._tcp.example.com." ) );
+		Assert.assertFalse( isValid( LABEL_63 + "\\.._ipp._tcp.example.com." ) );
+		// two octets each once encoded
+		Assert.assertFalse( isValid( "My\\ " + LABEL_63.substring( 35 ).replace( 'a', 'ü' ).replace( 'b', 'ü' )
+									 + LABEL_63.substring( 4, 35 ) + "._ipp._tcp.example.com." ) );
+	}
+
+
 	@Test
 	public void validPort(){
 		org.junit.Assert.assertTrue( ValidatorUtil.isValidPort( "0" ) );
@@ -112,4 +160,14 @@ public class ValidatorUtilTest {
 		org.junit.Assert.assertTrue( !ValidatorUtil.isValidPort( null ) );
 		org.junit.Assert.assertTrue( !ValidatorUtil.isValidPort( "            " ) );
 	}
+
+	private static boolean isValid ( String name ) {
+		try {
+			ValidatorUtil.isValidDomainName( name );
+			return true;
+		} catch ( IllegalArgumentException iae ) {
+			return false;
+		}
+	}
+
 }